@@ -0,0 +1,50 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.benchmarks;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmark uber-jar. Accepts the same arguments as the standard JMH main, but
+ * always attaches the {@link GCProfiler} so that the allocation rate per operation
+ * ({@code gc.alloc.rate.norm}) is reported alongside every score.
+ */
+public final class BenchmarkRunner {
+  private BenchmarkRunner() {}
+
+  public static void main(final String[] args)
+      throws RunnerException, CommandLineOptionException, IOException {
+    final CommandLineOptions cmdOptions = new CommandLineOptions(args);
+    if (cmdOptions.shouldHelp()) {
+      cmdOptions.showHelp();
+      return;
+    }
+    if (cmdOptions.shouldList()) {
+      new Runner(cmdOptions).list();
+      return;
+    }
+
+    final boolean hasGcProfiler = cmdOptions.getProfilers().stream()
+        .anyMatch(p -> p.getKlass().equals(GCProfiler.class.getName())
+            || p.getKlass().equals("gc"));
+    final Options options = hasGcProfiler
+        ? cmdOptions
+        : new OptionsBuilder()
+            .parent(cmdOptions)
+            .addProfiler(GCProfiler.class)
+            .build();
+    new Runner(options).run();
+  }
+}
@@ -0,0 +1,89 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.asyncutil.util.Combinators;
+
+/**
+ * Cost of fanning in {@code size} stages with {@link Combinators#allOf} and
+ * {@link Combinators#collect}.
+ * <p>
+ * The {@code pending} benchmarks combine incomplete futures and then complete them, which is the
+ * scatter/gather case; the {@code completed} benchmarks combine futures that are already done.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CombinatorsBenchmark {
+  @Param({"16", "10000"})
+  public int size;
+
+  private List<CompletableFuture<Integer>> completed;
+
+  @Setup
+  public void setup() {
+    this.completed = new ArrayList<>(this.size);
+    for (int i = 0; i < this.size; i++) {
+      this.completed.add(CompletableFuture.completedFuture(i));
+    }
+  }
+
+  private List<CompletableFuture<Integer>> pending() {
+    final List<CompletableFuture<Integer>> pending = new ArrayList<>(this.size);
+    for (int i = 0; i < this.size; i++) {
+      pending.add(new CompletableFuture<>());
+    }
+    return pending;
+  }
+
+  @Benchmark
+  public Object pendingAllOf() {
+    final List<CompletableFuture<Integer>> pending = pending();
+    final CompletableFuture<Void> all = Combinators.allOf(pending).toCompletableFuture();
+    for (int i = 0; i < this.size; i++) {
+      pending.get(i).complete(i);
+    }
+    return all.join();
+  }
+
+  @Benchmark
+  public Collection<Integer> pendingCollect() {
+    final List<CompletableFuture<Integer>> pending = pending();
+    final CompletableFuture<Collection<Integer>> all =
+        Combinators.collect(pending).toCompletableFuture();
+    for (int i = 0; i < this.size; i++) {
+      pending.get(i).complete(i);
+    }
+    return all.join();
+  }
+
+  @Benchmark
+  public Collection<Integer> completedCollect() {
+    return Combinators.collect(this.completed).toCompletableFuture().join();
+  }
+}
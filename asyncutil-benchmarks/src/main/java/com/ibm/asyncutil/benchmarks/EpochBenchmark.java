@@ -0,0 +1,72 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.asyncutil.locks.AsyncEpoch;
+
+/**
+ * Enter/exit latency of the striped ({@link AsyncEpoch#newContendedEpoch()}) and single counter
+ * ({@link AsyncEpoch#newUncontendedEpoch()}) epoch implementations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EpochBenchmark {
+
+  @Param({"striped", "simple"})
+  public String impl;
+
+  private AsyncEpoch epoch;
+
+  @Setup
+  public void setup() {
+    switch (this.impl) {
+      case "striped":
+        this.epoch = AsyncEpoch.newContendedEpoch();
+        break;
+      case "simple":
+        this.epoch = AsyncEpoch.newUncontendedEpoch();
+        break;
+      default:
+        throw new IllegalArgumentException("unknown epoch implementation: " + this.impl);
+    }
+  }
+
+  private void enterExit() {
+    this.epoch.enter().orElseThrow(IllegalStateException::new).close();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void uncontendedEnterExit() {
+    enterExit();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void contendedEnterExit() {
+    enterExit();
+  }
+}
@@ -0,0 +1,116 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.benchmarks;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.asyncutil.iteration.AsyncIterator;
+import com.ibm.asyncutil.iteration.AsyncLongIterator;
+import com.ibm.asyncutil.util.StageSupport;
+
+/**
+ * Per-element overhead of common {@link AsyncIterator} pipelines over a synchronous source. Scores
+ * are normalized to a single element.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IteratorBenchmark {
+  private static final int ELEMENTS = 1024;
+  private static final int BATCH_SIZE = 16;
+
+  private static AsyncIterator<Long> source() {
+    return AsyncIterator.range(0, ELEMENTS);
+  }
+
+  private static <T> T join(final CompletionStage<T> stage) {
+    return stage.toCompletableFuture().join();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ELEMENTS)
+  public Long fold() {
+    return join(source().fold(0L, (acc, l) -> acc + l));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ELEMENTS)
+  public Long thenApplyFold() {
+    return join(source().thenApply(l -> l + 1).fold(0L, (acc, l) -> acc + l));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ELEMENTS)
+  public Long thenComposeFold() {
+    return join(source()
+        .thenCompose(l -> StageSupport.completedStage(l + 1))
+        .fold(0L, (acc, l) -> acc + l));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ELEMENTS)
+  public Long thenComposeAheadFold() {
+    return join(source()
+        .thenComposeAhead(l -> StageSupport.completedStage(l + 1), BATCH_SIZE)
+        .fold(0L, (acc, l) -> acc + l));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ELEMENTS)
+  public Long filterFold() {
+    return join(source().filter(l -> (l & 1) == 0).fold(0L, (acc, l) -> acc + l));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ELEMENTS)
+  public Long chainedThenApplyFold() {
+    return join(source()
+        .thenApply(l -> l + 1)
+        .filter(l -> (l & 1) == 0)
+        .thenApply(l -> l * 2)
+        .take(ELEMENTS)
+        .fold(0L, (acc, l) -> acc + l));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ELEMENTS)
+  public Long primitiveThenApplyFold() {
+    return join(AsyncLongIterator.range(0, ELEMENTS)
+        .map(l -> l + 1)
+        .fold(0L, (acc, l) -> acc + l));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ELEMENTS)
+  public Integer batchConsume() {
+    return join(source()
+        .batch(Collectors.toList(), BATCH_SIZE)
+        .fold(0, (acc, batch) -> acc + batch.size()));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ELEMENTS)
+  public Void consume() {
+    return join(source().consume());
+  }
+}
@@ -0,0 +1,96 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.benchmarks;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.ibm.asyncutil.locks.AsyncLock;
+import com.ibm.asyncutil.locks.AsyncLock.LockToken;
+import com.ibm.asyncutil.locks.FairAsyncLock;
+import com.ibm.asyncutil.locks.UnfairAsyncLock;
+
+/**
+ * Acquire/release latency of {@link AsyncLock} implementations. The {@code contended} benchmarks
+ * share a single lock among all benchmark threads (override the thread count with {@code -t}); the
+ * {@code uncontended} benchmarks run on a single thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LockBenchmark {
+
+  @Param({"fair", "unfair"})
+  public String impl;
+
+  private AsyncLock lock;
+
+  @Setup
+  public void setup() {
+    this.lock = LockBenchmark.createLock(this.impl);
+  }
+
+  static AsyncLock createLock(final String impl) {
+    switch (impl) {
+      case "fair":
+        return new FairAsyncLock();
+      case "unfair":
+        return new UnfairAsyncLock();
+      default:
+        throw new IllegalArgumentException("unknown lock implementation: " + impl);
+    }
+  }
+
+  private static void acquireRelease(final AsyncLock lock) {
+    lock.acquireLock().toCompletableFuture().join().releaseLock();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void uncontendedAcquireRelease() {
+    LockBenchmark.acquireRelease(this.lock);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void uncontendedTryLock(final Blackhole bh) {
+    final Optional<LockToken> token = this.lock.tryLock();
+    bh.consume(token.isPresent());
+    token.ifPresent(LockToken::releaseLock);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void contendedAcquireRelease() {
+    LockBenchmark.acquireRelease(this.lock);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void contendedTryLock(final Blackhole bh) {
+    final Optional<LockToken> token = this.lock.tryLock();
+    bh.consume(token.isPresent());
+    token.ifPresent(LockToken::releaseLock);
+  }
+}
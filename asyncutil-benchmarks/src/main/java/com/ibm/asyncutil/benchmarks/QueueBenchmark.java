@@ -0,0 +1,178 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.benchmarks;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.Control;
+
+import com.ibm.asyncutil.iteration.AsyncQueue;
+import com.ibm.asyncutil.iteration.AsyncQueues;
+import com.ibm.asyncutil.iteration.BoundedAsyncQueue;
+
+/**
+ * Per-element cost of {@link AsyncQueues#unbounded()}, {@link AsyncQueues#unboundedMultiConsumer()},
+ * {@link AsyncQueues#buffered(int)} and {@link AsyncQueues#singleProducerBuffered(int)}.
+ * <p>
+ * The single threaded benchmarks send and consume one element per operation on the same thread.
+ * The {@code mpsc} group runs several producers against one consumer on a shared buffered queue,
+ * and the {@code mpmc} group runs several producers against several consumers on a shared
+ * multi-consumer queue; waiting sides spin on the {@link Control#stopMeasurement} flag rather than blocking so that the
+ * iteration can always terminate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueueBenchmark {
+
+  private static final Integer ELEMENT = 1;
+
+  @State(Scope.Thread)
+  public static class UnboundedState {
+    @Param({"mpsc", "mpmc"})
+    public String impl;
+
+    AsyncQueue<Integer> queue;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+      this.queue = "mpmc".equals(this.impl)
+          ? AsyncQueues.unboundedMultiConsumer()
+          : AsyncQueues.unbounded();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class BufferedState {
+    @Param({"1", "64"})
+    public int bufferSize;
+
+    @Param({"mpsc", "spsc"})
+    public String impl;
+
+    BoundedAsyncQueue<Integer> queue;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+      this.queue = "spsc".equals(this.impl)
+          ? AsyncQueues.singleProducerBuffered(this.bufferSize)
+          : AsyncQueues.buffered(this.bufferSize);
+    }
+  }
+
+  @State(Scope.Group)
+  public static class SharedBufferedState {
+    @Param({"1", "64"})
+    public int bufferSize;
+
+    BoundedAsyncQueue<Integer> queue;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+      this.queue = AsyncQueues.buffered(this.bufferSize);
+    }
+  }
+
+  @State(Scope.Group)
+  public static class SharedMultiConsumerState {
+    AsyncQueue<Integer> queue;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+      this.queue = AsyncQueues.unboundedMultiConsumer();
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Optional<Integer> unboundedSendPoll(final UnboundedState state) {
+    state.queue.send(ELEMENT);
+    return state.queue.poll();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Object unboundedSendNextStage(final UnboundedState state) {
+    state.queue.send(ELEMENT);
+    return state.queue.nextStage().toCompletableFuture().join();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Optional<Integer> bufferedSendPoll(final BufferedState state, final Blackhole bh) {
+    bh.consume(state.queue.send(ELEMENT));
+    return state.queue.poll();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Object bufferedSendNextStage(final BufferedState state, final Blackhole bh) {
+    bh.consume(state.queue.send(ELEMENT));
+    return state.queue.nextStage().toCompletableFuture().join();
+  }
+
+  @Benchmark
+  @Group("mpsc")
+  @GroupThreads(3)
+  public void producer(final SharedBufferedState state, final Control control) {
+    final CompletableFuture<Boolean> sent = state.queue.send(ELEMENT).toCompletableFuture();
+    while (!sent.isDone() && !control.stopMeasurement) {
+      // wait for the consumer to make room
+    }
+  }
+
+  @Benchmark
+  @Group("mpsc")
+  @GroupThreads(1)
+  public void consumer(final SharedBufferedState state, final Control control,
+      final Blackhole bh) {
+    Optional<Integer> polled;
+    while (!(polled = state.queue.poll()).isPresent() && !control.stopMeasurement) {
+      // wait for a producer to send
+    }
+    bh.consume(polled);
+  }
+
+  @Benchmark
+  @Group("mpmc")
+  @GroupThreads(2)
+  public boolean mpmcProducer(final SharedMultiConsumerState state) {
+    return state.queue.send(ELEMENT);
+  }
+
+  @Benchmark
+  @Group("mpmc")
+  @GroupThreads(2)
+  public void mpmcConsumer(final SharedMultiConsumerState state, final Control control,
+      final Blackhole bh) {
+    Optional<Integer> polled;
+    while (!(polled = state.queue.poll()).isPresent() && !control.stopMeasurement) {
+      // wait for a producer to send
+    }
+    bh.consume(polled);
+  }
+}
@@ -0,0 +1,92 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.asyncutil.locks.AsyncReadWriteLock;
+import com.ibm.asyncutil.locks.FairAsyncReadWriteLock;
+
+/**
+ * Acquire/release latency of {@link FairAsyncReadWriteLock}, both in isolation and with a mix of
+ * concurrent readers and writers sharing one lock.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadWriteLockBenchmark {
+
+  private AsyncReadWriteLock lock;
+
+  @Setup
+  public void setup() {
+    this.lock = new FairAsyncReadWriteLock();
+  }
+
+  private void read() {
+    this.lock.acquireReadLock().toCompletableFuture().join().releaseLock();
+  }
+
+  private void write() {
+    this.lock.acquireWriteLock().toCompletableFuture().join().releaseLock();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void uncontendedRead() {
+    read();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void uncontendedWrite() {
+    write();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void contendedRead() {
+    read();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void contendedWrite() {
+    write();
+  }
+
+  @Benchmark
+  @Group("mixed")
+  @GroupThreads(3)
+  public void mixedReader() {
+    read();
+  }
+
+  @Benchmark
+  @Group("mixed")
+  @GroupThreads(1)
+  public void mixedWriter() {
+    write();
+  }
+}
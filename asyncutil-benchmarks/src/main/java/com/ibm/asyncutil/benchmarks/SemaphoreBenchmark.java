@@ -0,0 +1,131 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.benchmarks;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.ibm.asyncutil.locks.AsyncSemaphore;
+import com.ibm.asyncutil.locks.FairAsyncSemaphore;
+import com.ibm.asyncutil.locks.StripedAsyncSemaphore;
+import com.ibm.asyncutil.util.StageSupport;
+
+/**
+ * Acquire/release latency of {@link AsyncSemaphore} implementations. With a single permit every
+ * contended acquisition must queue; with many permits contended acquisitions mostly race on the
+ * permit count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SemaphoreBenchmark {
+
+  @Param({"fair", "striped"})
+  public String impl;
+
+  @Param({"1", "1024"})
+  public long permits;
+
+  private AsyncSemaphore semaphore;
+
+  @Setup
+  public void setup() {
+    this.semaphore = SemaphoreBenchmark.createSemaphore(this.impl, this.permits);
+  }
+
+  static AsyncSemaphore createSemaphore(final String impl, final long permits) {
+    switch (impl) {
+      case "fair":
+        return new FairAsyncSemaphore(permits);
+      case "striped":
+        return new StripedAsyncSemaphore(permits);
+      default:
+        throw new IllegalArgumentException("unknown semaphore implementation: " + impl);
+    }
+  }
+
+  private void acquireRelease() {
+    this.semaphore.acquire().toCompletableFuture().join();
+    this.semaphore.release();
+  }
+
+  private void tryAcquireRelease(final Blackhole bh) {
+    final boolean acquired = this.semaphore.tryAcquire();
+    bh.consume(acquired);
+    if (acquired) {
+      this.semaphore.release();
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void uncontendedAcquireRelease() {
+    acquireRelease();
+  }
+
+  /**
+   * Unlike {@link #uncontendedAcquireRelease()}, the acquired stage is consumed as is rather than
+   * converted and joined, so {@code gc.alloc.rate.norm} reflects only the semaphore's own
+   * allocations. An acquisition that has to wait would fail the benchmark.
+   */
+  @Benchmark
+  @Threads(1)
+  public void uncontendedAcquireReleasePair(final Blackhole bh) {
+    final CompletionStage<Void> acquired = this.semaphore.acquire();
+    if (acquired != StageSupport.voidStage()) {
+      throw new IllegalStateException("uncontended acquisition did not complete immediately");
+    }
+    bh.consume(acquired);
+    this.semaphore.release();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void uncontendedTryAcquireRelease(final Blackhole bh) {
+    tryAcquireRelease(bh);
+  }
+
+  /**
+   * Acquires a batch of up to 16 permits with one call and releases them with another, as a batching
+   * consumer would instead of acquiring a permit per element.
+   */
+  @Benchmark
+  @Threads(1)
+  public void uncontendedAcquireUpToRelease() {
+    final long acquired = this.semaphore.acquireUpTo(16).toCompletableFuture().join();
+    this.semaphore.release(acquired);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void contendedAcquireRelease() {
+    acquireRelease();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void contendedTryAcquireRelease(final Blackhole bh) {
+    tryAcquireRelease(bh);
+  }
+}
@@ -0,0 +1,56 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.benchmarks;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.asyncutil.iteration.AsyncTrampoline;
+import com.ibm.asyncutil.util.StageSupport;
+
+/**
+ * Per-iteration overhead of {@link AsyncTrampoline#asyncWhile} when the loop body completes
+ * synchronously, which is the case the trampoline exists to make stack safe.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrampolineBenchmark {
+  private static final int LOOPS = 1024;
+
+  @Benchmark
+  @OperationsPerInvocation(LOOPS)
+  public Integer completedStageLoop() {
+    return AsyncTrampoline
+        .asyncWhile(i -> i < LOOPS, i -> StageSupport.completedStage(i + 1), 0)
+        .toCompletableFuture()
+        .join();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(LOOPS)
+  public Integer completedFutureLoop() {
+    return AsyncTrampoline
+        .asyncWhile(i -> i < LOOPS, i -> CompletableFuture.completedFuture(i + 1), 0)
+        .toCompletableFuture()
+        .join();
+  }
+}
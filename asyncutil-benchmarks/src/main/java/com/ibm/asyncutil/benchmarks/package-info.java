@@ -0,0 +1,11 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+/**
+ * JMH benchmarks for the asyncutil primitives. See the module README for instructions on running
+ * them with allocation profiling.
+ */
+package com.ibm.asyncutil.benchmarks;
@@ -0,0 +1,421 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.iteration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+import com.ibm.asyncutil.iteration.AsyncIterator.End;
+import com.ibm.asyncutil.util.AsyncCloseable;
+import com.ibm.asyncutil.util.Either;
+import com.ibm.asyncutil.util.StageSupport;
+
+/**
+ * A specialization of {@link AsyncIterator} for {@code int} elements.
+ * <p>
+ * Rather than producing each element in its own stage, boxed and wrapped in an {@link Either}, an
+ * AsyncIntIterator produces its elements in batches held in {@code int} arrays through
+ * {@link #nextBatch(int)}, which is the only method an implementation must provide. Batches follow
+ * the same rules as {@link AsyncIterator#nextBatch(int)}, and the same restrictions on sequential
+ * calls apply.
+ * <p>
+ * Intermediate methods such as {@link #map(IntUnaryOperator)} and {@link #filter(IntPredicate)}
+ * process whole batches at a time. If a function throws for any element of a batch, the stage of
+ * that batch completes exceptionally and none of its elements are produced. An AsyncIntIterator
+ * can be converted to and from the generic interface with {@link #boxed()} and
+ * {@link #unboxed(AsyncIterator)}.
+ *
+ * @see AsyncIterator
+ * @see IntStream
+ */
+public interface AsyncIntIterator extends AsyncCloseable {
+
+  /**
+   * Returns a stage that will be completed with a batch of the next elements of {@code this}
+   * iterator, or {@link End} if there are no more elements.
+   *
+   * <p>
+   * A batch holds between 1 and {@code maxSize} elements. Like {@link AsyncIterator#nextStage()},
+   * this method is <b>not thread safe</b>, and sequential calls should not be made until the stage
+   * returned by the previous call has completed. After an iterator emits an {@link End} indicator,
+   * the result of subsequent calls is undefined.
+   *
+   * @param maxSize the greatest number of elements to include in the batch. Must be positive
+   * @return A {@link CompletionStage} of the next batch of elements held in the
+   *         {@link Either#right()} position, or an instance of {@link End} held in the
+   *         {@link Either#left()} position indicating the end of iteration. The batch must not be
+   *         modified
+   * @throws IllegalArgumentException if {@code maxSize} is not positive
+   */
+  CompletionStage<Either<End, int[]>> nextBatch(int maxSize);
+
+  /**
+   * Relinquishes any resources associated with this iterator.
+   *
+   * <p>
+   * As with {@link AsyncIterator#close()}, the default implementation does nothing, and
+   * intermediate methods propagate the close to the iterator they were called on.
+   *
+   * @return a {@link CompletionStage} that completes when all resources associated with this
+   *         iterator have been relinquished.
+   */
+  @Override
+  default CompletionStage<Void> close() {
+    return StageSupport.voidStage();
+  }
+
+  /**
+   * Transforms {@code this} into a new AsyncIntIterator that iterates over the results of
+   * {@code fn} applied to the elements of {@code this}.
+   *
+   * <p>
+   * This is a lazy <i> intermediate </i> method.
+   *
+   * @param fn a function which produces a new element from an element of {@code this}
+   * @return A new AsyncIntIterator which produces the results of {@code fn}
+   */
+  default AsyncIntIterator map(final IntUnaryOperator fn) {
+    return new AsyncIntIterator() {
+      @Override
+      public CompletionStage<Either<End, int[]>> nextBatch(final int maxSize) {
+        return AsyncIntIterator.this.nextBatch(maxSize).thenApply(batch -> batch.map(values -> {
+          final int[] mapped = new int[values.length];
+          for (int i = 0; i < values.length; i++) {
+            mapped[i] = fn.applyAsInt(values[i]);
+          }
+          return mapped;
+        }));
+      }
+
+      @Override
+      public CompletionStage<Void> close() {
+        return AsyncIntIterator.this.close();
+      }
+    };
+  }
+
+  /**
+   * Transforms {@code this} into a new AsyncIntIterator that only produces the elements of
+   * {@code this} which satisfy {@code predicate}.
+   *
+   * <p>
+   * This is a lazy <i> intermediate </i> method.
+   *
+   * @param predicate a predicate which returns true for the elements that should be kept
+   * @return A new AsyncIntIterator which only produces elements that satisfy {@code predicate}
+   */
+  default AsyncIntIterator filter(final IntPredicate predicate) {
+    return new AsyncIntIterator() {
+      @Override
+      public CompletionStage<Either<End, int[]>> nextBatch(final int maxSize) {
+        // keep pulling until a batch keeps at least one element; null until one does
+        return AsyncTrampoline.<Either<End, int[]>>asyncWhile(
+            result -> result == null,
+            ignored -> AsyncIntIterator.this.nextBatch(maxSize).thenApply(batch -> batch.fold(
+                end -> batch,
+                values -> {
+                  final int[] selected = new int[values.length];
+                  int count = 0;
+                  for (final int value : values) {
+                    if (predicate.test(value)) {
+                      selected[count++] = value;
+                    }
+                  }
+                  if (count == 0) {
+                    return null;
+                  }
+                  return Either.right(
+                      count == values.length ? values : Arrays.copyOf(selected, count));
+                })),
+            null);
+      }
+
+      @Override
+      public CompletionStage<Void> close() {
+        return AsyncIntIterator.this.close();
+      }
+    };
+  }
+
+  /**
+   * Collects the elements of {@code this} into arrays of {@code batchSize} elements. The last
+   * array may hold fewer elements if the end of iteration is reached before it is full.
+   *
+   * <p>
+   * This is a lazy <i> intermediate </i> method.
+   *
+   * @param batchSize the number of elements to collect into each array. Must be positive
+   * @return an AsyncIterator over arrays of the elements of {@code this}
+   * @throws IllegalArgumentException if {@code batchSize} is not positive
+   */
+  default AsyncIterator<int[]> batch(final int batchSize) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("batchSize must be positive, was " + batchSize);
+    }
+    return new AsyncIterator<int[]>() {
+      boolean exhausted = false;
+
+      @Override
+      public CompletionStage<Either<End, int[]>> nextStage() {
+        if (this.exhausted) {
+          return End.endStage();
+        }
+        final int[] values = new int[batchSize];
+        final int[] filled = {0};
+        return AsyncTrampoline
+            .asyncWhile(() -> AsyncIntIterator.this.nextBatch(batchSize - filled[0])
+                .thenApply(batch -> batch.fold(
+                    end -> {
+                      this.exhausted = true;
+                      return false;
+                    },
+                    chunk -> {
+                      System.arraycopy(chunk, 0, values, filled[0], chunk.length);
+                      filled[0] += chunk.length;
+                      return filled[0] < batchSize;
+                    })))
+            .thenApply(ignored -> {
+              if (filled[0] == 0) {
+                return End.end();
+              }
+              return Either.right(
+                  filled[0] == batchSize ? values : Arrays.copyOf(values, filled[0]));
+            });
+      }
+
+      @Override
+      public CompletionStage<Void> close() {
+        return AsyncIntIterator.this.close();
+      }
+    };
+  }
+
+  /**
+   * Converts {@code this} into an {@link AsyncIterator} of boxed elements.
+   *
+   * <p>
+   * The returned iterator pulls batches from {@code this}, so its {@link AsyncIterator#tryNext()}
+   * and {@link AsyncIterator#nextBatch(int)} methods serve the remainder of the last batch without
+   * creating a stage.
+   *
+   * @return an AsyncIterator which produces the elements of {@code this}
+   * @see #unboxed(AsyncIterator)
+   */
+  default AsyncIterator<Integer> boxed() {
+    return new AsyncIterator<Integer>() {
+      int[] buffer = new int[0];
+      int index = 0;
+
+      @Override
+      public CompletionStage<Either<End, Integer>> nextStage() {
+        if (this.index < this.buffer.length) {
+          return StageSupport.completedStage(Either.right(this.buffer[this.index++]));
+        }
+        return AsyncIntIterator.this.nextBatch(AsyncIterators.BATCH_SIZE)
+            .thenApply(batch -> batch.map(values -> {
+              this.buffer = values;
+              this.index = 1;
+              return values[0];
+            }));
+      }
+
+      @Override
+      public Either<End, Integer> tryNext() {
+        return this.index < this.buffer.length ? Either.right(this.buffer[this.index++]) : null;
+      }
+
+      @Override
+      public CompletionStage<Either<End, List<Integer>>> nextBatch(final int maxSize) {
+        AsyncIterators.checkMaxSize(maxSize);
+        if (this.index < this.buffer.length) {
+          return StageSupport.completedStage(Either.right(box(this.buffer, maxSize)));
+        }
+        return AsyncIntIterator.this.nextBatch(maxSize)
+            .thenApply(batch -> batch.map(values -> {
+              this.buffer = values;
+              this.index = 0;
+              return box(values, maxSize);
+            }));
+      }
+
+      private List<Integer> box(final int[] values, final int maxSize) {
+        final int end = Math.min(values.length, this.index + maxSize);
+        final List<Integer> boxed = new ArrayList<>(end - this.index);
+        while (this.index < end) {
+          boxed.add(values[this.index++]);
+        }
+        return boxed;
+      }
+
+      @Override
+      public CompletionStage<Void> close() {
+        return AsyncIntIterator.this.close();
+      }
+    };
+  }
+
+  /**
+   * Sequentially accumulates the elements of {@code this} into a single value.
+   *
+   * <p>
+   * This is a <i>terminal method</i>.
+   *
+   * @param identity the starting value of the accumulation
+   * @param accumulator a function that takes the current accumulated value and a value to fold in
+   *        (in that order), and produces a new accumulated value
+   * @return a {@link CompletionStage} containing the result of repeated application of
+   *         {@code accumulator}
+   */
+  default CompletionStage<Integer> fold(final int identity, final IntBinaryOperator accumulator) {
+    final int[] acc = {identity};
+    return forEach(value -> acc[0] = accumulator.applyAsInt(acc[0], value))
+        .thenApply(ignored -> acc[0]);
+  }
+
+  /**
+   * Sums the elements of {@code this}.
+   *
+   * <p>
+   * This is a <i>terminal method</i>.
+   *
+   * @return a {@link CompletionStage} containing the sum of the elements, or 0 if there are none
+   * @see IntStream#sum()
+   */
+  default CompletionStage<Integer> sum() {
+    return fold(0, Integer::sum);
+  }
+
+  /**
+   * Performs the side effecting action until the end of iteration is reached.
+   *
+   * <p>
+   * This is a <i>terminal method</i>.
+   *
+   * @param action a side-effecting action that takes an int
+   * @return a {@link CompletionStage} that returns when there are no elements left to apply
+   *         {@code action} to, or an exception has been encountered.
+   */
+  default CompletionStage<Void> forEach(final IntConsumer action) {
+    return AsyncTrampoline.asyncWhile(() -> nextBatch(AsyncIterators.BATCH_SIZE)
+        .thenApply(batch -> batch.fold(
+            end -> false,
+            values -> {
+              for (final int value : values) {
+                action.accept(value);
+              }
+              return true;
+            })));
+  }
+
+  /**
+   * Creates an AsyncIntIterator over the elements of an {@link AsyncIterator}. The returned
+   * iterator pulls batches from {@code iterator} with {@link AsyncIterator#nextBatch(int)}, and
+   * closes it when it is closed.
+   *
+   * @param iterator an AsyncIterator of non-null elements
+   * @return an AsyncIntIterator which produces the elements of {@code iterator}. A batch holding a
+   *         null element completes with a {@link NullPointerException}
+   * @see #boxed()
+   */
+  static AsyncIntIterator unboxed(final AsyncIterator<Integer> iterator) {
+    return new AsyncIntIterator() {
+      @Override
+      public CompletionStage<Either<End, int[]>> nextBatch(final int maxSize) {
+        return iterator.nextBatch(maxSize).thenApply(batch -> batch.map(values -> {
+          final int[] unboxed = new int[values.size()];
+          int i = 0;
+          for (final Integer value : values) {
+            unboxed[i++] = value;
+          }
+          return unboxed;
+        }));
+      }
+
+      @Override
+      public CompletionStage<Void> close() {
+        return iterator.close();
+      }
+    };
+  }
+
+  /**
+   * Creates an empty AsyncIntIterator.
+   *
+   * @return an AsyncIntIterator that immediately produces {@link End}
+   */
+  static AsyncIntIterator empty() {
+    return maxSize -> {
+      AsyncIterators.checkMaxSize(maxSize);
+      return End.endStage();
+    };
+  }
+
+  /**
+   * Creates an AsyncIntIterator over the given values. The stages returned by
+   * {@link #nextBatch(int)} will be already completed.
+   *
+   * @param values the elements of the iterator. The array must not be modified during iteration
+   * @return an AsyncIntIterator that produces the given values in order
+   */
+  static AsyncIntIterator of(final int... values) {
+    return new AsyncIntIterator() {
+      int index = 0;
+
+      @Override
+      public CompletionStage<Either<End, int[]>> nextBatch(final int maxSize) {
+        AsyncIterators.checkMaxSize(maxSize);
+        if (this.index >= values.length) {
+          return End.endStage();
+        }
+        final int end = this.index + Math.min(maxSize, values.length - this.index);
+        final int[] batch = Arrays.copyOfRange(values, this.index, end);
+        this.index = end;
+        return StageSupport.completedStage(Either.right(batch));
+      }
+    };
+  }
+
+  /**
+   * Creates an AsyncIntIterator for a range.
+   *
+   * <p>
+   * Similar to {@code for(i = start; i < end; i++)}. The stages returned by
+   * {@link #nextBatch(int)} will be already completed.
+   *
+   * @param start the start point of iteration (inclusive)
+   * @param end the end point of iteration (exclusive)
+   * @return an AsyncIntIterator that will return ints from start to end
+   * @see AsyncLongIterator#range(long, long)
+   */
+  static AsyncIntIterator range(final int start, final int end) {
+    return new AsyncIntIterator() {
+      int counter = start;
+
+      @Override
+      public CompletionStage<Either<End, int[]>> nextBatch(final int maxSize) {
+        AsyncIterators.checkMaxSize(maxSize);
+        if (this.counter >= end) {
+          return End.endStage();
+        }
+        // widen before subtracting, the distance may not fit in an int
+        final int[] batch = new int[(int) Math
+            .min(Math.min(maxSize, AsyncIterators.BATCH_SIZE), (long) end - this.counter)];
+        for (int i = 0; i < batch.length; i++) {
+          batch[i] = this.counter++;
+        }
+        return StageSupport.completedStage(Either.right(batch));
+      }
+    };
+  }
+}
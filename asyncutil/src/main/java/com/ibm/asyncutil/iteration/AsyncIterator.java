@@ -12,12 +12,16 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
@@ -27,6 +31,7 @@ import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collector;
 import java.util.stream.Stream;
 
@@ -269,6 +274,66 @@ public interface AsyncIterator<T> extends AsyncCloseable {
    */
   CompletionStage<Either<End, T>> nextStage();
 
+  /**
+   * Returns a stage that will be completed with a batch of the next elements of {@code this}
+   * iterator, or {@link End} if there are no more elements.
+   *
+   * <p>
+   * A batch holds between 1 and {@code maxSize} elements, which are exactly the elements that
+   * consecutive calls to {@link #nextStage()} would have produced. A batch ends early before the
+   * end of iteration, before an exception, or wherever the implementation chooses, for example
+   * when no more elements are immediately available. If the first result would be exceptional,
+   * the returned stage completes with that exception. Elements past those in the returned batch
+   * are not consumed, so calls to this method may be freely interleaved with calls to
+   * {@link #nextStage()}, and the same restrictions on sequential calls apply to both.
+   *
+   * <p>
+   * This method allows bulk consumers, such as the terminal methods of this interface, to process
+   * many elements for the cost of a single stage. The default implementation produces batches of
+   * a single element from {@link #nextStage()}. Sources which can produce several elements at
+   * once, and intermediate iterators which can process them at once, should override it.
+   *
+   * @param maxSize the greatest number of elements to include in the batch. Must be positive
+   * @return A {@link CompletionStage} of the next batch of elements held in the
+   *         {@link Either#right()} position, or an instance of {@link End} held in the
+   *         {@link Either#left()} position indicating the end of iteration. The batch must not be
+   *         modified
+   * @throws IllegalArgumentException if {@code maxSize} is not positive
+   */
+  default CompletionStage<Either<End, List<T>>> nextBatch(final int maxSize) {
+    AsyncIterators.checkMaxSize(maxSize);
+    return nextStage().thenApply(either -> either.map(Collections::singletonList));
+  }
+
+  /**
+   * Returns the next result of {@code this} iterator if it is immediately available, without
+   * creating a {@link CompletionStage}.
+   *
+   * <p>
+   * If the next result is not immediately available, this method returns null and nothing is
+   * consumed; the result can then be waited for with {@link #nextStage()} or
+   * {@link #nextBatch(int)}. Otherwise the result is consumed exactly as if by
+   * {@link #nextStage()}, so the methods may be freely interleaved. Like {@link #nextStage()}, this
+   * method is <b>not thread safe</b>, and must not be called until any stage returned by a
+   * previous call to {@link #nextStage()} or {@link #nextBatch(int)} has completed.
+   *
+   * <p>
+   * This method allows consumers, such as the terminal methods of this interface, to process
+   * elements that are already available in a loop, and only fall back to asynchronous iteration
+   * when they must wait. The default implementation never finds a result available. Sources whose
+   * elements are often available, and intermediate iterators that can transform them without a
+   * stage, should override it.
+   *
+   * @return the next element held in the {@link Either#right()} position, an instance of
+   *         {@link End} held in the {@link Either#left()} position indicating the end of iteration,
+   *         or null if the next result is not immediately available
+   * @throws CompletionException if the next result is immediately available and exceptional. An
+   *         unchecked exception may also be thrown directly
+   */
+  default Either<End, T> tryNext() {
+    return null;
+  }
+
   /**
    * Relinquishes any resources associated with this iterator.
    *
@@ -557,6 +622,46 @@ public interface AsyncIterator<T> extends AsyncCloseable {
     return AsyncIterator.concat(nestedAsyncIterator);
   }
 
+  /**
+   * Composes {@code fn} with the elements of {@code this} iterator and flattens the resulting
+   * iterators, producing their elements in the order they become available rather than one iterator
+   * after another. Up to {@code executeAhead} of the iterators produced by {@code fn} are consumed
+   * concurrently, and at most {@code executeAhead} of their elements can be outstanding at any
+   * time, counting both the elements still being produced and those waiting to be consumed.
+   * <p>
+   * Unlike {@link #thenFlattenAhead(Function, int)}, a slow iterator does not hold up the elements
+   * of quicker iterators that were produced after it. Use {@link #thenFlattenAhead(Function, int)}
+   * when the order of {@code this} must be retained. Elements from the same iterator are still
+   * produced in that iterator's order.
+   * <p>
+   * Each iterator produced by {@code fn} is closed once it has been consumed; if that close fails,
+   * the exception is produced by the returned iterator. Exceptions from {@code this}, from
+   * {@code fn}, and from the produced iterators are also produced by the returned iterator in
+   * place of their elements, and iteration may continue. Closing the returned iterator stops
+   * consuming {@code this}, closes the iterators that are open, and then closes {@code this}.
+   *
+   * <p>
+   * This is a partially eager <i> intermediate </i> method.
+   *
+   * @param fn A function which produces a CompletionStage of an AsyncIterator
+   * @param executeAhead The greatest number of iterators that may be open, and of elements that may
+   *        be outstanding, at any time. Must be positive
+   * @return A flattened AsyncIterator whose elements are in completion order
+   * @throws IllegalArgumentException if {@code executeAhead} is not positive
+   * @see #thenFlattenAhead(Function, int)
+   * @see #thenComposeAheadUnordered(Function, int)
+   */
+  default <U> AsyncIterator<U> thenFlattenAheadUnordered(
+      final Function<? super T, ? extends CompletionStage<? extends AsyncIterator<U>>> fn,
+      final int executeAhead) {
+    Objects.requireNonNull(fn);
+    if (executeAhead < 1) {
+      throw new IllegalArgumentException("executeAhead must be positive, was " + executeAhead);
+    }
+    return new AsyncIterators.MergingAsyncIterator<>(
+        this, fn, executeAhead, executeAhead, false);
+  }
+
   /**
    * Applies a transformation to {@code this} iterator with parallelism. This method will consume
    * results from {@code this} sequentially, but will apply the mapping function {@code fn} in
@@ -585,6 +690,44 @@ public interface AsyncIterator<T> extends AsyncCloseable {
     return new AsyncIterators.PartiallyEagerAsyncIterator<>(this, executeAhead, eitherF, null);
   }
 
+  /**
+   * Applies a transformation to {@code this} iterator with bounded parallelism, producing results
+   * in the order they become available rather than the order of {@code this}. This method will
+   * consume results from {@code this} sequentially, but will apply the mapping function {@code fn}
+   * in parallel. At most {@code executeAhead} results of {@code fn} can be outstanding at any time,
+   * counting both the stages still running and the results waiting to be consumed; further
+   * elements are not requested from {@code this} until the consumer makes room.
+   * <p>
+   * Unlike {@link #thenComposeAhead(Function, int)}, a slow stage does not hold up the results of
+   * quicker stages that were started after it. Use {@link #thenComposeAhead(Function, int)} when
+   * the order of {@code this} must be retained. Since {@code this} is only consumed as the bound
+   * allows, a large or infinite lazy source -- for example, one created with
+   * {@link #fromIterator(Iterator)} -- can be mapped without materializing it.
+   * <p>
+   * If {@code this} or {@code fn} produces an exception for an element, the exception is produced
+   * by the returned iterator in place of that element's result, and iteration may continue.
+   * Closing the returned iterator stops consuming {@code this}, waits for any started stages to
+   * complete, and then closes {@code this}.
+   *
+   * <p>
+   * This is a partially eager <i> intermediate </i> method.
+   *
+   * @param fn A function which produces a new CompletionStage
+   * @param executeAhead The greatest number of calls to fn whose results may be outstanding at any
+   *        time. Must be positive
+   * @return A transformed AsyncIterator whose results are in completion order
+   * @throws IllegalArgumentException if {@code executeAhead} is not positive
+   * @see #thenComposeAhead(Function, int)
+   */
+  default <U> AsyncIterator<U> thenComposeAheadUnordered(
+      final Function<? super T, ? extends CompletionStage<U>> fn, final int executeAhead) {
+    Objects.requireNonNull(fn);
+    if (executeAhead < 1) {
+      throw new IllegalArgumentException("executeAhead must be positive, was " + executeAhead);
+    }
+    return new AsyncIterators.UnorderedEagerAsyncIterator<>(this, executeAhead, fn);
+  }
+
   /**
    * Transforms the AsyncIterator into one which will only produce results that match {@code
    * predicate}.
@@ -597,29 +740,7 @@ public interface AsyncIterator<T> extends AsyncCloseable {
    * @return a new AsyncIterator which will only return results that match predicate
    */
   default AsyncIterator<T> filter(final Predicate<? super T> predicate) {
-
-    // keep looping looking for a value that satisfies predicate as long as the current value
-    // doesn't, and we're not out of elements
-    final Predicate<Either<End, T>> shouldKeepLooking =
-        either -> either.fold(end -> false, predicate.negate()::test);
-
-    return new AsyncIterator<T>() {
-      @Override
-      public CompletionStage<Either<End, T>> nextStage() {
-        return AsyncIterator.this
-            .nextStage()
-            .thenCompose(
-                t -> AsyncTrampoline.asyncWhile(
-                    shouldKeepLooking,
-                    c -> AsyncIterator.this.nextStage(),
-                    t));
-      }
-
-      @Override
-      public CompletionStage<Void> close() {
-        return AsyncIterator.this.close();
-      }
-    };
+    return AsyncIterators.filterImpl(this, predicate);
   }
 
   /**
@@ -665,23 +786,7 @@ public interface AsyncIterator<T> extends AsyncCloseable {
    * @return an AsyncIterator which will return {@code n} elements or less.
    */
   default AsyncIterator<T> take(final long n) {
-    return new AsyncIterator<T>() {
-      int count = 0;
-
-      @Override
-      public CompletionStage<Either<End, T>> nextStage() {
-        if (++this.count > n) {
-          return End.endStage();
-        } else {
-          return AsyncIterator.this.nextStage();
-        }
-      }
-
-      @Override
-      public CompletionStage<Void> close() {
-        return AsyncIterator.this.close();
-      }
-    };
+    return AsyncIterators.takeImpl(this, n);
   }
 
   /**
@@ -788,6 +893,103 @@ public interface AsyncIterator<T> extends AsyncCloseable {
     };
   }
 
+  /**
+   * Shares {@code this} iterator among several consumers. Returns {@code count} iterators which
+   * each produce every result of {@code this} iterator, in order, while {@code this} iterator is
+   * only consumed once.
+   *
+   * <pre>
+   * {@code
+   * List<AsyncIterator<Record>> copies = records.tee(2, 64);
+   * CompletionStage<Void> indexed = copies.get(0).forEach(indexer::add);
+   * CompletionStage<Summary> summary = copies.get(1).fold(Summary.EMPTY, Summary::add);
+   * }
+   * </pre>
+   *
+   * Each returned iterator follows the usual rules for a single consumer, but different returned
+   * iterators may be consumed concurrently with each other. A result of {@code this} iterator is
+   * requested when the first of them asks for it, and buffered until the last of them has. The
+   * fastest consumer may run at most {@code window} results ahead of the slowest one: after that
+   * its stages will not complete until the slowest consumer catches up. Exceptional results are
+   * produced by every returned iterator.
+   * <p>
+   * A consumer which stops iterating early must {@link #close() close} its iterator, which stops it
+   * from holding back the others. Once all of the returned iterators have been closed,
+   * {@code this} iterator is closed, and the stage returned by the last of those calls to close
+   * completes when it has been.
+   * <p>
+   * This is a lazy <i> intermediate </i> method.
+   *
+   * @param count the number of iterators to return. Must be positive
+   * @param window the greatest number of results by which the fastest of the returned iterators
+   *        may be ahead of the slowest. Must be positive
+   * @return a list of {@code count} iterators which each produce the results of {@code this}
+   * @throws IllegalArgumentException if {@code count} or {@code window} is not positive
+   */
+  default List<AsyncIterator<T>> tee(final int count, final int window) {
+    if (count < 1) {
+      throw new IllegalArgumentException("count must be positive, was " + count);
+    }
+    if (window < 1) {
+      throw new IllegalArgumentException("window must be positive, was " + window);
+    }
+    return Collections.unmodifiableList(
+        new AsyncIterators.TeeAsyncIterators<>(this, count, window).children());
+  }
+
+  /**
+   * Splits {@code this} iterator into several iterators by the key of each element. Returns
+   * {@code partitions} iterators, each of which produces the elements of {@code this} iterator
+   * whose keys hash to it. Elements with equal keys are always produced by the same iterator, in
+   * the order in which {@code this} iterator produced them, so the returned iterators can be
+   * consumed in parallel while preserving the order of the elements of each key.
+   *
+   * <pre>
+   * {@code
+   * List<AsyncIterator<Event>> shards = events.partition(4, Event::getAggregateId, 64);
+   * shards.forEach(shard -> pool.execute(() -> shard.forEach(Aggregates::apply)));
+   * }
+   * </pre>
+   *
+   * {@code this} iterator is consumed sequentially, starting when any of the returned iterators
+   * is first used. Each returned iterator buffers at most {@code bufferSize} elements; while the
+   * buffer of the next element's partition is full, consumption of {@code this} iterator waits, so
+   * a partition which is not consumed eventually holds back the others. An exceptional result of
+   * {@code this} iterator, or an exception thrown by {@code keyFn}, is produced by every returned
+   * iterator.
+   * <p>
+   * A consumer which stops iterating early must {@link #close() close} its iterator, which discards
+   * its buffered elements and all later elements of its partition. Once all of the returned
+   * iterators have been closed, {@code this} iterator is closed, and the stage returned by the last
+   * of those calls to close completes when it has been.
+   * <p>
+   * This is a lazy <i> intermediate </i> method.
+   *
+   * @param partitions the number of iterators to return. Must be positive
+   * @param keyFn a function which produces the key of an element, whose
+   *        {@link Object#hashCode() hash code} determines the element's partition
+   * @param bufferSize the greatest number of elements to buffer for each returned iterator. Must
+   *        be positive
+   * @return a list of {@code partitions} iterators which together produce the elements of
+   *         {@code this}
+   * @throws IllegalArgumentException if {@code partitions} or {@code bufferSize} is not positive
+   */
+  default List<AsyncIterator<T>> partition(
+      final int partitions,
+      final Function<? super T, ?> keyFn,
+      final int bufferSize) {
+    Objects.requireNonNull(keyFn);
+    if (partitions < 1) {
+      throw new IllegalArgumentException("partitions must be positive, was " + partitions);
+    }
+    if (bufferSize < 1) {
+      throw new IllegalArgumentException("bufferSize must be positive, was " + bufferSize);
+    }
+    return Collections.unmodifiableList(
+        new AsyncIterators.PartitioningAsyncIterators<>(this, partitions, keyFn, bufferSize)
+            .partitions());
+  }
+
   /**
    * Collects the results of this iterator in batches, returning an iterator of those batched
    * collections.
@@ -886,17 +1088,56 @@ public interface AsyncIterator<T> extends AsyncCloseable {
    * <p>
    * This is a lazy <i> intermediate </i> method.
    *
+   * @throws IllegalArgumentException if {@code batchSize} is not positive
    * @see #batch(Collector, BiPredicate)
    */
   default <A, R> AsyncIterator<R> batch(
       final Collector<? super T, A, R> collector, final int batchSize) {
+    return batch(collector, t -> 1L, batchSize);
+  }
+
+  /**
+   * A convenience method provided to invoke {@link #batch(Collector, BiPredicate)} with a predicate
+   * that limits the total weight of each batch, for example the number of bytes of the elements.
+   *
+   * <p>
+   * An element is added to the current batch if the batch's weight would not exceed
+   * {@code maxWeight} with it, and otherwise starts the next batch. The first element of a batch is
+   * always added, so an element which alone weighs more than {@code maxWeight} is produced in a
+   * batch of its own.
+   *
+   * <p>
+   * This is a lazy <i> intermediate </i> method.
+   *
+   * @param collector a {@link Collector} used to collect the elements of this iterator into
+   *        individual batches
+   * @param weigher a function which produces the non-negative weight of an element
+   * @param maxWeight the greatest total weight of a batch of more than one element. Must be
+   *        positive
+   * @return an AsyncIterator of batches, each holding consecutive elements of {@code this}
+   *         iterator whose total weight is at most {@code maxWeight}
+   * @throws IllegalArgumentException if {@code maxWeight} is not positive
+   * @see #batch(Collector, BiPredicate)
+   */
+  default <A, R> AsyncIterator<R> batch(
+      final Collector<? super T, A, R> collector,
+      final ToLongFunction<? super T> weigher,
+      final long maxWeight) {
+    Objects.requireNonNull(weigher);
+    if (maxWeight <= 0) {
+      throw new IllegalArgumentException("maxWeight must be positive, was " + maxWeight);
+    }
     class CountingContainer {
       final A container;
       int size;
+      long weight;
+      // the weight of the element last accepted by the predicate, for the accumulator to add
+      long pendingWeight;
 
-      public CountingContainer(final A container, final int size) {
+      public CountingContainer(final A container, final int size, final long weight) {
         this.container = container;
         this.size = size;
+        this.weight = weight;
       }
     }
 
@@ -951,7 +1192,7 @@ public interface AsyncIterator<T> extends AsyncCloseable {
       // supplier
       @Override
       public CountingContainer get() {
-        return new CountingContainer(this.parentSupplier.get(), 0);
+        return new CountingContainer(this.parentSupplier.get(), 0, 0L);
       }
 
       // accumulator
@@ -959,6 +1200,7 @@ public interface AsyncIterator<T> extends AsyncCloseable {
       public void accept(final CountingContainer countingContainer, final T t) {
         this.parentAccumulator.accept(countingContainer.container, t);
         countingContainer.size++;
+        countingContainer.weight += countingContainer.pendingWeight;
       }
 
       // combiner
@@ -969,16 +1211,19 @@ public interface AsyncIterator<T> extends AsyncCloseable {
         // this is an optimistic check to save a new container creation
         if (combined == c1.container) {
           c1.size += c2.size;
+          c1.weight += c2.weight;
           return c1;
         } else {
-          return new CountingContainer(combined, c1.size + c2.size);
+          return new CountingContainer(combined, c1.size + c2.size, c1.weight + c2.weight);
         }
       }
 
       // shouldAddToBatch
       @Override
       public boolean test(final CountingContainer countingContainer, final T t) {
-        return countingContainer.size < batchSize;
+        final long weight = weigher.applyAsLong(t);
+        countingContainer.pendingWeight = weight;
+        return countingContainer.size == 0 || weight <= maxWeight - countingContainer.weight;
       }
     }
 
@@ -986,6 +1231,85 @@ public interface AsyncIterator<T> extends AsyncCloseable {
     return batch(counter, counter);
   }
 
+  /**
+   * A convenience method provided to invoke
+   * {@link #batch(Collector, ToLongFunction, long, long, TimeUnit, ScheduledExecutorService)} with
+   * a weigher that counts elements, so that batches hold at most {@code batchSize} elements.
+   *
+   * <p>
+   * This is a lazy <i> intermediate </i> method.
+   *
+   * @throws IllegalArgumentException if {@code batchSize} is not positive
+   * @see #batch(Collector, ToLongFunction, long, long, TimeUnit, ScheduledExecutorService)
+   */
+  default <A, R> AsyncIterator<R> batch(
+      final Collector<? super T, A, R> collector,
+      final int batchSize,
+      final long linger,
+      final TimeUnit unit,
+      final ScheduledExecutorService scheduler) {
+    return batch(collector, t -> 1L, batchSize, linger, unit, scheduler);
+  }
+
+  /**
+   * Collects the elements of this iterator into batches bounded by weight, as
+   * {@link #batch(Collector, ToLongFunction, long)} does, but also produces a batch once it has
+   * waited {@code linger} for more elements. This is useful to amortize a per-batch cost, such as a
+   * group commit, over many elements: while elements are readily available batches fill up to
+   * {@code maxWeight}, and when they are not a partially filled batch is delayed by at most
+   * {@code linger}.
+   *
+   * <pre>
+   * {@code
+   * AsyncIterator<List<Record>> commits = records.batch(
+   *     Collectors.toList(), Record::size, 1 << 20, 5, TimeUnit.MILLISECONDS, scheduler);
+   * }
+   * </pre>
+   *
+   * The linger time of a batch starts when its first element arrives; a batch is never empty, so
+   * the wait for that first element is not bounded. The linger time only bounds waiting: elements
+   * which are immediately available are added while the batch has room, and if {@code linger} is
+   * not positive each batch holds just the first element and those. A batch also ends when this
+   * iterator ends or produces an exception, in which case the end or exception is produced by the
+   * returned iterator after the batch. An element which arrives after its batch was produced is the
+   * first element of the next batch, so no elements are lost to the timer.
+   *
+   * <p>
+   * A batch whose linger time elapses may be produced by a thread of {@code scheduler}.
+   *
+   * <p>
+   * This is a lazy <i> intermediate </i> method.
+   *
+   * @param collector a {@link Collector} used to collect the elements of this iterator into
+   *        individual batches
+   * @param weigher a function which produces the non-negative weight of an element
+   * @param maxWeight the greatest total weight of a batch of more than one element. Must be
+   *        positive
+   * @param linger the greatest time to wait for more elements after the first element of a batch
+   * @param unit the time unit of the {@code linger} argument
+   * @param scheduler the executor used to schedule the end of a batch's linger time
+   * @return an AsyncIterator of batches, each holding consecutive elements of {@code this}
+   *         iterator
+   * @throws IllegalArgumentException if {@code maxWeight} is not positive
+   * @see #batch(Collector, ToLongFunction, long)
+   */
+  default <A, R> AsyncIterator<R> batch(
+      final Collector<? super T, A, R> collector,
+      final ToLongFunction<? super T> weigher,
+      final long maxWeight,
+      final long linger,
+      final TimeUnit unit,
+      final ScheduledExecutorService scheduler) {
+    Objects.requireNonNull(collector);
+    Objects.requireNonNull(weigher);
+    Objects.requireNonNull(scheduler);
+    if (maxWeight <= 0) {
+      throw new IllegalArgumentException("maxWeight must be positive, was " + maxWeight);
+    }
+    return new AsyncIterators.LingeringBatchAsyncIterator<>(
+        this, collector, weigher, maxWeight, unit.toNanos(linger), scheduler);
+  }
+
   /**
    * Sequentially accumulates the elements of type T in this iterator into a U. This provides an
    * immutable style terminal reduction operation as opposed to the mutable style supported by
@@ -1050,7 +1374,8 @@ public interface AsyncIterator<T> extends AsyncCloseable {
    * @return a {@link CompletionStage} that is completed when consumption is finished
    */
   default CompletionStage<Void> consume() {
-    return AsyncTrampoline.asyncWhile(() -> nextStage().thenApply(Either::isRight));
+    return forEach(ignored -> {
+    });
   }
 
   /**
@@ -1104,16 +1429,30 @@ public interface AsyncIterator<T> extends AsyncCloseable {
    *     action} to, or an exception has been encountered.
    */
   default CompletionStage<Void> forEach(final Consumer<? super T> action) {
-    return AsyncTrampoline.asyncWhile(
-        () -> nextStage()
-            .thenApply(
-                eitherT -> {
-                  eitherT.forEach(
-                      ig -> {
-                      },
-                      action);
-                  return eitherT.isRight();
-                }));
+    return AsyncTrampoline.asyncWhile(() -> {
+      // consume whatever is immediately available before waiting for a batch
+      try {
+        Either<End, T> next;
+        while ((next = tryNext()) != null) {
+          if (!next.isRight()) {
+            return StageSupport.completedStage(false);
+          }
+          action.accept(next.fold(end -> null, t -> t));
+        }
+      } catch (final Throwable e) {
+        return StageSupport.exceptionalStage(e);
+      }
+      return nextBatch(AsyncIterators.BATCH_SIZE)
+          .thenApply(
+              batch -> batch.fold(
+                  end -> false,
+                  ts -> {
+                    for (final T t : ts) {
+                      action.accept(t);
+                    }
+                    return true;
+                  }));
+    });
   }
 
   /**
@@ -1324,6 +1663,86 @@ public interface AsyncIterator<T> extends AsyncCloseable {
     };
   }
 
+  /**
+   * Merges a collection of AsyncIterators into a single AsyncIterator, which produces the elements
+   * of all of them in the order in which they become available.
+   *
+   * <pre>
+   * {@code
+   * // returns an AsyncIterator of the records of all partitions, as soon as any partition has one
+   * AsyncIterator.merge(partitions.stream().map(Partition::reader).collect(Collectors.toList()), 4)
+   * }
+   * </pre>
+   *
+   * Unlike {@link #concat(Collection)}, which consumes its inputs one after another, all of the
+   * input iterators are consumed concurrently once the first element is requested. Each input
+   * iterator is consumed sequentially, and at most {@code prefetch} of its elements are requested
+   * or waiting to be consumed at any time, so a slow consumer holds back the inputs rather than
+   * buffering them without bound. The elements of each input are produced in their original order,
+   * but the elements of different inputs are interleaved arbitrarily.
+   * <p>
+   * Exceptional results of an input iterator are produced as exceptional results of the returned
+   * iterator, and the input continues to be consumed. Once all elements from an input iterator
+   * have been consumed, {@link #close()} is internally called on that iterator; if this produces
+   * an exception, an exceptional stage will be included in the returned iterator. The returned
+   * iterator ends once all of the input iterators have ended.
+   * <p>
+   * Closing the returned iterator stops requesting elements, waits for any outstanding requests,
+   * and closes every input iterator, including those which were not encountered at all. The stage
+   * returned by {@code close} completes once all of them have been closed.
+   *
+   * @param asyncIterators a Collection of AsyncIterators to merge
+   * @param prefetch the greatest number of elements to request from each input iterator ahead of
+   *        the consumer. Must be positive
+   * @return A single AsyncIterator that produces the elements of all of {@code asyncIterators}
+   * @throws IllegalArgumentException if {@code prefetch} is not positive
+   * @see #thenFlattenAheadUnordered(Function, int)
+   */
+  static <T> AsyncIterator<T> merge(
+      final Collection<? extends AsyncIterator<T>> asyncIterators,
+      final int prefetch) {
+    if (prefetch < 1) {
+      throw new IllegalArgumentException("prefetch must be positive, was " + prefetch);
+    }
+    if (asyncIterators.isEmpty()) {
+      return AsyncIterator.empty();
+    }
+    final Iterator<? extends AsyncIterator<T>> iter = asyncIterators.iterator();
+    final AsyncIterator<AsyncIterator<T>> inputs = new AsyncIterator<AsyncIterator<T>>() {
+      @Override
+      public CompletionStage<Either<End, AsyncIterator<T>>> nextStage() {
+        return iter.hasNext()
+            ? StageSupport.completedStage(Either.right(iter.next()))
+            : End.endStage();
+      }
+
+      @Override
+      public CompletionStage<Void> close() {
+        // close the inputs which were never started
+        final Collection<CompletionStage<Void>> remainingIters = new ArrayList<>();
+        while (iter.hasNext()) {
+          remainingIters.add(AsyncIterators.convertSynchronousException(iter.next()::close));
+        }
+        return Combinators.allOf(remainingIters);
+      }
+    };
+    return new AsyncIterators.MergingAsyncIterator<AsyncIterator<T>, T>(
+        inputs, StageSupport::completedStage, asyncIterators.size(), prefetch, true);
+  }
+
+  /**
+   * Merges a collection of AsyncIterators into a single AsyncIterator, requesting at most one
+   * element ahead from each of them, as if by {@link #merge(Collection, int) merge(asyncIterators,
+   * 1)}.
+   *
+   * @param asyncIterators a Collection of AsyncIterators to merge
+   * @return A single AsyncIterator that produces the elements of all of {@code asyncIterators}
+   * @see #merge(Collection, int)
+   */
+  static <T> AsyncIterator<T> merge(final Collection<? extends AsyncIterator<T>> asyncIterators) {
+    return merge(asyncIterators, 1);
+  }
+
   /**
    * Creates an iterator that is the result of fn applied to iteration elements returned by tIt and
    * uI. If either input iterator terminates, the returned iterator will terminate. If either input
@@ -1382,8 +1801,48 @@ public interface AsyncIterator<T> extends AsyncCloseable {
    * @return A new AsyncIterator which will yield the elements of {@code iterator}
    */
   static <T> AsyncIterator<T> fromIterator(final Iterator<? extends T> iterator) {
-    return () -> StageSupport.completedStage(
-        iterator.hasNext() ? Either.right(iterator.next()) : End.end());
+    return new AsyncIterator<T>() {
+      // thrown by the iterator after some elements of a batch were taken, and not yet rethrown
+      RuntimeException pending;
+
+      @Override
+      public CompletionStage<Either<End, T>> nextStage() {
+        return StageSupport.completedStage(tryNext());
+      }
+
+      @Override
+      public Either<End, T> tryNext() {
+        rethrowPending();
+        return iterator.hasNext() ? Either.right(iterator.next()) : End.end();
+      }
+
+      @Override
+      public CompletionStage<Either<End, List<T>>> nextBatch(final int maxSize) {
+        AsyncIterators.checkMaxSize(maxSize);
+        rethrowPending();
+        if (!iterator.hasNext()) {
+          return End.endStage();
+        }
+        final List<T> batch = new ArrayList<>(Math.min(maxSize, 16));
+        batch.add(iterator.next());
+        try {
+          while (batch.size() < maxSize && iterator.hasNext()) {
+            batch.add(iterator.next());
+          }
+        } catch (final RuntimeException e) {
+          this.pending = e;
+        }
+        return StageSupport.completedStage(Either.right(batch));
+      }
+
+      private void rethrowPending() {
+        final RuntimeException e = this.pending;
+        if (e != null) {
+          this.pending = null;
+          throw e;
+        }
+      }
+    };
   }
 
   /**
@@ -1399,9 +1858,14 @@ public interface AsyncIterator<T> extends AsyncCloseable {
 
       @Override
       public CompletionStage<Either<End, T>> nextStage() {
+        return StageSupport.completedStage(tryNext());
+      }
+
+      @Override
+      public Either<End, T> tryNext() {
         final Either<End, T> prev = this.curr;
         this.curr = End.end();
-        return StageSupport.completedStage(prev);
+        return prev;
       }
     };
   }
@@ -1426,8 +1890,25 @@ public interface AsyncIterator<T> extends AsyncCloseable {
    * @return An AsyncIterator that will always return {@code t}
    */
   static <T> AsyncIterator<T> repeat(final T t) {
-    final CompletionStage<Either<End, T>> ret = StageSupport.completedStage(Either.right(t));
-    return () -> ret;
+    final Either<End, T> either = Either.right(t);
+    final CompletionStage<Either<End, T>> ret = StageSupport.completedStage(either);
+    return new AsyncIterator<T>() {
+      @Override
+      public CompletionStage<Either<End, T>> nextStage() {
+        return ret;
+      }
+
+      @Override
+      public Either<End, T> tryNext() {
+        return either;
+      }
+
+      @Override
+      public CompletionStage<Either<End, List<T>>> nextBatch(final int maxSize) {
+        AsyncIterators.checkMaxSize(maxSize);
+        return StageSupport.completedStage(Either.right(Collections.nCopies(maxSize, t)));
+      }
+    };
   }
 
   /**
@@ -1442,6 +1923,7 @@ public interface AsyncIterator<T> extends AsyncCloseable {
    * @param start the start point of iteration (inclusive)
    * @param end the end point of iteration (exclusive)
    * @return an AsyncIterator that will return longs from start to end
+   * @see AsyncLongIterator#range(long, long)
    */
   static AsyncIterator<Long> range(final long start, final long end) {
     if (start >= end) {
@@ -1458,6 +1940,26 @@ public interface AsyncIterator<T> extends AsyncCloseable {
           return End.endStage();
         }
       }
+
+      @Override
+      public Either<End, Long> tryNext() {
+        return this.counter < end ? Either.right(this.counter++) : End.end();
+      }
+
+      @Override
+      public CompletionStage<Either<End, List<Long>>> nextBatch(final int maxSize) {
+        AsyncIterators.checkMaxSize(maxSize);
+        if (this.counter >= end) {
+          return End.endStage();
+        }
+        final int size = AsyncIterators.rangeBatchSize(maxSize, end - this.counter);
+        final long batchEnd = this.counter + size;
+        final List<Long> batch = new ArrayList<>(size);
+        while (this.counter < batchEnd) {
+          batch.add(this.counter++);
+        }
+        return StageSupport.completedStage(Either.right(batch));
+      }
     };
   }
 
@@ -1466,6 +1968,7 @@ public interface AsyncIterator<T> extends AsyncCloseable {
    *
    * @param start the start point of iteration (inclusive)
    * @return an AsyncIterator that will return longs starting with start
+   * @see AsyncLongIterator#infiniteRange(long)
    */
   static AsyncIterator<Long> infiniteRange(final long start) {
     return new AsyncIterator<Long>() {
@@ -1475,6 +1978,22 @@ public interface AsyncIterator<T> extends AsyncCloseable {
       public CompletionStage<Either<End, Long>> nextStage() {
         return StageSupport.completedStage(Either.right(this.counter++));
       }
+
+      @Override
+      public Either<End, Long> tryNext() {
+        return Either.right(this.counter++);
+      }
+
+      @Override
+      public CompletionStage<Either<End, List<Long>>> nextBatch(final int maxSize) {
+        AsyncIterators.checkMaxSize(maxSize);
+        final int size = Math.min(maxSize, AsyncIterators.BATCH_SIZE);
+        final List<Long> batch = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+          batch.add(this.counter++);
+        }
+        return StageSupport.completedStage(Either.right(batch));
+      }
     };
   }
 
@@ -6,23 +6,35 @@
 
 package com.ibm.asyncutil.iteration;
 
-import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
-import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collector;
-import java.util.stream.Collectors;
 
 import com.ibm.asyncutil.iteration.AsyncIterator.End;
-import com.ibm.asyncutil.locks.FairAsyncLock;
+import com.ibm.asyncutil.locks.AsyncSemaphore;
+import com.ibm.asyncutil.locks.FairAsyncSemaphore;
 import com.ibm.asyncutil.util.Combinators;
 import com.ibm.asyncutil.util.Either;
 import com.ibm.asyncutil.util.StageSupport;
@@ -39,6 +51,12 @@ class AsyncIterators {
 
   static final EmptyAsyncIterator<?> EMPTY_ITERATOR = new EmptyAsyncIterator<>();
 
+  /**
+   * The batch size requested by the terminal methods, and the greatest batch that sources which
+   * generate their elements will materialize at once
+   */
+  static final int BATCH_SIZE = 256;
+
   private static class EmptyAsyncIterator<T> implements AsyncIterator<T> {
 
     @Override
@@ -46,6 +64,17 @@ class AsyncIterators {
       return End.endStage();
     }
 
+    @Override
+    public CompletionStage<Either<End, List<T>>> nextBatch(final int maxSize) {
+      checkMaxSize(maxSize);
+      return End.endStage();
+    }
+
+    @Override
+    public Either<End, T> tryNext() {
+      return End.end();
+    }
+
     @Override
     public String toString() {
       return "EmptyAsyncIterator";
@@ -61,6 +90,36 @@ class AsyncIterators {
         : collector.finisher().apply(accumulator);
   }
 
+  static void checkMaxSize(final int maxSize) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("maxSize must be positive, was " + maxSize);
+    }
+  }
+
+  /**
+   * The size of the next batch of a range source with {@code remaining} elements left. The
+   * remaining count is computed as {@code end - counter}, which overflows to a negative value when
+   * the range spans more than {@link Long#MAX_VALUE} elements; there are then more than enough
+   */
+  static int rangeBatchSize(final int maxSize, final long remaining) {
+    final int size = Math.min(maxSize, BATCH_SIZE);
+    return remaining < 0L ? size : (int) Math.min(size, remaining);
+  }
+
+  /**
+   * Throws an exception taken from an exceptional result, wrapping it in a
+   * {@link CompletionException} if it is checked. Declared to return an exception so that callers
+   * can {@code throw} the call
+   */
+  static RuntimeException rethrow(final Throwable ex) {
+    if (ex instanceof RuntimeException) {
+      throw (RuntimeException) ex;
+    } else if (ex instanceof Error) {
+      throw (Error) ex;
+    }
+    throw new CompletionException(ex);
+  }
+
   /** Complete dest with whatever result (T or a Throwable) comes out of source */
   static <T> void listen(final CompletionStage<T> source, final CompletableFuture<T> dest) {
     source.whenComplete(
@@ -97,16 +156,19 @@ class AsyncIterators {
       final boolean synchronous,
       final Executor e) {
     assert !synchronous || e == null;
+    if (synchronous) {
+      @SuppressWarnings("unchecked")
+      final Function<Object, Object> step = t -> f.apply((T) t);
+      return elementwise(it, step, false, Long.MAX_VALUE);
+    }
     return new AsyncIterator<U>() {
       @Override
       public CompletionStage<Either<End, U>> nextStage() {
         final CompletionStage<Either<End, T>> next = it.nextStage();
 
-        return synchronous
-            ? next.thenApply(this::eitherFunction)
-            : e == null
-                ? next.thenApplyAsync(this::eitherFunction)
-                : next.thenApplyAsync(this::eitherFunction, e);
+        return e == null
+            ? next.thenApplyAsync(this::eitherFunction)
+            : next.thenApplyAsync(this::eitherFunction, e);
       }
 
       Either<End, U> eitherFunction(final Either<End, T> either) {
@@ -120,6 +182,290 @@ class AsyncIterators {
     };
   }
 
+  static <T> AsyncIterator<T> filterImpl(
+      final AsyncIterator<T> it,
+      final Predicate<? super T> predicate) {
+    @SuppressWarnings("unchecked")
+    final Function<Object, Object> step =
+        t -> predicate.test((T) t) ? t : ElementwiseAsyncIterator.SKIP;
+    return elementwise(it, step, true, Long.MAX_VALUE);
+  }
+
+  static <T> AsyncIterator<T> takeImpl(final AsyncIterator<T> it, final long n) {
+    return elementwise(it, null, false, n);
+  }
+
+  /*
+   * applies step (if any) to the results of it, and produces at most limit results. If it is an
+   * elementwise iterator that can absorb the step, the step is fused into it instead of wrapping it
+   */
+  @SuppressWarnings("unchecked")
+  private static <T, U> AsyncIterator<U> elementwise(
+      final AsyncIterator<T> it,
+      final Function<Object, Object> step,
+      final boolean filters,
+      final long limit) {
+    if (it instanceof ElementwiseAsyncIterator) {
+      final ElementwiseAsyncIterator<?, T> previous = (ElementwiseAsyncIterator<?, T>) it;
+      if (previous.canFuse(filters)) {
+        return previous.fuse(step, filters, limit);
+      }
+    }
+    return new ElementwiseAsyncIterator<>(
+        it,
+        step == null ? ElementwiseAsyncIterator.IDENTITY : step,
+        filters,
+        limit);
+  }
+
+  /**
+   * An intermediate iterator which produces at most one element for each element of its backing
+   * iterator, such as {@link AsyncIterator#thenApply(Function)},
+   * {@link AsyncIterator#filter(Predicate)} and {@link AsyncIterator#take(long)}. Such an operator
+   * can be applied to a whole batch from the backing iterator's
+   * {@link AsyncIterator#nextBatch(int)}, or to an element from its
+   * {@link AsyncIterator#tryNext()}, without a stage per element.
+   * <p>
+   * Consecutive operators are fused: applying another one to an elementwise iterator produces a
+   * single iterator over the same backing iterator, whose function composes the steps of both. A
+   * pipeline of several synchronous steps thus creates one stage (or one {@link Either}) per
+   * element rather than one per step. An iterator is only fused while it has no buffered elements,
+   * since those would otherwise be lost, and a step which skips elements is never fused after a
+   * limit, since the limit counts the elements before that step.
+   * <p>
+   * A backing batch is buffered until all of its elements have been processed, since the batch
+   * produced by this iterator may be smaller. If the operator throws for an element after results
+   * were collected for earlier elements of the same batch, those results are produced first and
+   * the exception is produced by the following call, as it would have been by
+   * {@link AsyncIterator#nextStage()}.
+   */
+  static final class ElementwiseAsyncIterator<T, U> implements AsyncIterator<U> {
+    /** the result of {@link #fn} for elements which produce nothing */
+    static final Object SKIP = new Object();
+    static final Function<Object, Object> IDENTITY = t -> t;
+
+    private final AsyncIterator<T> backingIterator;
+    /** produces the element for a backing element, or {@link #SKIP} if it produces nothing */
+    private final Function<Object, Object> fn;
+    /** whether {@link #fn} may produce {@link #SKIP} */
+    private final boolean filtering;
+    private final boolean limited;
+    /** the number of results this iterator may still produce, if limited */
+    private long remaining;
+    private List<? extends T> buffered = Collections.emptyList();
+    private int index;
+    private Throwable pendingException;
+
+    ElementwiseAsyncIterator(
+        final AsyncIterator<T> backingIterator,
+        final Function<Object, Object> fn,
+        final boolean filtering,
+        final long limit) {
+      this.backingIterator = backingIterator;
+      this.fn = fn;
+      this.filtering = filtering;
+      this.limited = limit != Long.MAX_VALUE;
+      this.remaining = limit;
+    }
+
+    boolean canFuse(final boolean filters) {
+      return this.buffered.isEmpty()
+          && this.pendingException == null
+          && !(filters && this.limited);
+    }
+
+    <V> ElementwiseAsyncIterator<T, V> fuse(
+        final Function<Object, Object> step,
+        final boolean filters,
+        final long limit) {
+      final Function<Object, Object> first = this.fn;
+      final Function<Object, Object> composed;
+      if (step == null) {
+        composed = first;
+      } else if (first == IDENTITY) {
+        composed = step;
+      } else {
+        composed = t -> {
+          final Object result = first.apply(t);
+          return result == SKIP ? SKIP : step.apply(result);
+        };
+      }
+      return new ElementwiseAsyncIterator<>(
+          this.backingIterator,
+          composed,
+          this.filtering || filters,
+          this.limited ? Math.min(this.remaining, limit) : limit);
+    }
+
+    @Override
+    public CompletionStage<Either<End, U>> nextStage() {
+      if (this.limited && this.remaining <= 0) {
+        return End.endStage();
+      }
+      if (this.index < this.buffered.size() || this.pendingException != null) {
+        final List<U> next = new ArrayList<>(1);
+        final Throwable ex = drain(next, 1);
+        if (ex != null) {
+          return StageSupport.exceptionalStage(ex);
+        }
+        if (!next.isEmpty()) {
+          return StageSupport.completedStage(Either.right(next.get(0)));
+        }
+      }
+      // the result, whatever it is, counts towards the limit
+      this.remaining--;
+      if (this.filtering) {
+        // keep looping looking for an element that produces a result, as long as we're not out of
+        // elements
+        @SuppressWarnings("unchecked")
+        final CompletionStage<Either<End, U>> next = AsyncTrampoline
+            .asyncWhile(
+                result -> result == SKIP,
+                ignored -> this.backingIterator.nextStage().thenApply(this::applyEither),
+                SKIP)
+            .thenApply(result -> (Either<End, U>) result);
+        return next;
+      }
+      if (this.fn == IDENTITY) {
+        @SuppressWarnings("unchecked")
+        final CompletionStage<Either<End, U>> next =
+            (CompletionStage<Either<End, U>>) (CompletionStage<?>) this.backingIterator
+                .nextStage();
+        return next;
+      }
+      return this.backingIterator.nextStage().thenApply(either -> either.map(this::apply));
+    }
+
+    @SuppressWarnings("unchecked")
+    private U apply(final T t) {
+      return (U) this.fn.apply(t);
+    }
+
+    /*
+     * the result for an element of the backing iterator: End, SKIP, or the Either of an element
+     */
+    private Object applyEither(final Either<End, T> either) {
+      if (!either.isRight()) {
+        return either;
+      }
+      final Object result = this.fn.apply(either.fold(end -> null, t -> t));
+      return result == SKIP ? SKIP : Either.right(result);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Either<End, U> tryNext() {
+      if (this.limited && this.remaining <= 0) {
+        return End.end();
+      }
+      if (this.index < this.buffered.size() || this.pendingException != null) {
+        final List<U> next = new ArrayList<>(1);
+        final Throwable ex = drain(next, 1);
+        if (ex != null) {
+          throw rethrow(ex);
+        }
+        if (!next.isEmpty()) {
+          return Either.right(next.get(0));
+        }
+      }
+      try {
+        Either<End, T> next;
+        while ((next = this.backingIterator.tryNext()) != null) {
+          if (!next.isRight()) {
+            return End.end();
+          }
+          final Object result = this.fn.apply(next.fold(end -> null, t -> t));
+          if (result != SKIP) {
+            this.remaining--;
+            return Either.right((U) result);
+          }
+        }
+      } catch (final Throwable e) {
+        this.remaining--;
+        throw e;
+      }
+      return null;
+    }
+
+    @Override
+    public CompletionStage<Either<End, List<U>>> nextBatch(final int maxSize) {
+      checkMaxSize(maxSize);
+      if (this.limited && this.remaining <= 0) {
+        return End.endStage();
+      }
+      final List<U> batch = new ArrayList<>(Math.min(maxSize, BATCH_SIZE));
+      final Throwable ex = drain(batch, maxSize);
+      if (ex != null) {
+        return StageSupport.exceptionalStage(ex);
+      }
+      if (!batch.isEmpty()) {
+        return StageSupport.completedStage(Either.right(batch));
+      }
+      // keep taking batches from the backing iterator until one of them produces something. Each
+      // element produces at most one result, so there's no need to pull more than the limit
+      return AsyncTrampoline
+          .asyncWhile(() -> this.backingIterator
+              .nextBatch((int) Math.min(maxSize, this.remaining))
+              .thenApply(next -> next.fold(
+                  end -> false,
+                  ts -> {
+                    this.buffered = ts;
+                    this.index = 0;
+                    final Throwable failure = drain(batch, maxSize);
+                    if (failure != null) {
+                      throw new CompletionException(failure);
+                    }
+                    return batch.isEmpty();
+                  })))
+          .thenApply(ignored -> batch.isEmpty() ? End.end() : Either.right(batch));
+    }
+
+    /*
+     * move results for the buffered elements into batch until it is full, the buffer is exhausted
+     * or the limit is reached. returns an exception which must be produced instead, if one was
+     * encountered before any results
+     */
+    @SuppressWarnings("unchecked")
+    private Throwable drain(final List<U> batch, final int maxSize) {
+      final Throwable pending = this.pendingException;
+      if (pending != null) {
+        this.pendingException = null;
+        return pending;
+      }
+      final List<? extends T> buffered = this.buffered;
+      while (this.index < buffered.size()
+          && batch.size() < maxSize
+          && (!this.limited || this.remaining > 0)) {
+        final Object result;
+        try {
+          result = this.fn.apply(buffered.get(this.index++));
+        } catch (final Throwable e) {
+          this.remaining--;
+          if (batch.isEmpty()) {
+            return e;
+          }
+          this.pendingException = e;
+          break;
+        }
+        if (result != SKIP) {
+          this.remaining--;
+          batch.add((U) result);
+        }
+      }
+      if (this.index == buffered.size()) {
+        // don't retain the elements
+        this.buffered = Collections.emptyList();
+        this.index = 0;
+      }
+      return null;
+    }
+
+    @Override
+    public CompletionStage<Void> close() {
+      return this.backingIterator.close();
+    }
+  }
+
   static <T, U> AsyncIterator<U> thenComposeImpl(
       final AsyncIterator<T> it,
       final Function<? super T, ? extends CompletionStage<U>> f,
@@ -155,15 +501,43 @@ class AsyncIterators {
     };
   }
 
+  /**
+   * Applies a mapping to the elements of a backing iterator, starting up to {@code executeAhead}
+   * mappings ahead of the consumer while producing their results in the backing iterator's order.
+   * <p>
+   * The stages of the started mappings are kept in a ring indexed by element position, which has
+   * room for the element the consumer is waiting on and {@code executeAhead} more. A single filler
+   * loop consumes the backing iterator sequentially and publishes each mapped stage into its slot;
+   * exclusivity of the filler is arbitrated by {@code state}, so the backing iterator is never
+   * called concurrently. The consumer advances {@code head} and claims its slot: if the filler has
+   * not yet reached it, the consumer leaves a {@link Waiter} there instead, which the filler
+   * completes when it publishes. Slots only ever go from null to a stage or a waiter and back, so
+   * no locking is needed between the single consumer and the single filler.
+   */
   static class PartiallyEagerAsyncIterator<T, U> implements AsyncIterator<U> {
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<PartiallyEagerAsyncIterator> STATE_UPDATER =
+        AtomicIntegerFieldUpdater.newUpdater(PartiallyEagerAsyncIterator.class, "state");
+
+    private static final int IDLE = 0;
+    private static final int FILLING = 1;
+    private static final int CLOSED = 2;
+
     private final AsyncIterator<T> backingIterator;
     private final int executeAhead;
     private final Function<U, CompletionStage<Void>> closeFn;
     private final Function<Either<End, T>, CompletionStage<Either<End, U>>> mappingFn;
-    private final Queue<CompletionStage<Either<End, U>>> pendingResults;
-    private final FairAsyncLock lock;
-    private boolean closed;
-
+    // holds the CompletionStage published for a position, or the Waiter of the consumer
+    private final AtomicReferenceArray<Object> slots;
+    private final CompletableFuture<Void> fillerStopped = new CompletableFuture<>();
+    private volatile boolean closed;
+    private volatile int state = IDLE;
+    // the position of the next element the consumer will take; only written by the consumer
+    private volatile long head;
+    // the position of the backing iterator's end, once the filler has seen it
+    private volatile long endPosition = Long.MAX_VALUE;
+    // the position of the next element the filler will publish; only accessed by the filler
+    private long tail;
 
     PartiallyEagerAsyncIterator(
         final AsyncIterator<T> backingIterator,
@@ -176,98 +550,141 @@ class AsyncIterators {
           ? u -> StageSupport.voidStage()
           : u -> AsyncIterators.convertSynchronousException(() -> closeFn.apply(u));
       this.mappingFn = mappingFn;
-      this.pendingResults = new ArrayDeque<>(executeAhead);
-      this.lock = new FairAsyncLock();
-      this.closed = false;
+      this.slots = new AtomicReferenceArray<>(executeAhead + 1);
     }
 
-    /* return whether we need to keep filling */
-    private CompletionStage<Either<End, T>> fillMore() {
-      if (this.pendingResults.size() >= this.executeAhead) {
-        // don't call nextStage, we already have enough stuff pending
+    private int slot(final long position) {
+      return (int) (position % this.slots.length());
+    }
+
+    @Override
+    public CompletionStage<Either<End, U>> nextStage() {
+      if (this.closed) {
+        return StageSupport.exceptionalStage(
+            new IllegalStateException("nextStage called after async iterator was closed"));
+      }
+      final long position = this.head;
+      this.head = position + 1;
+      if (position > this.endPosition) {
         return End.endStage();
-      } else {
-        // keep filling up the ahead queue
-        final CompletionStage<Either<End, T>> nxt =
-            AsyncIterators.convertSynchronousException(this.backingIterator::nextStage);
-        this.pendingResults.add(nxt.thenCompose(this.mappingFn));
-        return nxt;
       }
+      tryFill();
+      return claim(position);
     }
 
-    /**
-     * Get a nextStage either from the queue or the backing iterator and apply the mappingFn.
-     *
-     * @param listener stage is completed when the mapping function finishes
-     * @return stage that is complete when any calls that this method made to nextStage are complete
-     */
-    private CompletionStage<Void> attachListener(final CompletableFuture<Either<End, U>> listener) {
-      return StageSupport.tryComposeWith(this.lock.acquireLock(), token -> {
-        if (this.closed) {
-          final IllegalStateException ex =
-              new IllegalStateException("nextStage called after async iterator was closed");
-          listener.completeExceptionally(ex);
-          throw ex;
+    @SuppressWarnings("unchecked")
+    private CompletionStage<Either<End, U>> claim(final long position) {
+      final int slot = slot(position);
+      Object published = this.slots.get(slot);
+      if (published == null) {
+        final Waiter<U> waiter = new Waiter<>();
+        if (this.slots.compareAndSet(slot, null, waiter)) {
+          if (position > this.endPosition) {
+            // the filler saw the end while we were installing the waiter
+            waiter.end();
+          }
+          return waiter;
         }
+        published = this.slots.get(slot);
+      }
+      this.slots.set(slot, null);
+      return (CompletionStage<Either<End, U>>) published;
+    }
 
-        final CompletionStage<Either<End, U>> poll = this.pendingResults.poll();
-        if (poll == null) {
+    private void publish(final long position, final CompletionStage<Either<End, U>> stage) {
+      final int slot = slot(position);
+      if (!this.slots.compareAndSet(slot, null, stage)) {
+        // the consumer is already waiting for this position
+        @SuppressWarnings("unchecked")
+        final Waiter<U> waiter = (Waiter<U>) this.slots.get(slot);
+        this.slots.set(slot, null);
+        AsyncIterators.listen(stage, waiter);
+      }
+    }
 
-          // there was nothing in the queue, associate our returned future with a new
-          // safeNextFuture call
-          final CompletionStage<Either<End, T>> nxt =
-              AsyncIterators.convertSynchronousException(this.backingIterator::nextStage);
+    private boolean needsFill() {
+      return this.endPosition == Long.MAX_VALUE && this.tail < this.head + this.executeAhead;
+    }
 
-          // don't bother adding it to the queue, because we are already listening on it
-          AsyncIterators.listen(nxt.thenCompose(this.mappingFn), listener);
+    private void tryFill() {
+      if (this.endPosition == Long.MAX_VALUE && STATE_UPDATER.compareAndSet(this, IDLE, FILLING)) {
+        AsyncTrampoline.asyncWhile(this::fillMore).whenComplete((ignored, ex) -> stopFilling());
+      }
+    }
 
-          return StageSupport.voided(nxt);
-        } else {
-          // let our future be tied to the first result that was in the queue
-          AsyncIterators.listen(poll, listener);
-          return StageSupport.voidStage();
+    /* publish the next element, return whether we need to keep filling */
+    private CompletionStage<Boolean> fillMore() {
+      if (this.closed || !needsFill()) {
+        // don't call nextStage, we already have enough stuff pending
+        return StageSupport.completedStage(false);
+      }
+      final long position = this.tail++;
+      final CompletionStage<Either<End, T>> nxt =
+          AsyncIterators.convertSynchronousException(this.backingIterator::nextStage);
+      publish(position, nxt.thenCompose(this.mappingFn));
+      return nxt.handle((either, ex) -> {
+        if (ex != null || either.isRight()) {
+          // exceptional futures get published same as normal ones, we may continue filling
+          return true;
         }
+        this.endPosition = position;
+        final Object waiting = this.slots.get(slot(position + 1));
+        if (waiting instanceof Waiter) {
+          ((Waiter<?>) waiting).end();
+        }
+        return false;
       });
     }
 
-    @Override
-    public CompletionStage<Either<End, U>> nextStage() {
-      final CompletableFuture<Either<End, U>> listener = new CompletableFuture<>();
-      final CompletionStage<Void> nextFinished = attachListener(listener);
-
-      nextFinished.thenRun(() -> {
-        AsyncTrampoline
-            .asyncWhile(() -> StageSupport.tryComposeWith(this.lock.acquireLock(), token -> {
-              if (this.closed) {
-                return StageSupport.completedStage(false);
-              }
-              return fillMore()
-                  .thenApply(Either::isRight)
-                  // exceptional futures get added to the queue same as normal ones,
-                  // we may continue filling
-                  .exceptionally(e -> true);
-            }));
-      });
-
-      return listener;
+    private void stopFilling() {
+      if (this.closed) {
+        this.state = CLOSED;
+        this.fillerStopped.complete(null);
+        return;
+      }
+      this.state = IDLE;
+      if (this.closed) {
+        if (STATE_UPDATER.compareAndSet(this, IDLE, CLOSED)) {
+          this.fillerStopped.complete(null);
+        }
+      } else if (needsFill()) {
+        // the consumer advanced while we were finishing
+        tryFill();
+      }
     }
 
     /*
-     * wait for all pending results and then call close. epoch guarantees no more new results will
-     * come in
+     * wait for the filler to stop and then close all pending results. the closed state guarantees
+     * no more new results will come in
      */
     @Override
     public CompletionStage<Void> close() {
-      return StageSupport.tryComposeWith(this.lock.acquireLock(), token -> {
-        this.closed = true;
+      this.closed = true;
+      if (STATE_UPDATER.compareAndSet(this, IDLE, CLOSED)) {
+        this.fillerStopped.complete(null);
+      }
+      return this.fillerStopped.thenCompose(ignored -> {
+        final long head = this.head;
+        if (head > 0) {
+          // a result the consumer was waiting on will no longer be published
+          final Object waiting = this.slots.get(slot(head - 1));
+          if (waiting instanceof Waiter) {
+            ((Waiter<?>) waiting).completeExceptionally(
+                new IllegalStateException("async iterator was closed"));
+          }
+        }
+
         // call closeFn on all extra eagerly evaluated results
-        final List<CompletionStage<Void>> closeFutures = this.pendingResults
-            .stream()
-            .map(f -> f.thenCompose(
-                either -> either.fold(
-                    end -> StageSupport.voidStage(),
-                    this.closeFn)))
-            .collect(Collectors.toList());
+        final List<CompletionStage<Void>> closeFutures = new ArrayList<>();
+        for (long position = head; position < this.tail; position++) {
+          @SuppressWarnings("unchecked")
+          final CompletionStage<Either<End, U>> pending =
+              (CompletionStage<Either<End, U>>) this.slots.get(slot(position));
+          closeFutures.add(pending.thenCompose(
+              either -> either.fold(
+                  end -> StageSupport.voidStage(),
+                  this.closeFn)));
+        }
 
         // wait for all to complete
         final CompletionStage<Void> extraClose = Combinators.allOf(closeFutures);
@@ -288,6 +705,832 @@ class AsyncIterators {
             });
       });
     }
+
+    /* left in a slot by a consumer that got there before the filler */
+    private static final class Waiter<U> extends CompletableFuture<Either<End, U>> {
+      void end() {
+        complete(End.end());
+      }
+    }
+  }
+
+  /**
+   * The base of iterators which start asynchronous work for the elements of a backing iterator
+   * with bounded concurrency, and produce the results of that work in the order in which they
+   * become available.
+   * <p>
+   * A driver loop consumes the backing iterator sequentially: for each element it acquires one of
+   * the {@code slots}, applies {@code fn}, and {@link #run(CompletionStage) runs} the work for the
+   * applied stage. The work sends its results (or exceptions) into an unbounded queue, each with
+   * the permits that the consumer returns once it takes that result. The driver is started by the
+   * first call to {@link #nextStage()}.
+   * <p>
+   * {@code state} counts the running work, and its low bit is set once the backing iterator has
+   * been exhausted (or this iterator closed). Whoever moves it to exhausted-with-none-running
+   * terminates the queue, which ends the iteration.
+   * <p>
+   * Closing this iterator releases a single slot, and {@link #wake()} releases anything else the
+   * work may be waiting for. A waiter woken this way observes the close and releases what woke it
+   * again, so it passes through every waiter in turn.
+   */
+  abstract static class CompletionOrderAsyncIterator<T, V, U> implements AsyncIterator<U> {
+    @SuppressWarnings("rawtypes")
+    private static final AtomicLongFieldUpdater<CompletionOrderAsyncIterator> STATE_UPDATER =
+        AtomicLongFieldUpdater.newUpdater(CompletionOrderAsyncIterator.class, "state");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<CompletionOrderAsyncIterator, Throwable>
+        CLOSE_ERROR_UPDATER = AtomicReferenceFieldUpdater.newUpdater(
+            CompletionOrderAsyncIterator.class, Throwable.class, "closeError");
+
+    private static final long EXHAUSTED = 1L;
+    private static final long RUNNING = 2L;
+
+    private final AsyncIterator<T> backingIterator;
+    private final Function<? super T, ? extends CompletionStage<? extends V>> fn;
+    final AsyncSemaphore slots;
+    final AsyncQueue<Result<U>> results = AsyncQueues.unbounded();
+    private final CompletableFuture<Void> allSent = new CompletableFuture<>();
+    volatile boolean closed;
+    private volatile long state;
+    // the first exception from the work's cleanup after this iterator was closed
+    private volatile Throwable closeError;
+    // only accessed by the consumer
+    private CompletionStage<Void> driver;
+
+    CompletionOrderAsyncIterator(
+        final AsyncIterator<T> backingIterator,
+        final Function<? super T, ? extends CompletionStage<? extends V>> fn,
+        final int slots) {
+      this.backingIterator = backingIterator;
+      this.fn = fn;
+      this.slots = new FairAsyncSemaphore(slots);
+    }
+
+    /**
+     * Runs the work for a stage produced by {@code fn}, or for an exception the backing iterator
+     * produced in place of an element. The work is responsible for releasing its slot.
+     *
+     * @return a stage which completes once the work has sent all of its results
+     */
+    abstract CompletionStage<Void> run(CompletionStage<? extends V> applied);
+
+    /** Releases anything else the work may be waiting for, once this iterator has been closed */
+    void wake() {}
+
+    /** Records an exception to be produced by {@link #close()} */
+    void closeFailed(final Throwable ex) {
+      CLOSE_ERROR_UPDATER.compareAndSet(this, null, ex);
+    }
+
+    @Override
+    public CompletionStage<Either<End, U>> nextStage() {
+      if (this.closed) {
+        return StageSupport.exceptionalStage(
+            new IllegalStateException("nextStage called after async iterator was closed"));
+      }
+      if (this.driver == null) {
+        this.driver = AsyncTrampoline.asyncWhile(this::startMore);
+      }
+      return this.results.nextStage().thenCompose(next -> next.fold(
+          end -> End.endStage(),
+          result -> {
+            result.permits.release();
+            return result.exception != null
+                ? StageSupport.exceptionalStage(result.exception)
+                : StageSupport.completedStage(Either.right(result.element));
+          }));
+    }
+
+    /* start the work for the next element, return whether the driver should continue */
+    private CompletionStage<Boolean> startMore() {
+      return this.slots.acquire().thenCompose(ignored -> {
+        if (this.closed) {
+          this.slots.release();
+          return StageSupport.completedStage(false);
+        }
+        return AsyncIterators.convertSynchronousException(this.backingIterator::nextStage)
+            .handle((next, ex) -> {
+              if (ex != null) {
+                // exceptions are produced in the iterator same as results, we may continue
+                start(StageSupport.exceptionalStage(ex));
+                return true;
+              }
+              return next.fold(
+                  end -> {
+                    this.slots.release();
+                    exhaust();
+                    return false;
+                  },
+                  t -> {
+                    start(applyFn(t));
+                    return true;
+                  });
+            });
+      });
+    }
+
+    private CompletionStage<? extends V> applyFn(final T t) {
+      try {
+        return this.fn.apply(t);
+      } catch (final Throwable e) {
+        return StageSupport.exceptionalStage(e);
+      }
+    }
+
+    private void start(final CompletionStage<? extends V> applied) {
+      STATE_UPDATER.addAndGet(this, RUNNING);
+      run(applied).whenComplete((ignored, ex) -> {
+        if (STATE_UPDATER.addAndGet(this, -RUNNING) == EXHAUSTED) {
+          finish();
+        }
+      });
+    }
+
+    private void exhaust() {
+      long curr;
+      do {
+        curr = this.state;
+        if ((curr & EXHAUSTED) != 0) {
+          return;
+        }
+      } while (!STATE_UPDATER.compareAndSet(this, curr, curr | EXHAUSTED));
+      if (curr == 0L) {
+        finish();
+      }
+    }
+
+    private void finish() {
+      this.results.terminate();
+      this.allSent.complete(null);
+    }
+
+    /* stop the driver, wait for the running work to finish, then close the backing iterator */
+    @Override
+    public CompletionStage<Void> close() {
+      if (this.closed) {
+        return StageSupport.voidStage();
+      }
+      this.closed = true;
+      // wake the driver if it's waiting for a slot
+      this.slots.release();
+      wake();
+
+      final CompletionStage<Void> driverStopped = this.driver == null
+          ? StageSupport.voidStage()
+          : StageSupport.thenComposeOrRecover(this.driver, (ig, ex) -> StageSupport.voidStage());
+      final CompletionStage<Void> workDone = driverStopped.thenCompose(ignored -> {
+        exhaust();
+        return this.allSent;
+      });
+      return workDone.thenCompose(ignored -> StageSupport.thenComposeOrRecover(
+          AsyncIterators.convertSynchronousException(this.backingIterator::close),
+          (ig, backingCloseError) -> {
+            final Throwable workCloseError = this.closeError;
+            if (workCloseError != null) {
+              return StageSupport.<Void>exceptionalStage(workCloseError);
+            } else if (backingCloseError != null) {
+              return StageSupport.<Void>exceptionalStage(backingCloseError);
+            }
+            return StageSupport.voidStage();
+          }));
+    }
+
+    /* an element or exception produced by the work, and the permits to return once consumed */
+    static final class Result<U> {
+      final AsyncSemaphore permits;
+      final U element;
+      final Throwable exception;
+
+      Result(final AsyncSemaphore permits, final U element, final Throwable exception) {
+        this.permits = permits;
+        this.element = element;
+        this.exception = exception;
+      }
+    }
+  }
+
+  /**
+   * Applies an asynchronous mapping to the elements of a backing iterator with bounded
+   * parallelism, producing the results in the order in which they complete.
+   * <p>
+   * A mapping holds its slot until its result (or exception) has been consumed, so at most
+   * {@code executeAhead} results are being computed or waiting to be consumed at any time.
+   */
+  static class UnorderedEagerAsyncIterator<T, U> extends CompletionOrderAsyncIterator<T, U, U> {
+    UnorderedEagerAsyncIterator(
+        final AsyncIterator<T> backingIterator,
+        final int executeAhead,
+        final Function<? super T, ? extends CompletionStage<U>> mappingFn) {
+      super(backingIterator, mappingFn, executeAhead);
+    }
+
+    @Override
+    CompletionStage<Void> run(final CompletionStage<? extends U> mapped) {
+      return mapped.handle((u, ex) -> {
+        this.results.send(new Result<>(this.slots, u, ex));
+        return null;
+      });
+    }
+  }
+
+  /**
+   * Flattens the iterators produced by a mapping of a backing iterator, interleaving the elements
+   * of several of them in the order in which they become available.
+   * <p>
+   * Each of the {@code maxOpen} slots holds a lane. A lane waits for its iterator and then consumes
+   * it sequentially, acquiring a permit before requesting each element and sending the element (or
+   * exception) into the queue. The consumer returns a permit for each result it takes, so at most
+   * {@code maxBuffered} elements are being requested or waiting to be consumed at any time. The
+   * permits are either shared by all lanes, or if {@code perLane} is set, each lane has
+   * {@code maxBuffered} permits of its own, so that a fast lane cannot hold up the others. When its
+   * iterator ends, a lane closes it and frees its slot; like {@link ConcatAsyncIterator}, an
+   * exception from that close is produced as a result of its own.
+   * <p>
+   * Closing this iterator also releases a single permit (of every lane, if they have their own),
+   * which passes through every lane waiting for room in turn.
+   */
+  static class MergingAsyncIterator<T, U>
+      extends CompletionOrderAsyncIterator<T, AsyncIterator<U>, U> {
+    private final int maxBuffered;
+    // the permits shared by all lanes, or null if each lane has its own
+    private final AsyncSemaphore permits;
+    // the permits of the running lanes, or null if they are shared
+    private final Set<AsyncSemaphore> lanePermits;
+
+    MergingAsyncIterator(
+        final AsyncIterator<T> backingIterator,
+        final Function<? super T, ? extends CompletionStage<? extends AsyncIterator<U>>> fn,
+        final int maxOpen,
+        final int maxBuffered,
+        final boolean perLane) {
+      super(backingIterator, fn, maxOpen);
+      this.maxBuffered = maxBuffered;
+      this.permits = perLane ? null : new FairAsyncSemaphore(maxBuffered);
+      this.lanePermits = perLane ? ConcurrentHashMap.newKeySet() : null;
+    }
+
+    @Override
+    CompletionStage<Void> run(final CompletionStage<? extends AsyncIterator<U>> iteratorStage) {
+      final AsyncSemaphore permits;
+      if (this.lanePermits == null) {
+        permits = this.permits;
+      } else {
+        permits = new FairAsyncSemaphore(this.maxBuffered);
+        this.lanePermits.add(permits);
+      }
+      return StageSupport.thenComposeOrRecover(
+          iteratorStage,
+          (it, ex) -> drain(ex == null ? it : errorOnce(ex), permits))
+          .whenComplete((ignored, ex) -> {
+            if (this.lanePermits != null) {
+              this.lanePermits.remove(permits);
+            }
+            this.slots.release();
+          });
+    }
+
+    @Override
+    void wake() {
+      if (this.lanePermits == null) {
+        this.permits.release();
+      } else {
+        // a lane started after this point observes the close before it can wait
+        for (final AsyncSemaphore permits : this.lanePermits) {
+          permits.release();
+        }
+      }
+    }
+
+    /* send the elements of the given iterator into the queue, then close it */
+    private CompletionStage<Void> drain(final AsyncIterator<U> it, final AsyncSemaphore permits) {
+      return AsyncTrampoline.asyncWhile(() -> pull(it, permits))
+          .thenCompose(ignored -> StageSupport.thenComposeOrRecover(
+              AsyncIterators.convertSynchronousException(it::close),
+              (ig, ex) -> {
+                if (ex == null) {
+                  return StageSupport.voidStage();
+                }
+                if (this.closed) {
+                  closeFailed(ex);
+                  return StageSupport.voidStage();
+                }
+                return drain(errorOnce(ex), permits);
+              }));
+    }
+
+    private CompletionStage<Boolean> pull(
+        final AsyncIterator<U> it,
+        final AsyncSemaphore permits) {
+      return permits.acquire().thenCompose(ignored -> {
+        if (this.closed) {
+          permits.release();
+          return StageSupport.completedStage(false);
+        }
+        return AsyncIterators.convertSynchronousException(it::nextStage)
+            .handle((next, ex) -> {
+              if (ex != null) {
+                this.results.send(new Result<>(permits, null, ex));
+                return true;
+              }
+              return next.fold(
+                  end -> {
+                    permits.release();
+                    return false;
+                  },
+                  u -> {
+                    this.results.send(new Result<>(permits, u, null));
+                    return true;
+                  });
+            });
+      });
+    }
+  }
+
+  /**
+   * Shares a single backing iterator among several child iterators, each of which produces all of
+   * its results.
+   * <p>
+   * Results are kept in a ring of {@code window} slots indexed by position. A child requesting the
+   * position that has not been requested from the backing iterator yet claims it by advancing
+   * {@code fetched}, and then requests it from the backing iterator; children requesting earlier
+   * positions share the stage in the slot. Since a child only asks for the next position after its
+   * previous stage has completed, the backing iterator is never called concurrently. A position
+   * may only be requested while it is less than {@code window} ahead of the slowest open child, so
+   * a slot is only reused once every child has moved past its previous position. A child which is
+   * too far ahead waits for {@code room}, a stage which is completed whenever a child advances.
+   * <p>
+   * Once every child has been closed, the backing iterator is closed after any request to it has
+   * completed.
+   */
+  static final class TeeAsyncIterators<T> {
+    @SuppressWarnings("rawtypes")
+    private static final AtomicLongFieldUpdater<TeeAsyncIterators> FETCHED_UPDATER =
+        AtomicLongFieldUpdater.newUpdater(TeeAsyncIterators.class, "fetched");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<TeeAsyncIterators> OPEN_UPDATER =
+        AtomicIntegerFieldUpdater.newUpdater(TeeAsyncIterators.class, "open");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<TeeAsyncIterators, CompletableFuture> ROOM_UPDATER =
+        AtomicReferenceFieldUpdater.newUpdater(
+            TeeAsyncIterators.class, CompletableFuture.class, "room");
+
+    private final AsyncIterator<T> backingIterator;
+    private final int window;
+    private final AtomicReferenceArray<Slot<T>> slots;
+    private final List<Child> children;
+    // the number of positions which have been requested from the backing iterator
+    private volatile long fetched;
+    private volatile int open;
+    private volatile long endPosition = Long.MAX_VALUE;
+    private volatile CompletionStage<?> lastFetch = StageSupport.voidStage();
+    private volatile CompletableFuture<Void> room;
+
+    TeeAsyncIterators(final AsyncIterator<T> backingIterator, final int count, final int window) {
+      this.backingIterator = backingIterator;
+      this.window = window;
+      this.slots = new AtomicReferenceArray<>(window);
+      final List<Child> children = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        children.add(new Child());
+      }
+      this.children = children;
+      this.open = count;
+    }
+
+    List<? extends AsyncIterator<T>> children() {
+      return this.children;
+    }
+
+    /* the position of the slowest open child, or Long.MAX_VALUE if all of them are closed */
+    private long minPosition() {
+      long min = Long.MAX_VALUE;
+      for (final Child child : this.children) {
+        min = Math.min(min, child.position);
+      }
+      return min;
+    }
+
+    private boolean hasRoom(final long position) {
+      return position - minPosition() < this.window;
+    }
+
+    private Slot<T> slot(final long position) {
+      final int index = (int) (position % this.window);
+      Slot<T> slot;
+      while ((slot = this.slots.get(index)) == null || slot.position < position) {
+        final Slot<T> next = new Slot<>(position);
+        if (this.slots.compareAndSet(index, slot, next)) {
+          return next;
+        }
+      }
+      assert slot.position == position;
+      return slot;
+    }
+
+    private void fetch(final long position) {
+      final CompletableFuture<Either<End, T>> future = slot(position).future;
+      final CompletionStage<Either<End, T>> next =
+          convertSynchronousException(this.backingIterator::nextStage);
+      this.lastFetch = next;
+      next.whenComplete((either, ex) -> {
+        if (ex != null) {
+          future.completeExceptionally(ex);
+        } else {
+          if (!either.isRight()) {
+            this.endPosition = position;
+          }
+          future.complete(either);
+        }
+      });
+    }
+
+    @SuppressWarnings("unchecked")
+    private CompletableFuture<Void> awaitRoom(final long position) {
+      CompletableFuture<Void> r;
+      while ((r = this.room) == null) {
+        ROOM_UPDATER.compareAndSet(this, null, new CompletableFuture<Void>());
+      }
+      // recheck after publishing the waiter, in case the slowest child advanced in the meantime
+      if (this.fetched != position || hasRoom(position)) {
+        wakeWaiters();
+      }
+      return r;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void wakeWaiters() {
+      final CompletableFuture<Void> r = this.room;
+      if (r != null && ROOM_UPDATER.compareAndSet(this, r, null)) {
+        r.complete(null);
+      }
+    }
+
+    private final class Child implements AsyncIterator<T> {
+      // the next position this child will request, or Long.MAX_VALUE once it is closed
+      volatile long position;
+
+      @Override
+      public CompletionStage<Either<End, T>> nextStage() {
+        final long p = this.position;
+        if (p == Long.MAX_VALUE) {
+          return StageSupport.exceptionalStage(
+              new IllegalStateException("nextStage called after async iterator was closed"));
+        }
+        if (p > TeeAsyncIterators.this.endPosition) {
+          return End.endStage();
+        }
+        if (TeeAsyncIterators.this.fetched == p) {
+          if (!hasRoom(p)) {
+            // too far ahead of the slowest child
+            return awaitRoom(p).thenCompose(ignored -> nextStage());
+          }
+          if (FETCHED_UPDATER.compareAndSet(TeeAsyncIterators.this, p, p + 1)) {
+            fetch(p);
+          }
+        }
+        final CompletableFuture<Either<End, T>> future = slot(p).future;
+        // only move past the slot once holding its stage, so that it isn't reused before
+        this.position = p + 1;
+        wakeWaiters();
+        return future;
+      }
+
+      @Override
+      public CompletionStage<Void> close() {
+        if (this.position == Long.MAX_VALUE) {
+          return StageSupport.voidStage();
+        }
+        this.position = Long.MAX_VALUE;
+        wakeWaiters();
+        if (OPEN_UPDATER.decrementAndGet(TeeAsyncIterators.this) != 0) {
+          return StageSupport.voidStage();
+        }
+        final AsyncIterator<T> backing = TeeAsyncIterators.this.backingIterator;
+        return StageSupport.thenComposeOrRecover(
+            TeeAsyncIterators.this.lastFetch,
+            (ignored, ex) -> convertSynchronousException(backing::close));
+      }
+    }
+
+    private static final class Slot<T> {
+      final long position;
+      final CompletableFuture<Either<End, T>> future = new CompletableFuture<>();
+
+      Slot(final long position) {
+        this.position = position;
+      }
+    }
+  }
+
+  /**
+   * Splits a backing iterator into several child iterators by the hash of a key of each element.
+   * <p>
+   * A single driver loop, started by the first request of any child, consumes the backing
+   * iterator sequentially and sends each element into the buffered queue of its partition, waiting
+   * for room in that queue before requesting the next element. Since the elements with equal keys
+   * all pass through the same queue, they are produced in their original order. An exceptional
+   * result, whether from the backing iterator or from the key function, has no partition, so it is
+   * sent to every open partition.
+   * <p>
+   * Closing a child terminates its queue and discards whatever it holds, so the driver is never
+   * held up by a partition that nobody consumes; later elements of that partition are dropped. Once
+   * every child has been closed, the driver stops and the backing iterator is closed.
+   */
+  static final class PartitioningAsyncIterators<T> {
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<PartitioningAsyncIterators> STARTED_UPDATER =
+        AtomicIntegerFieldUpdater.newUpdater(PartitioningAsyncIterators.class, "started");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<PartitioningAsyncIterators> OPEN_UPDATER =
+        AtomicIntegerFieldUpdater.newUpdater(PartitioningAsyncIterators.class, "open");
+
+    private final AsyncIterator<T> backingIterator;
+    private final Function<? super T, ?> keyFn;
+    private final List<Partition> partitions;
+    private final CompletableFuture<Void> driverStopped = new CompletableFuture<>();
+    private volatile int started;
+    private volatile int open;
+
+    PartitioningAsyncIterators(
+        final AsyncIterator<T> backingIterator,
+        final int count,
+        final Function<? super T, ?> keyFn,
+        final int bufferSize) {
+      this.backingIterator = backingIterator;
+      this.keyFn = keyFn;
+      final List<Partition> partitions = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        partitions.add(new Partition(AsyncQueues.buffered(bufferSize)));
+      }
+      this.partitions = partitions;
+      this.open = count;
+    }
+
+    List<? extends AsyncIterator<T>> partitions() {
+      return this.partitions;
+    }
+
+    private void start() {
+      if (this.started == 0 && STARTED_UPDATER.compareAndSet(this, 0, 1)) {
+        AsyncTrampoline.asyncWhile(this::sendNext).whenComplete((ignored, ex) -> {
+          for (final Partition partition : this.partitions) {
+            partition.queue.terminate();
+          }
+          this.driverStopped.complete(null);
+        });
+      }
+    }
+
+    /* send the next element to its partition, return whether the driver should continue */
+    private CompletionStage<Boolean> sendNext() {
+      if (this.open == 0) {
+        return StageSupport.completedStage(false);
+      }
+      return convertSynchronousException(this.backingIterator::nextStage)
+          .handle((next, ex) -> {
+            if (ex != null) {
+              return broadcast(ex);
+            }
+            return next.fold(
+                end -> StageSupport.completedStage(false),
+                t -> {
+                  final Partition partition;
+                  try {
+                    partition = partitionOf(t);
+                  } catch (final Throwable e) {
+                    return broadcast(e);
+                  }
+                  return partition.queue.send(Either.right(t)).thenApply(ignored -> true);
+                });
+          })
+          .thenCompose(sent -> sent);
+    }
+
+    private Partition partitionOf(final T t) {
+      final int h = Objects.hashCode(this.keyFn.apply(t));
+      // spread the high bits, as keys often differ only there
+      return this.partitions.get(Math.floorMod(h ^ (h >>> 16), this.partitions.size()));
+    }
+
+    private CompletionStage<Boolean> broadcast(final Throwable ex) {
+      final Collection<CompletionStage<Boolean>> sent = new ArrayList<>(this.partitions.size());
+      for (final Partition partition : this.partitions) {
+        sent.add(partition.queue.send(Either.left(ex)));
+      }
+      return Combinators.allOf(sent).thenApply(ignored -> true);
+    }
+
+    private final class Partition implements AsyncIterator<T> {
+      final BoundedAsyncQueue<Either<Throwable, T>> queue;
+      boolean closed;
+
+      Partition(final BoundedAsyncQueue<Either<Throwable, T>> queue) {
+        this.queue = queue;
+      }
+
+      @Override
+      public CompletionStage<Either<End, T>> nextStage() {
+        start();
+        return this.queue.nextStage().thenCompose(next -> next.fold(
+            end -> End.endStage(),
+            result -> result.fold(
+                StageSupport::exceptionalStage,
+                t -> StageSupport.completedStage(Either.right(t)))));
+      }
+
+      @Override
+      public Either<End, T> tryNext() {
+        start();
+        final Either<End, Either<Throwable, T>> next = this.queue.tryNext();
+        if (next == null || !next.isRight()) {
+          return next == null ? null : End.end();
+        }
+        final Either<Throwable, T> result = next.fold(end -> null, r -> r);
+        if (!result.isRight()) {
+          throw rethrow(result.fold(ex -> ex, t -> null));
+        }
+        return Either.right(result.fold(ex -> null, t -> t));
+      }
+
+      @Override
+      public CompletionStage<Void> close() {
+        if (this.closed) {
+          return StageSupport.voidStage();
+        }
+        this.closed = true;
+        final PartitioningAsyncIterators<T> parent = PartitioningAsyncIterators.this;
+        // later sends are rejected, and discarding the buffer releases a send (or the terminate
+        // itself) waiting for room
+        this.queue.terminate();
+        return this.queue.consume().thenCompose(ignored -> {
+          if (OPEN_UPDATER.decrementAndGet(parent) != 0) {
+            return StageSupport.voidStage();
+          }
+          final CompletionStage<Void> stopped = STARTED_UPDATER.compareAndSet(parent, 0, 1)
+              ? StageSupport.voidStage()
+              : parent.driverStopped;
+          return stopped.thenCompose(
+              ig -> convertSynchronousException(parent.backingIterator::close));
+        });
+      }
+    }
+  }
+
+  /**
+   * The iterator returned by
+   * {@link AsyncIterator#batch(Collector, ToLongFunction, long, long, TimeUnit,
+   * ScheduledExecutorService)}.
+   * <p>
+   * Elements which are immediately available are added to the batch while it has room. Any other
+   * element is raced against the batch's linger timer through a {@code step} future: whichever
+   * completes it first decides whether the element joins the batch. The timer is only scheduled
+   * once an element is not immediately available, and at most once per batch, so a busy source
+   * fills its batches without touching the scheduler or the clock. The timer runs a single
+   * {@link Linger} action per batch, which completes whichever step is current when it fires,
+   * rather than registering a dependent for every element that must wait. An element which does
+   * not join the batch -- because it arrived too late, did not fit, or is an end or exception -- is
+   * kept in {@code pending} to start the next batch.
+   */
+  static final class LingeringBatchAsyncIterator<T, A, R> implements AsyncIterator<R> {
+    private final AsyncIterator<T> backingIterator;
+    private final Collector<? super T, A, R> collector;
+    private final ToLongFunction<? super T> weigher;
+    private final long maxWeight;
+    private final long lingerNanos;
+    private final ScheduledExecutorService scheduler;
+    private CompletionStage<Either<End, T>> pending;
+
+    // the batch being collected
+    private A batch;
+    private long weight;
+    private long start;
+    private Linger linger;
+    private ScheduledFuture<?> timer;
+
+    LingeringBatchAsyncIterator(
+        final AsyncIterator<T> backingIterator,
+        final Collector<? super T, A, R> collector,
+        final ToLongFunction<? super T> weigher,
+        final long maxWeight,
+        final long lingerNanos,
+        final ScheduledExecutorService scheduler) {
+      this.backingIterator = backingIterator;
+      this.collector = collector;
+      this.weigher = weigher;
+      this.maxWeight = maxWeight;
+      this.lingerNanos = lingerNanos;
+      this.scheduler = scheduler;
+    }
+
+    @Override
+    public CompletionStage<Either<End, R>> nextStage() {
+      final CompletionStage<Either<End, T>> first =
+          this.pending != null ? this.pending : this.backingIterator.nextStage();
+      this.pending = null;
+      return first.thenCompose(either -> either.fold(end -> End.endStage(), t -> {
+        this.start = System.nanoTime();
+        this.batch = this.collector.supplier().get();
+        this.weight = 0L;
+        // the first element is always added, whatever it weighs
+        add(t, this.weigher.applyAsLong(t));
+        return AsyncTrampoline.asyncWhile(this::collectNext)
+            .whenComplete((ignored, ex) -> {
+              if (this.timer != null) {
+                // the scheduler may retain the cancelled task, so drop its reference to the step
+                this.linger.step = null;
+                this.timer.cancel(false);
+              }
+              this.timer = null;
+              this.linger = null;
+            })
+            .thenApply(ignored -> {
+              final A batch = this.batch;
+              this.batch = null;
+              return Either.right(finishContainer(batch, this.collector));
+            });
+      }));
+    }
+
+    @Override
+    public CompletionStage<Void> close() {
+      final CompletionStage<Either<End, T>> pending = this.pending;
+      this.pending = null;
+      return pending == null
+          ? this.backingIterator.close()
+          // the timer may have left a call outstanding, which must finish before closing
+          : pending.handle((either, ex) -> null)
+              .thenCompose(ignored -> this.backingIterator.close());
+    }
+
+    private void add(final T t, final long weight) {
+      this.collector.accumulator().accept(this.batch, t);
+      this.weight += weight;
+    }
+
+    /**
+     * Try to add the next element of the backing iterator to the batch, completing with whether
+     * the batch may take more elements
+     */
+    private CompletionStage<Boolean> collectNext() {
+      if (this.weight >= this.maxWeight) {
+        return StageSupport.completedStage(Boolean.FALSE);
+      }
+      final CompletionStage<Either<End, T>> next = this.backingIterator.nextStage();
+      final CompletableFuture<Either<End, T>> step = new CompletableFuture<>();
+      listen(next, step);
+      if (!step.isDone()) {
+        if (this.linger == null) {
+          final long remaining = this.lingerNanos - (System.nanoTime() - this.start);
+          if (remaining <= 0) {
+            this.pending = next;
+            return StageSupport.completedStage(Boolean.FALSE);
+          }
+          this.linger = new Linger();
+          this.timer = this.scheduler.schedule(this.linger, remaining, TimeUnit.NANOSECONDS);
+        }
+        this.linger.await(step);
+      }
+      return step.handle((either, ex) -> {
+        if (ex == null && either != null && either.isRight()) {
+          final T t = either.fold(end -> null, element -> element);
+          final long weight = this.weigher.applyAsLong(t);
+          if (weight <= this.maxWeight - this.weight) {
+            add(t, weight);
+            return Boolean.TRUE;
+          }
+        }
+        this.pending = next;
+        return Boolean.FALSE;
+      });
+    }
+
+    /**
+     * The linger timer of one batch. A null result in a step means the linger time elapsed first
+     */
+    private final class Linger implements Runnable {
+      /*
+       * Awaiting a step writes it and then reads `elapsed`, while the timer writes `elapsed` and
+       * then reads the step; at least one side observes the other, so no step waits past the timer
+       */
+      private volatile boolean elapsed;
+      volatile CompletableFuture<Either<End, T>> step;
+
+      void await(final CompletableFuture<Either<End, T>> step) {
+        this.step = step;
+        if (this.elapsed) {
+          step.complete(null);
+        }
+      }
+
+      @Override
+      public void run() {
+        this.elapsed = true;
+        final CompletableFuture<Either<End, T>> step = this.step;
+        if (step != null) {
+          step.complete(null);
+        }
+      }
+    }
   }
 
   private static class FailOnceAsyncIterator<T> implements AsyncIterator<T> {
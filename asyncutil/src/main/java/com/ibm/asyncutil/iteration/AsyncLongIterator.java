@@ -0,0 +1,444 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.iteration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+import java.util.function.LongUnaryOperator;
+import java.util.stream.LongStream;
+
+import com.ibm.asyncutil.iteration.AsyncIterator.End;
+import com.ibm.asyncutil.util.AsyncCloseable;
+import com.ibm.asyncutil.util.Either;
+import com.ibm.asyncutil.util.StageSupport;
+
+/**
+ * A specialization of {@link AsyncIterator} for {@code long} elements.
+ * <p>
+ * Rather than producing each element in its own stage, boxed and wrapped in an {@link Either}, an
+ * AsyncLongIterator produces its elements in batches held in {@code long} arrays through
+ * {@link #nextBatch(int)}, which is the only method an implementation must provide. Batches follow
+ * the same rules as {@link AsyncIterator#nextBatch(int)}, and the same restrictions on sequential
+ * calls apply.
+ * <p>
+ * Intermediate methods such as {@link #map(LongUnaryOperator)} and {@link #filter(LongPredicate)}
+ * process whole batches at a time. If a function throws for any element of a batch, the stage of
+ * that batch completes exceptionally and none of its elements are produced. An AsyncLongIterator
+ * can be converted to and from the generic interface with {@link #boxed()} and
+ * {@link #unboxed(AsyncIterator)}.
+ *
+ * @see AsyncIterator
+ * @see LongStream
+ */
+public interface AsyncLongIterator extends AsyncCloseable {
+
+  /**
+   * Returns a stage that will be completed with a batch of the next elements of {@code this}
+   * iterator, or {@link End} if there are no more elements.
+   *
+   * <p>
+   * A batch holds between 1 and {@code maxSize} elements. Like {@link AsyncIterator#nextStage()},
+   * this method is <b>not thread safe</b>, and sequential calls should not be made until the stage
+   * returned by the previous call has completed. After an iterator emits an {@link End} indicator,
+   * the result of subsequent calls is undefined.
+   *
+   * @param maxSize the greatest number of elements to include in the batch. Must be positive
+   * @return A {@link CompletionStage} of the next batch of elements held in the
+   *         {@link Either#right()} position, or an instance of {@link End} held in the
+   *         {@link Either#left()} position indicating the end of iteration. The batch must not be
+   *         modified
+   * @throws IllegalArgumentException if {@code maxSize} is not positive
+   */
+  CompletionStage<Either<End, long[]>> nextBatch(int maxSize);
+
+  /**
+   * Relinquishes any resources associated with this iterator.
+   *
+   * <p>
+   * As with {@link AsyncIterator#close()}, the default implementation does nothing, and
+   * intermediate methods propagate the close to the iterator they were called on.
+   *
+   * @return a {@link CompletionStage} that completes when all resources associated with this
+   *         iterator have been relinquished.
+   */
+  @Override
+  default CompletionStage<Void> close() {
+    return StageSupport.voidStage();
+  }
+
+  /**
+   * Transforms {@code this} into a new AsyncLongIterator that iterates over the results of
+   * {@code fn} applied to the elements of {@code this}.
+   *
+   * <p>
+   * This is a lazy <i> intermediate </i> method.
+   *
+   * @param fn a function which produces a new element from an element of {@code this}
+   * @return A new AsyncLongIterator which produces the results of {@code fn}
+   */
+  default AsyncLongIterator map(final LongUnaryOperator fn) {
+    return new AsyncLongIterator() {
+      @Override
+      public CompletionStage<Either<End, long[]>> nextBatch(final int maxSize) {
+        return AsyncLongIterator.this.nextBatch(maxSize).thenApply(batch -> batch.map(values -> {
+          final long[] mapped = new long[values.length];
+          for (int i = 0; i < values.length; i++) {
+            mapped[i] = fn.applyAsLong(values[i]);
+          }
+          return mapped;
+        }));
+      }
+
+      @Override
+      public CompletionStage<Void> close() {
+        return AsyncLongIterator.this.close();
+      }
+    };
+  }
+
+  /**
+   * Transforms {@code this} into a new AsyncLongIterator that only produces the elements of
+   * {@code this} which satisfy {@code predicate}.
+   *
+   * <p>
+   * This is a lazy <i> intermediate </i> method.
+   *
+   * @param predicate a predicate which returns true for the elements that should be kept
+   * @return A new AsyncLongIterator which only produces elements that satisfy {@code predicate}
+   */
+  default AsyncLongIterator filter(final LongPredicate predicate) {
+    return new AsyncLongIterator() {
+      @Override
+      public CompletionStage<Either<End, long[]>> nextBatch(final int maxSize) {
+        // keep pulling until a batch keeps at least one element; null until one does
+        return AsyncTrampoline.<Either<End, long[]>>asyncWhile(
+            result -> result == null,
+            ignored -> AsyncLongIterator.this.nextBatch(maxSize).thenApply(batch -> batch.fold(
+                end -> batch,
+                values -> {
+                  final long[] selected = new long[values.length];
+                  int count = 0;
+                  for (final long value : values) {
+                    if (predicate.test(value)) {
+                      selected[count++] = value;
+                    }
+                  }
+                  if (count == 0) {
+                    return null;
+                  }
+                  return Either.right(
+                      count == values.length ? values : Arrays.copyOf(selected, count));
+                })),
+            null);
+      }
+
+      @Override
+      public CompletionStage<Void> close() {
+        return AsyncLongIterator.this.close();
+      }
+    };
+  }
+
+  /**
+   * Collects the elements of {@code this} into arrays of {@code batchSize} elements. The last
+   * array may hold fewer elements if the end of iteration is reached before it is full.
+   *
+   * <p>
+   * This is a lazy <i> intermediate </i> method.
+   *
+   * @param batchSize the number of elements to collect into each array. Must be positive
+   * @return an AsyncIterator over arrays of the elements of {@code this}
+   * @throws IllegalArgumentException if {@code batchSize} is not positive
+   */
+  default AsyncIterator<long[]> batch(final int batchSize) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("batchSize must be positive, was " + batchSize);
+    }
+    return new AsyncIterator<long[]>() {
+      boolean exhausted = false;
+
+      @Override
+      public CompletionStage<Either<End, long[]>> nextStage() {
+        if (this.exhausted) {
+          return End.endStage();
+        }
+        final long[] values = new long[batchSize];
+        final int[] filled = {0};
+        return AsyncTrampoline
+            .asyncWhile(() -> AsyncLongIterator.this.nextBatch(batchSize - filled[0])
+                .thenApply(batch -> batch.fold(
+                    end -> {
+                      this.exhausted = true;
+                      return false;
+                    },
+                    chunk -> {
+                      System.arraycopy(chunk, 0, values, filled[0], chunk.length);
+                      filled[0] += chunk.length;
+                      return filled[0] < batchSize;
+                    })))
+            .thenApply(ignored -> {
+              if (filled[0] == 0) {
+                return End.end();
+              }
+              return Either.right(
+                  filled[0] == batchSize ? values : Arrays.copyOf(values, filled[0]));
+            });
+      }
+
+      @Override
+      public CompletionStage<Void> close() {
+        return AsyncLongIterator.this.close();
+      }
+    };
+  }
+
+  /**
+   * Converts {@code this} into an {@link AsyncIterator} of boxed elements.
+   *
+   * <p>
+   * The returned iterator pulls batches from {@code this}, so its {@link AsyncIterator#tryNext()}
+   * and {@link AsyncIterator#nextBatch(int)} methods serve the remainder of the last batch without
+   * creating a stage.
+   *
+   * @return an AsyncIterator which produces the elements of {@code this}
+   * @see #unboxed(AsyncIterator)
+   */
+  default AsyncIterator<Long> boxed() {
+    return new AsyncIterator<Long>() {
+      long[] buffer = new long[0];
+      int index = 0;
+
+      @Override
+      public CompletionStage<Either<End, Long>> nextStage() {
+        if (this.index < this.buffer.length) {
+          return StageSupport.completedStage(Either.right(this.buffer[this.index++]));
+        }
+        return AsyncLongIterator.this.nextBatch(AsyncIterators.BATCH_SIZE)
+            .thenApply(batch -> batch.map(values -> {
+              this.buffer = values;
+              this.index = 1;
+              return values[0];
+            }));
+      }
+
+      @Override
+      public Either<End, Long> tryNext() {
+        return this.index < this.buffer.length ? Either.right(this.buffer[this.index++]) : null;
+      }
+
+      @Override
+      public CompletionStage<Either<End, List<Long>>> nextBatch(final int maxSize) {
+        AsyncIterators.checkMaxSize(maxSize);
+        if (this.index < this.buffer.length) {
+          return StageSupport.completedStage(Either.right(box(this.buffer, maxSize)));
+        }
+        return AsyncLongIterator.this.nextBatch(maxSize)
+            .thenApply(batch -> batch.map(values -> {
+              this.buffer = values;
+              this.index = 0;
+              return box(values, maxSize);
+            }));
+      }
+
+      private List<Long> box(final long[] values, final int maxSize) {
+        final int end = Math.min(values.length, this.index + maxSize);
+        final List<Long> boxed = new ArrayList<>(end - this.index);
+        while (this.index < end) {
+          boxed.add(values[this.index++]);
+        }
+        return boxed;
+      }
+
+      @Override
+      public CompletionStage<Void> close() {
+        return AsyncLongIterator.this.close();
+      }
+    };
+  }
+
+  /**
+   * Sequentially accumulates the elements of {@code this} into a single value.
+   *
+   * <p>
+   * This is a <i>terminal method</i>.
+   *
+   * @param identity the starting value of the accumulation
+   * @param accumulator a function that takes the current accumulated value and a value to fold in
+   *        (in that order), and produces a new accumulated value
+   * @return a {@link CompletionStage} containing the result of repeated application of
+   *         {@code accumulator}
+   */
+  default CompletionStage<Long> fold(final long identity, final LongBinaryOperator accumulator) {
+    final long[] acc = {identity};
+    return forEach(value -> acc[0] = accumulator.applyAsLong(acc[0], value))
+        .thenApply(ignored -> acc[0]);
+  }
+
+  /**
+   * Sums the elements of {@code this}.
+   *
+   * <p>
+   * This is a <i>terminal method</i>.
+   *
+   * @return a {@link CompletionStage} containing the sum of the elements, or 0 if there are none
+   * @see LongStream#sum()
+   */
+  default CompletionStage<Long> sum() {
+    return fold(0L, Long::sum);
+  }
+
+  /**
+   * Performs the side effecting action until the end of iteration is reached.
+   *
+   * <p>
+   * This is a <i>terminal method</i>.
+   *
+   * @param action a side-effecting action that takes a long
+   * @return a {@link CompletionStage} that returns when there are no elements left to apply
+   *         {@code action} to, or an exception has been encountered.
+   */
+  default CompletionStage<Void> forEach(final LongConsumer action) {
+    return AsyncTrampoline.asyncWhile(() -> nextBatch(AsyncIterators.BATCH_SIZE)
+        .thenApply(batch -> batch.fold(
+            end -> false,
+            values -> {
+              for (final long value : values) {
+                action.accept(value);
+              }
+              return true;
+            })));
+  }
+
+  /**
+   * Creates an AsyncLongIterator over the elements of an {@link AsyncIterator}. The returned
+   * iterator pulls batches from {@code iterator} with {@link AsyncIterator#nextBatch(int)}, and
+   * closes it when it is closed.
+   *
+   * @param iterator an AsyncIterator of non-null elements
+   * @return an AsyncLongIterator which produces the elements of {@code iterator}. A batch holding a
+   *         null element completes with a {@link NullPointerException}
+   * @see #boxed()
+   */
+  static AsyncLongIterator unboxed(final AsyncIterator<Long> iterator) {
+    return new AsyncLongIterator() {
+      @Override
+      public CompletionStage<Either<End, long[]>> nextBatch(final int maxSize) {
+        return iterator.nextBatch(maxSize).thenApply(batch -> batch.map(values -> {
+          final long[] unboxed = new long[values.size()];
+          int i = 0;
+          for (final Long value : values) {
+            unboxed[i++] = value;
+          }
+          return unboxed;
+        }));
+      }
+
+      @Override
+      public CompletionStage<Void> close() {
+        return iterator.close();
+      }
+    };
+  }
+
+  /**
+   * Creates an empty AsyncLongIterator.
+   *
+   * @return an AsyncLongIterator that immediately produces {@link End}
+   */
+  static AsyncLongIterator empty() {
+    return maxSize -> {
+      AsyncIterators.checkMaxSize(maxSize);
+      return End.endStage();
+    };
+  }
+
+  /**
+   * Creates an AsyncLongIterator over the given values. The stages returned by
+   * {@link #nextBatch(int)} will be already completed.
+   *
+   * @param values the elements of the iterator. The array must not be modified during iteration
+   * @return an AsyncLongIterator that produces the given values in order
+   */
+  static AsyncLongIterator of(final long... values) {
+    return new AsyncLongIterator() {
+      int index = 0;
+
+      @Override
+      public CompletionStage<Either<End, long[]>> nextBatch(final int maxSize) {
+        AsyncIterators.checkMaxSize(maxSize);
+        if (this.index >= values.length) {
+          return End.endStage();
+        }
+        final int end = this.index + Math.min(maxSize, values.length - this.index);
+        final long[] batch = Arrays.copyOfRange(values, this.index, end);
+        this.index = end;
+        return StageSupport.completedStage(Either.right(batch));
+      }
+    };
+  }
+
+  /**
+   * Creates an AsyncLongIterator for a range.
+   *
+   * <p>
+   * Similar to {@code for(i = start; i < end; i++)}. The stages returned by
+   * {@link #nextBatch(int)} will be already completed.
+   *
+   * @param start the start point of iteration (inclusive)
+   * @param end the end point of iteration (exclusive)
+   * @return an AsyncLongIterator that will return longs from start to end
+   * @see AsyncIterator#range(long, long)
+   */
+  static AsyncLongIterator range(final long start, final long end) {
+    return new AsyncLongIterator() {
+      long counter = start;
+
+      @Override
+      public CompletionStage<Either<End, long[]>> nextBatch(final int maxSize) {
+        AsyncIterators.checkMaxSize(maxSize);
+        if (this.counter >= end) {
+          return End.endStage();
+        }
+        final long[] batch =
+            new long[AsyncIterators.rangeBatchSize(maxSize, end - this.counter)];
+        for (int i = 0; i < batch.length; i++) {
+          batch[i] = this.counter++;
+        }
+        return StageSupport.completedStage(Either.right(batch));
+      }
+    };
+  }
+
+  /**
+   * Creates an infinite AsyncLongIterator starting at {@code start}. The stages returned by
+   * {@link #nextBatch(int)} will be already completed.
+   *
+   * @param start the start point of iteration (inclusive)
+   * @return an AsyncLongIterator that will return longs starting with start
+   * @see AsyncIterator#infiniteRange(long)
+   */
+  static AsyncLongIterator infiniteRange(final long start) {
+    return new AsyncLongIterator() {
+      long counter = start;
+
+      @Override
+      public CompletionStage<Either<End, long[]>> nextBatch(final int maxSize) {
+        AsyncIterators.checkMaxSize(maxSize);
+        final long[] batch = new long[Math.min(maxSize, AsyncIterators.BATCH_SIZE)];
+        for (int i = 0; i < batch.length; i++) {
+          batch[i] = this.counter++;
+        }
+        return StageSupport.completedStage(Either.right(batch));
+      }
+    };
+  }
+}
@@ -6,17 +6,25 @@
 
 package com.ibm.asyncutil.iteration;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
-import com.ibm.asyncutil.locks.AsyncSemaphore;
+import com.ibm.asyncutil.iteration.AsyncIterator.End;
 import com.ibm.asyncutil.locks.FairAsyncSemaphore;
 import com.ibm.asyncutil.util.Either;
+import com.ibm.asyncutil.util.StageSupport;
 
 /**
- * Methods to construct various multi-producer-single-consumer (mpsc) AsyncQueues.
+ * Methods to construct various multi-producer-single-consumer (mpsc) AsyncQueues, and a
+ * multi-producer-multi-consumer (mpmc) variant.
  *
  * @author Ravi Khadiwala
  * @see AsyncQueue
@@ -25,6 +33,12 @@ import com.ibm.asyncutil.util.Either;
 public final class AsyncQueues {
   private AsyncQueues() {}
 
+  private static final CompletionStage<Boolean> ACCEPTED = StageSupport.completedStage(true);
+  private static final CompletionStage<Boolean> REJECTED = StageSupport.completedStage(false);
+
+  // stands in for sent null values in queues which use null to mark an absent value
+  private static final Object NULL_VALUE = new Object();
+
   /**
    * Creates an unbounded AsyncQueue.
    *
@@ -40,6 +54,29 @@ public final class AsyncQueues {
     return new UnboundedQueue<>();
   }
 
+  /**
+   * Creates an unbounded AsyncQueue which supports multiple concurrent consumers.
+   *
+   * <p>
+   * Unlike the other queues created by this class, {@link AsyncQueue#nextStage() nextStage} and
+   * {@link AsyncQueue#poll() poll} on the returned queue are thread safe: several consumers may
+   * concurrently pull values from the queue, for example by each running their own
+   * {@link AsyncIterator#forEach forEach} over it. Each sent value is delivered to exactly one
+   * consumer. Consumers waiting for values are fulfilled in the order in which they called
+   * {@code nextStage}. Once the queue is terminated and all values sent before the termination have
+   * been delivered, every consumer receives an end of iteration notification.
+   *
+   * <p>
+   * As with {@link #unbounded()}, sends always complete synchronously and throttling must be
+   * managed by the senders. See {@link AsyncQueue} for details.
+   *
+   * @return an {@link AsyncQueue} which supports multiple consumers
+   * @see AsyncQueue
+   */
+  public static <T> AsyncQueue<T> unboundedMultiConsumer() {
+    return new MultiConsumerQueue<>();
+  }
+
   /**
    * Creates a bounded AsyncQueue.
    *
@@ -49,13 +86,10 @@ public final class AsyncQueues {
    * you can consume this work. See {@link BoundedAsyncQueue} for details.
    *
    * @return a {@link BoundedAsyncQueue}
+   * @see #singleProducerBuffered(int)
    */
   public static <T> BoundedAsyncQueue<T> bounded() {
-    // this could be implemented more efficiently
-    // 1. using an AsyncSemaphore(1) instead of a lock
-    // 2. the AsyncSemaphore(1) actually ends up making this single consumer/single producer, so it
-    // could potentially be done with a cheaper implementation
-    return new BufferedQueue<>(1);
+    return new RingBufferQueue<>(1);
   }
 
   /**
@@ -69,9 +103,65 @@ public final class AsyncQueues {
    *        backpressure to senders
    * @param <T> the type of elements in the returned queue
    * @return a {@link BoundedAsyncQueue} with a buffer size of {@code maxBuffer} elements
+   * @throws IllegalArgumentException if {@code maxBuffer} is not positive
    */
   public static <T> BoundedAsyncQueue<T> buffered(final int maxBuffer) {
-    return new BufferedQueue<>(maxBuffer);
+    if (maxBuffer <= 0) {
+      throw new IllegalArgumentException("maxBuffer must be positive, was " + maxBuffer);
+    }
+    return new RingBufferQueue<>(maxBuffer);
+  }
+
+  /**
+   * Creates a buffered AsyncQueue for a single producer.
+   *
+   * <p>
+   * This queue can accept up to {@code maxBuffer} values before the futures returned by send become
+   * delayed, like {@link #buffered(int)}. Unlike the other queues created by this class, however,
+   * {@link BoundedAsyncQueue#send send} and {@link BoundedAsyncQueue#terminate() terminate} on the
+   * returned queue are <b>not</b> thread safe: calls to them must not overlap, for example by being
+   * made from a single producer thread or by a producer which waits for each send to complete
+   * before making the next. A send made before the previous send's stage has completed is still
+   * accepted, and is queued behind that send. In exchange, the queue hands off values without any
+   * compare-and-swap operations, which makes it well suited to pipelines that pass values between
+   * exactly two stages. {@code singleProducerBuffered(1)} is the single producer analog of
+   * {@link #bounded()}.
+   *
+   * @param maxBuffer the maximum number of values that the queue will accept before applying
+   *        backpressure to the sender
+   * @param <T> the type of elements in the returned queue
+   * @return a {@link BoundedAsyncQueue} with a buffer size of {@code maxBuffer} elements, which
+   *         supports a single producer and a single consumer
+   * @throws IllegalArgumentException if {@code maxBuffer} is not positive
+   */
+  public static <T> BoundedAsyncQueue<T> singleProducerBuffered(final int maxBuffer) {
+    if (maxBuffer <= 0) {
+      throw new IllegalArgumentException("maxBuffer must be positive, was " + maxBuffer);
+    }
+    return new SingleProducerQueue<>(maxBuffer);
+  }
+
+  /**
+   * Implements {@link AsyncIterator#nextBatch(int)} for a queue using its
+   * {@link AsyncIterator#tryNext()}, which must not throw. The batch holds the elements which are
+   * available at once; if there are none, the queue's next result is waited for as a batch of its
+   * own.
+   */
+  private static <T> CompletionStage<Either<End, List<T>>> availableBatch(
+      final AsyncIterator<T> queue, final int maxSize) {
+    AsyncIterators.checkMaxSize(maxSize);
+    Either<End, T> next = queue.tryNext();
+    if (next == null) {
+      return queue.nextStage().thenApply(either -> either.map(Collections::singletonList));
+    }
+    if (!next.isRight()) {
+      return End.endStage();
+    }
+    final List<T> batch = new ArrayList<>(Math.min(maxSize, AsyncIterators.BATCH_SIZE));
+    do {
+      batch.add(next.fold(end -> null, t -> t));
+    } while (batch.size() < maxSize && (next = queue.tryNext()) != null && next.isRight());
+    return StageSupport.completedStage(Either.right(batch));
   }
 
   /**
@@ -158,16 +248,25 @@ public final class AsyncQueues {
 
     @Override
     public Optional<T> poll() {
+      final Either<End, T> currentResult = tryNext();
+      // future wasn't completed
+      return currentResult == null ? Optional.empty() : currentResult.right();
+    }
+
+    @Override
+    public CompletionStage<Either<End, List<T>>> nextBatch(final int maxSize) {
+      return availableBatch(this, maxSize);
+    }
+
+    @Override
+    public Either<End, T> tryNext() {
       // head can never complete exceptionally so this should never throw
       final Either<End, T> currentResult = this.head.getNow(null);
       if (currentResult != null) {
         // we're going to consume a value, move the header pointer forward
         this.head = this.head.next;
-        return currentResult.right();
       }
-
-      // future wasn't completed
-      return Optional.empty();
+      return currentResult;
     }
 
     @Override
@@ -206,79 +305,463 @@ public final class AsyncQueues {
   }
 
   /**
-   * Implementation is backed by an {@link AsyncSemaphore} which throttles the number of elements
-   * that can be in the linked list in the backing {@link UnboundedQueue}.
+   * A lock-free implementation of an unbounded {@link AsyncQueue}, which supports a multi-producer
+   * multi-consumer model.
    *
    * <p>
-   * This implementation is Fair - if there are two non-overlapping calls to send, the consumer will
-   * see the first call before the second.
+   * Values are stored in a {@link ConcurrentLinkedQueue}, and a {@link FairAsyncSemaphore} counts
+   * the values available to consumers: each send adds its value and then releases a permit, and
+   * each consumer acquires a permit and then removes a value. The semaphore's FIFO policy orders
+   * waiting consumers, and a consumer that holds a permit is guaranteed to find a value.
+   *
+   * <p>
+   * Termination releases a practically inexhaustible number of permits, after which consumers which
+   * find no value observe the end of iteration. So that no accepted value can be found after the
+   * end, the termination permits are only released once every send that was accepted before
+   * termination has released its own permit. {@code sendState} tracks this: its low bit is set once
+   * the queue is terminated, and the remaining bits count the sends in progress. Whoever moves the
+   * state to terminated-with-no-sends (a terminate with no sends in progress, or the last such
+   * send) releases the termination permits.
    *
    * @param <T>
    */
-  private static class BufferedQueue<T> implements BoundedAsyncQueue<T> {
-    final AsyncSemaphore sendThrottle;
-    final AsyncQueue<T> backingQueue;
+  private static final class MultiConsumerQueue<T> implements AsyncQueue<T> {
+    @SuppressWarnings("rawtypes")
+    private static final AtomicLongFieldUpdater<MultiConsumerQueue> STATE_UPDATER =
+        AtomicLongFieldUpdater.newUpdater(MultiConsumerQueue.class, "sendState");
 
-    BufferedQueue(final int bufferSize) {
-      this.sendThrottle = new FairAsyncSemaphore(bufferSize);
-      this.backingQueue = AsyncQueues.unbounded();
+    private static final long TERMINATED = 1L;
+    private static final long SENDER = 2L;
+    // enough permits to never run out, while leaving room for the values still in the queue
+    private static final long TERMINATION_PERMITS = FairAsyncSemaphore.MAX_PERMITS / 2;
+    private final ConcurrentLinkedQueue<Object> values = new ConcurrentLinkedQueue<>();
+    private final FairAsyncSemaphore available = new FairAsyncSemaphore(0L);
+    private volatile long sendState;
+
+    @Override
+    public CompletionStage<Either<End, T>> nextStage() {
+      return this.available.acquire().thenApply(ignored -> take());
+    }
+
+    @Override
+    public Optional<T> poll() {
+      if (this.available.tryAcquire()) {
+        return take().right();
+      }
+      return Optional.empty();
+    }
+
+    @Override
+    public CompletionStage<Either<End, List<T>>> nextBatch(final int maxSize) {
+      return availableBatch(this, maxSize);
+    }
+
+    @Override
+    public Either<End, T> tryNext() {
+      return this.available.tryAcquire() ? take() : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Either<End, T> take() {
+      final Object value = this.values.poll();
+      if (value == null) {
+        // only possible after termination
+        return End.end();
+      }
+      return Either.right(value == NULL_VALUE ? null : (T) value);
+    }
+
+    @Override
+    public boolean send(final T item) {
+      long state;
+      do {
+        state = this.sendState;
+        if ((state & TERMINATED) != 0) {
+          return false;
+        }
+      } while (!STATE_UPDATER.compareAndSet(this, state, state + SENDER));
+
+      this.values.offer(item == null ? NULL_VALUE : item);
+      this.available.release();
+
+      if (STATE_UPDATER.addAndGet(this, -SENDER) == TERMINATED) {
+        // terminate was called during our send, and we're the last sender
+        this.available.release(TERMINATION_PERMITS);
+      }
+      return true;
+    }
+
+    @Override
+    public void terminate() {
+      long state;
+      do {
+        state = this.sendState;
+        if ((state & TERMINATED) != 0) {
+          return;
+        }
+      } while (!STATE_UPDATER.compareAndSet(this, state, state | TERMINATED));
+
+      if (state == 0L) {
+        // no sends in progress
+        this.available.release(TERMINATION_PERMITS);
+      }
+    }
+  }
+
+  /**
+   * A bounded {@link BoundedAsyncQueue} which stores its elements in a pre-sized array, supporting
+   * a multi-producer single-consumer model. This implementation is Fair - if there are two
+   * non-overlapping calls to send, the consumer will see the first call before the second.
+   *
+   * <p>
+   * A {@link FairAsyncSemaphore} with a permit per array slot throttles senders: a sender must hold
+   * a permit to claim a slot, and the consumer releases the permit after it has cleared the slot.
+   * Consequently at most {@code capacity} slots are ever occupied, and a claimed slot is always
+   * empty. Senders that find the array full wait in the semaphore's FIFO queue; they are the only
+   * senders which allocate a future.
+   *
+   * <p>
+   * Senders claim slots in order by incrementing the {@code sendState} counter, whose low bit is
+   * set once the queue is terminated; setting the bit and claiming a slot are thus mutually
+   * exclusive, and every slot claimed before termination is eventually written. The consumer reads
+   * the slot at its private {@code head} index. If the slot has not been written yet the consumer
+   * parks by publishing a future to {@code consumerWaiter} and re-checking the slot; senders, after
+   * writing a slot, and terminate, after setting the terminated bit, complete any parked future.
+   * The consumer observes the end of iteration once the queue is terminated and {@code head} has
+   * reached the last claimed slot.
+   *
+   * @param <T>
+   */
+  private static final class RingBufferQueue<T> implements BoundedAsyncQueue<T> {
+    @SuppressWarnings("rawtypes")
+    private static final AtomicLongFieldUpdater<RingBufferQueue> STATE_UPDATER =
+        AtomicLongFieldUpdater.newUpdater(RingBufferQueue.class, "sendState");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<RingBufferQueue, CompletableFuture> WAITER_UPDATER =
+        AtomicReferenceFieldUpdater.newUpdater(RingBufferQueue.class, CompletableFuture.class,
+            "consumerWaiter");
+
+    private static final long TERMINATED = 1L;
+    private static final long SLOT = 2L;
+
+    private final FairAsyncSemaphore sendThrottle;
+    private final AtomicReferenceArray<Object> slots;
+    private final int capacity;
+    private volatile long sendState;
+    private volatile CompletableFuture<Void> consumerWaiter;
+    // only accessed by the consumer
+    private long head;
+
+    RingBufferQueue(final int capacity) {
+      this.capacity = capacity;
+      this.slots = new AtomicReferenceArray<>(capacity);
+      this.sendThrottle = new FairAsyncSemaphore(capacity);
     }
 
     @Override
-    // ask for a future from the backing queue, release permit on completion since we
-    // dequeued something.
     public CompletionStage<Either<End, T>> nextStage() {
-      return this.backingQueue
-          .nextStage()
-          .thenApply(res -> {
-            // only need to release if the backing queue is open. after it is closed, senders
-            // will
-            // release automatically
-            res.forEach(ig -> {
-            }, t -> this.sendThrottle.release());
-            return res;
-          });
+      final int index = index(this.head);
+      Object value = this.slots.get(index);
+      if (value != null) {
+        return StageSupport.completedStage(take(index, value));
+      }
+      if (isDrained()) {
+        return End.endStage();
+      }
+
+      final CompletableFuture<Void> waiter = new CompletableFuture<>();
+      this.consumerWaiter = waiter;
+      // re-check after publishing the waiter, a sender may have written the slot in between
+      value = this.slots.get(index);
+      if (value != null) {
+        WAITER_UPDATER.compareAndSet(this, waiter, null);
+        return StageSupport.completedStage(take(index, value));
+      }
+      if (isDrained()) {
+        WAITER_UPDATER.compareAndSet(this, waiter, null);
+        return End.endStage();
+      }
+      // a wake-up may come from a sender other than the one that claimed our slot, in which case
+      // nextStage will park again
+      return waiter.thenCompose(ignored -> nextStage());
+    }
+
+    @Override
+    public Optional<T> poll() {
+      final int index = index(this.head);
+      final Object value = this.slots.get(index);
+      if (value == null) {
+        return Optional.empty();
+      }
+      return take(index, value).right();
+    }
+
+    @Override
+    public CompletionStage<Either<End, List<T>>> nextBatch(final int maxSize) {
+      return availableBatch(this, maxSize);
+    }
+
+    @Override
+    public Either<End, T> tryNext() {
+      final int index = index(this.head);
+      final Object value = this.slots.get(index);
+      return value == null ? null : take(index, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Either<End, T> take(final int index, final Object value) {
+      this.slots.lazySet(index, null);
+      this.head++;
+      // releasing may run sender continuations, so finish updating consumer state first
+      this.sendThrottle.release();
+      return Either.right(value == NULL_VALUE ? null : (T) value);
+    }
+
+    private boolean isDrained() {
+      final long state = this.sendState;
+      return (state & TERMINATED) != 0 && state >>> 1 == this.head;
+    }
+
+    private int index(final long position) {
+      return (int) (position % this.capacity);
     }
 
     @Override
-    // acquire a permit and enqueue a node on the backing queue
     public CompletionStage<Boolean> send(final T item) {
-      return this.sendThrottle
-          // acquire a permit, this represents the node we put
-          // in the queue in our underlying queue
-          .acquire()
-          .thenApply(ig -> {
-            final boolean accepted = this.backingQueue.send(item);
-            if (!accepted) {
-              // the backing queue was closed, so our item will never be consumed. we should
-              // release the permit we acquired
-              this.sendThrottle.release();
-            }
-            return accepted;
-          });
+      if (this.sendThrottle.tryAcquire()) {
+        return offer(item) ? ACCEPTED : REJECTED;
+      }
+      return this.sendThrottle.acquire().thenApply(ignored -> offer(item));
+    }
+
+    /**
+     * Writes the item into the next slot, given a permit from the send throttle
+     */
+    private boolean offer(final T item) {
+      long state;
+      do {
+        state = this.sendState;
+        if ((state & TERMINATED) != 0) {
+          // the item will never be consumed, return the permit
+          this.sendThrottle.release();
+          return false;
+        }
+      } while (!STATE_UPDATER.compareAndSet(this, state, state + SLOT));
+
+      this.slots.set(index(state >>> 1), item == null ? NULL_VALUE : item);
+      wakeConsumer();
+      return true;
+    }
+
+    private void wakeConsumer() {
+      @SuppressWarnings("unchecked")
+      final CompletableFuture<Void> waiter = this.consumerWaiter;
+      if (waiter != null && WAITER_UPDATER.compareAndSet(this, waiter, null)) {
+        waiter.complete(null);
+      }
     }
 
     @Override
     public CompletionStage<Void> terminate() {
-      // note we still want to respect the buffer here, fairness of our backing semaphore will
-      // ensure that any sends queued before the terminate will still hit the backingQueue before
-      // the
-      // terminate does
-      return this.sendThrottle
-          .acquire()
-          .thenApply(res -> {
-            this.backingQueue.terminate();
-            this.sendThrottle.release();
-            return res;
-          });
+      // note we still want to respect the buffer here, fairness of the throttle will ensure that
+      // any sends queued before the terminate will claim their slots before the terminate happens
+      if (this.sendThrottle.tryAcquire()) {
+        markTerminated();
+        return StageSupport.voidStage();
+      }
+      return this.sendThrottle.acquire().thenApply(ignored -> {
+        markTerminated();
+        return null;
+      });
+    }
+
+    private void markTerminated() {
+      long state;
+      do {
+        state = this.sendState;
+      } while ((state & TERMINATED) == 0
+          && !STATE_UPDATER.compareAndSet(this, state, state | TERMINATED));
+      this.sendThrottle.release();
+      wakeConsumer();
+    }
+  }
+
+  /**
+   * A bounded {@link BoundedAsyncQueue} which stores its elements in a pre-sized array, supporting
+   * a single-producer single-consumer model.
+   *
+   * <p>
+   * Each side owns its own index into the array: the producer writes at {@code tail} and the
+   * consumer reads at {@code head}. The slots themselves carry the coordination - a slot is free
+   * for the producer iff it is null, and is readable by the consumer iff it is not - so neither
+   * side needs to read the other's index, and every hand-off is a single ordered write. When the
+   * producer finds its slot occupied, or the consumer finds its slot empty, that side parks by
+   * publishing a future to its waiter field and re-checking the slot; the other side completes the
+   * waiter after its next write to a slot.
+   *
+   * <p>
+   * Producer calls must not overlap, but a send may be issued before the previous one completed.
+   * Such sends (and terminates) are chained after the pending one in {@code pending}; since the
+   * chained continuation only runs once the pending stage completes, the producer's state is still
+   * only accessed by one thread at a time.
+   *
+   * @param <T>
+   */
+  private static final class SingleProducerQueue<T> implements BoundedAsyncQueue<T> {
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<SingleProducerQueue, CompletableFuture> PRODUCER_WAITER_UPDATER =
+        AtomicReferenceFieldUpdater.newUpdater(SingleProducerQueue.class, CompletableFuture.class,
+            "producerWaiter");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<SingleProducerQueue, CompletableFuture> CONSUMER_WAITER_UPDATER =
+        AtomicReferenceFieldUpdater.newUpdater(SingleProducerQueue.class, CompletableFuture.class,
+            "consumerWaiter");
+
+    private final AtomicReferenceArray<Object> slots;
+    private final int capacity;
+    private volatile boolean terminated;
+    private volatile CompletableFuture<Void> producerWaiter;
+    private volatile CompletableFuture<Void> consumerWaiter;
+    // only accessed by the producer
+    private long tail;
+    private CompletableFuture<?> pending;
+    // only accessed by the consumer
+    private long head;
+
+    SingleProducerQueue(final int capacity) {
+      this.capacity = capacity;
+      this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    @Override
+    public CompletionStage<Either<End, T>> nextStage() {
+      final int index = index(this.head);
+      Object value = this.slots.get(index);
+      if (value != null) {
+        return StageSupport.completedStage(take(index, value));
+      }
+      // the terminated flag is written after the last slot, so it must be read before the slot
+      if (this.terminated && this.slots.get(index) == null) {
+        return End.endStage();
+      }
+
+      final CompletableFuture<Void> waiter = new CompletableFuture<>();
+      this.consumerWaiter = waiter;
+      // re-check after publishing the waiter, the producer may have written the slot in between
+      final boolean terminated = this.terminated;
+      value = this.slots.get(index);
+      if (value != null) {
+        CONSUMER_WAITER_UPDATER.compareAndSet(this, waiter, null);
+        return StageSupport.completedStage(take(index, value));
+      }
+      if (terminated) {
+        CONSUMER_WAITER_UPDATER.compareAndSet(this, waiter, null);
+        return End.endStage();
+      }
+      return waiter.thenCompose(ignored -> nextStage());
     }
 
     @Override
     public Optional<T> poll() {
-      final Optional<T> poll = this.backingQueue.poll();
-      // if we got a result, we should release a permit
-      poll.ifPresent(ig -> this.sendThrottle.release());
-      return poll;
+      final int index = index(this.head);
+      final Object value = this.slots.get(index);
+      if (value == null) {
+        return Optional.empty();
+      }
+      return take(index, value).right();
+    }
+
+    @Override
+    public CompletionStage<Either<End, List<T>>> nextBatch(final int maxSize) {
+      return availableBatch(this, maxSize);
+    }
+
+    @Override
+    public Either<End, T> tryNext() {
+      final int index = index(this.head);
+      final Object value = this.slots.get(index);
+      return value == null ? null : take(index, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Either<End, T> take(final int index, final Object value) {
+      this.slots.set(index, null);
+      this.head++;
+      // waking may run producer continuations, so finish updating consumer state first
+      wake(PRODUCER_WAITER_UPDATER, this.producerWaiter);
+      return Either.right(value == NULL_VALUE ? null : (T) value);
+    }
+
+    private int index(final long position) {
+      return (int) (position % this.capacity);
+    }
+
+    @Override
+    public CompletionStage<Boolean> send(final T item) {
+      final CompletableFuture<?> prev = this.pending;
+      if (prev != null && !prev.isDone()) {
+        final CompletableFuture<Boolean> next = prev.thenCompose(ignored -> offer(item));
+        this.pending = next;
+        return next;
+      }
+      final CompletionStage<Boolean> result = offer(item);
+      this.pending = result == ACCEPTED || result == REJECTED ? null : result.toCompletableFuture();
+      return result;
+    }
+
+    private CompletionStage<Boolean> offer(final T item) {
+      if (this.terminated) {
+        return REJECTED;
+      }
+      final int index = index(this.tail);
+      if (this.slots.get(index) == null) {
+        write(index, item);
+        return ACCEPTED;
+      }
+
+      final CompletableFuture<Void> waiter = new CompletableFuture<>();
+      this.producerWaiter = waiter;
+      // re-check after publishing the waiter, the consumer may have cleared the slot in between
+      if (this.slots.get(index) == null) {
+        PRODUCER_WAITER_UPDATER.compareAndSet(this, waiter, null);
+        write(index, item);
+        return ACCEPTED;
+      }
+      // the slot is ours once the consumer has cleared it, so the retry will succeed
+      return waiter.thenCompose(ignored -> offer(item));
+    }
+
+    private void write(final int index, final T item) {
+      this.slots.set(index, item == null ? NULL_VALUE : item);
+      this.tail++;
+      wake(CONSUMER_WAITER_UPDATER, this.consumerWaiter);
+    }
+
+    @SuppressWarnings("rawtypes")
+    private void wake(
+        final AtomicReferenceFieldUpdater<SingleProducerQueue, CompletableFuture> updater,
+        final CompletableFuture<Void> waiter) {
+      if (waiter != null && updater.compareAndSet(this, waiter, null)) {
+        waiter.complete(null);
+      }
+    }
+
+    @Override
+    public CompletionStage<Void> terminate() {
+      final CompletableFuture<?> prev = this.pending;
+      if (prev != null && !prev.isDone()) {
+        final CompletableFuture<Void> next = prev.thenRun(this::markTerminated);
+        this.pending = next;
+        return next;
+      }
+      this.pending = null;
+      markTerminated();
+      return StageSupport.voidStage();
+    }
+
+    private void markTerminated() {
+      this.terminated = true;
+      wake(CONSUMER_WAITER_UPDATER, this.consumerWaiter);
     }
   }
 }
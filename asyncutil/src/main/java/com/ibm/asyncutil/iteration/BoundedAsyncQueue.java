@@ -22,8 +22,9 @@ import java.util.concurrent.CompletionStage;
  * until the {@link CompletionStage} returned by the previous call completes.
  *
  * <p>
- * Currently you can produce a bounded queue with {@link AsyncQueues#bounded()} or
- * {@link AsyncQueues#buffered(int)}.
+ * Currently you can produce a bounded queue with {@link AsyncQueues#bounded()},
+ * {@link AsyncQueues#buffered(int)} or, for a single producer,
+ * {@link AsyncQueues#singleProducerBuffered(int)}.
  *
  * <p>
  * Consider this example implemented without backpressure
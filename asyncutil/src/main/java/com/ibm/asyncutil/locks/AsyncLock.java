@@ -8,6 +8,10 @@ package com.ibm.asyncutil.locks;
 
 import java.util.Optional;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.ibm.asyncutil.util.StageSupport;
 
 /**
  * An asynchronously acquirable mutual exclusion lock.
@@ -42,6 +46,40 @@ public interface AsyncLock {
    */
   Optional<LockToken> tryLock();
 
+  /**
+   * Attempts to acquire the lock within the given waiting time, returning a stage which will
+   * complete with a populated {@link Optional} if the lock was acquired, or an empty Optional if the
+   * waiting time elapsed first. If the waiting time is not positive, this method makes a single
+   * attempt as if by {@link #tryLock()}.
+   * <p>
+   * An acquisition that times out is abandoned: it will not hold the lock at any point after the
+   * returned stage has completed with an empty Optional. Implementations may additionally remove
+   * the abandoned acquisition from their queue of waiters, so that shedding acquisitions under
+   * overload does not accumulate waiters. The default implementation does not, and instead releases
+   * the lock immediately if the abandoned acquisition is later granted.
+   *
+   * @param timeout the maximum time to wait for the lock
+   * @param unit the time unit of the {@code timeout} argument
+   * @param scheduler the executor used to schedule the timeout. Note that a timed out stage may be
+   *        completed by a thread of this executor
+   * @return A {@link CompletionStage} which will complete with an {@link Optional} holding a
+   *         {@link LockToken} if the lock was acquired within the waiting time; otherwise an empty
+   *         Optional
+   */
+  default CompletionStage<Optional<LockToken>> tryLock(final long timeout, final TimeUnit unit,
+      final ScheduledExecutorService scheduler) {
+    final Optional<LockToken> token = tryLock();
+    if (token.isPresent() || timeout <= 0L) {
+      return StageSupport.completedStage(token);
+    }
+    return TimedAcquisition.withTimeout(
+        acquireLock().thenApply(Optional::of),
+        () -> true,
+        t -> t.get().releaseLock(),
+        Optional.empty(),
+        timeout, unit, scheduler);
+  }
+
   /**
    * A lock token indicating that the associated lock has been exclusively acquired. Once the
    * protected action is completed, the lock may be released by calling
@@ -71,10 +109,10 @@ public interface AsyncLock {
    * particular, no guarantee of fairness is provided.
    *
    * @return a new {@link AsyncLock}
+   * @see UnfairAsyncLock
    */
   static AsyncLock create() {
-    // fair for now, may be swapped with a more performant unfair version later
-    return new FairAsyncLock();
+    return new UnfairAsyncLock();
   }
 
   /**
@@ -8,8 +8,11 @@ package com.ibm.asyncutil.locks;
 
 import java.util.Optional;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import com.ibm.asyncutil.locks.AsyncLock.LockToken;
+import com.ibm.asyncutil.util.StageSupport;
 
 /**
  * An asynchronously acquirable read-write lock.
@@ -47,6 +50,36 @@ public interface AsyncReadWriteLock {
    */
   Optional<ReadLockToken> tryReadLock();
 
+  /**
+   * Attempts to acquire the read lock within the given waiting time, returning a stage which will
+   * complete with a populated {@link Optional} if the read lock was acquired, or an empty Optional
+   * if the waiting time elapsed first. If the waiting time is not positive, this method makes a
+   * single attempt as if by {@link #tryReadLock()}.
+   * <p>
+   * An acquisition that times out is abandoned, as described in
+   * {@link AsyncLock#tryLock(long, TimeUnit, ScheduledExecutorService)}.
+   *
+   * @param timeout the maximum time to wait for the read lock
+   * @param unit the time unit of the {@code timeout} argument
+   * @param scheduler the executor used to schedule the timeout
+   * @return A {@link CompletionStage} which will complete with an {@link Optional} holding a
+   *         {@link ReadLockToken} if the read lock was acquired within the waiting time; otherwise
+   *         an empty Optional
+   */
+  default CompletionStage<Optional<ReadLockToken>> tryReadLock(final long timeout,
+      final TimeUnit unit, final ScheduledExecutorService scheduler) {
+    final Optional<ReadLockToken> token = tryReadLock();
+    if (token.isPresent() || timeout <= 0L) {
+      return StageSupport.completedStage(token);
+    }
+    return TimedAcquisition.withTimeout(
+        acquireReadLock().thenApply(Optional::of),
+        () -> true,
+        t -> t.get().releaseLock(),
+        Optional.empty(),
+        timeout, unit, scheduler);
+  }
+
 
   /**
    * Exclusively acquires this write lock. The returned stage will complete when the lock is no
@@ -70,6 +103,36 @@ public interface AsyncReadWriteLock {
    */
   Optional<WriteLockToken> tryWriteLock();
 
+  /**
+   * Attempts to acquire the write lock within the given waiting time, returning a stage which will
+   * complete with a populated {@link Optional} if the write lock was exclusively acquired, or an
+   * empty Optional if the waiting time elapsed first. If the waiting time is not positive, this
+   * method makes a single attempt as if by {@link #tryWriteLock()}.
+   * <p>
+   * An acquisition that times out is abandoned, as described in
+   * {@link AsyncLock#tryLock(long, TimeUnit, ScheduledExecutorService)}.
+   *
+   * @param timeout the maximum time to wait for the write lock
+   * @param unit the time unit of the {@code timeout} argument
+   * @param scheduler the executor used to schedule the timeout
+   * @return A {@link CompletionStage} which will complete with an {@link Optional} holding a
+   *         {@link WriteLockToken} if the write lock was acquired within the waiting time;
+   *         otherwise an empty Optional
+   */
+  default CompletionStage<Optional<WriteLockToken>> tryWriteLock(final long timeout,
+      final TimeUnit unit, final ScheduledExecutorService scheduler) {
+    final Optional<WriteLockToken> token = tryWriteLock();
+    if (token.isPresent() || timeout <= 0L) {
+      return StageSupport.completedStage(token);
+    }
+    return TimedAcquisition.withTimeout(
+        acquireWriteLock().thenApply(Optional::of),
+        () -> true,
+        t -> t.get().releaseLock(),
+        Optional.empty(),
+        timeout, unit, scheduler);
+  }
+
   /**
    * A lock token indicating that the associated lock has been acquired for reader access. Once the
    * protected action is completed, the lock may be released by calling
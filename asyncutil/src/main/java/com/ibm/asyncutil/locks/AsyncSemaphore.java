@@ -7,6 +7,10 @@
 package com.ibm.asyncutil.locks;
 
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.ibm.asyncutil.util.StageSupport;
 
 /**
  * An asynchronously acquirable counting semaphore
@@ -67,6 +71,44 @@ public interface AsyncSemaphore {
    */
   boolean tryAcquire(long permits);
 
+  /**
+   * Attempts to acquire the given number of permits within the given waiting time, returning a
+   * stage which will complete with true if all of the permits were exclusively acquired, or false
+   * if the waiting time elapsed first. If the waiting time is not positive, this method makes a
+   * single attempt as if by {@link #tryAcquire(long)}.
+   * <p>
+   * An acquisition that times out is abandoned: none of its permits will be held after the returned
+   * stage has completed with false. Implementations may additionally remove the abandoned
+   * acquisition from their queue of waiters, so that shedding acquisitions under overload does not
+   * accumulate waiters. The default implementation does not, and instead releases the permits
+   * immediately if the abandoned acquisition is later fulfilled.
+   *
+   * @param permits A non-negative number of permits to acquire from the semaphore
+   * @param timeout the maximum time to wait for the permits
+   * @param unit the time unit of the {@code timeout} argument
+   * @param scheduler the executor used to schedule the timeout. Note that a timed out stage may be
+   *        completed by a thread of this executor
+   * @return a {@link CompletionStage} which will complete with true iff all of the requested
+   *         permits were acquired within the waiting time
+   * @throws IllegalArgumentException if the requested permits are negative, or exceed any
+   *         restrictions enforced by the given implementation
+   */
+  default CompletionStage<Boolean> tryAcquire(final long permits, final long timeout,
+      final TimeUnit unit, final ScheduledExecutorService scheduler) {
+    if (tryAcquire(permits)) {
+      return StageSupport.completedStage(Boolean.TRUE);
+    }
+    if (timeout <= 0L) {
+      return StageSupport.completedStage(Boolean.FALSE);
+    }
+    return TimedAcquisition.withTimeout(
+        acquire(permits).thenApply(ignored -> Boolean.TRUE),
+        () -> true,
+        ignored -> release(permits),
+        Boolean.FALSE,
+        timeout, unit, scheduler);
+  }
+
   /**
    * Acquires all permits that are immediately available.
    * <p>
@@ -104,6 +146,51 @@ public interface AsyncSemaphore {
    */
   int getQueueLength();
 
+  /**
+   * Acquires at least 1 and at most the given number of permits from the semaphore, returning a
+   * stage which will complete with the number of permits that were exclusively acquired.
+   * <p>
+   * If any permits are available immediately, as many of them as are available (up to the given
+   * limit) are acquired and the returned stage may already be complete. Otherwise the acquisition
+   * waits for a single permit as if by {@link #acquire(long) acquire(1)}; once that permit is
+   * acquired, any further permits which are then immediately available are acquired as if by
+   * {@link #tryAcquire(long)}, again up to the given limit. The caller is responsible for
+   * {@link #release(long) releasing} the number of permits that the stage completes with.
+   * <p>
+   * This method is useful for consumers which process work in batches, such that one acquisition
+   * can cover many elements instead of acquiring a permit per element.
+   * <p>
+   * The default implementation is built from {@link #acquire(long)} and {@link #tryAcquire(long)},
+   * and may perform several attempts to acquire the surplus permits. Implementations are
+   * encouraged to override it with a more efficient approach.
+   *
+   * @param permits The greatest number of permits to acquire from the semaphore. Must be positive
+   * @return a {@link CompletionStage} which will complete with the number of permits acquired, a
+   *         value between 1 and {@code permits} inclusive
+   * @throws IllegalArgumentException if the requested permits are not positive, or exceed any
+   *         restrictions enforced by the given implementation
+   */
+  default CompletionStage<Long> acquireUpTo(final long permits) {
+    if (permits <= 0L) {
+      throw new IllegalArgumentException(
+          "permits must be positive, but " + permits + " were requested");
+    }
+    return acquire(1L).thenApply(ignored -> {
+      long acquired = 1L;
+      // greedily try the remaining permits, halving the attempt size on each failure
+      long attempt = permits - acquired;
+      while (attempt > 0L) {
+        if (tryAcquire(attempt)) {
+          acquired += attempt;
+          attempt = Math.min(attempt, permits - acquired);
+        } else {
+          attempt /= 2;
+        }
+      }
+      return acquired;
+    });
+  }
+
   /**
    * Acquires 1 permit from the semaphore as if by calling {@link #acquire(long)} with an argument
    * of 1.
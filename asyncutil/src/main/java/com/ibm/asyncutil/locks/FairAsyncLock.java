@@ -9,8 +9,12 @@ package com.ibm.asyncutil.locks;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
+import com.ibm.asyncutil.util.StageSupport;
+
 
 /**
  * An {@link AsyncLock} which enforces fairness in its acquisition ordering
@@ -29,6 +33,11 @@ public class FairAsyncLock implements AsyncLock {
    * called `releaseLock` -- holds the implicit tail of the queue. When release is called on this
    * node, the node unlinks itself from the queue and triggers its successor's future, allowing the
    * next waiter to proceed
+   *
+   * A waiter may withdraw by cancelling its node's future before it is triggered. The releasing
+   * holder then fails to complete that node, and passes over it to the node's successor as if the
+   * withdrawn node had been granted and released at once. The node's successor link was set before
+   * the node was returned to its acquirer, so it is always present once the node can be cancelled
    */
 
   private static final Node NULL_PREDECESSOR = new Node();
@@ -69,7 +78,13 @@ public class FairAsyncLock implements AsyncLock {
         do {
           final Node n = this.next;
           this.next = null;
-          n.complete(n);
+          if (!n.complete(n)) {
+            // n was withdrawn before it was granted, skip to its successor
+            final Node successor = n.next;
+            n.next = null;
+            successor.prev = this;
+            this.next = successor;
+          }
           // recursive calls will set our next to non-null
         } while (this.next != null);
       }
@@ -82,6 +97,10 @@ public class FairAsyncLock implements AsyncLock {
 
   @Override
   public CompletionStage<LockToken> acquireLock() {
+    return acquireNode();
+  }
+
+  private Node acquireNode() {
     final Node newHead = new Node();
     final Node oldHead = UPDATER.getAndSet(this, newHead);
 
@@ -106,4 +125,24 @@ public class FairAsyncLock implements AsyncLock {
       return Optional.empty();
     }
   }
+
+  /**
+   * Attempts to acquire the lock within the given waiting time, using the same acquisition-ordered
+   * fair queuing policy as {@link #acquireLock()}.
+   * <p>
+   * If the waiting time elapses before the lock is granted, the acquisition is withdrawn from the
+   * queue: the lock passes over it to the waiters behind it, without it ever being held.
+   *
+   * @see AsyncLock#tryLock(long, TimeUnit, ScheduledExecutorService)
+   */
+  @Override
+  public CompletionStage<Optional<LockToken>> tryLock(final long timeout, final TimeUnit unit,
+      final ScheduledExecutorService scheduler) {
+    final Optional<LockToken> token = tryLock();
+    if (token.isPresent() || timeout <= 0L) {
+      return StageSupport.completedStage(token);
+    }
+    return TimedAcquisition.withdrawOnTimeout(acquireNode(), LockToken::releaseLock, timeout, unit,
+        scheduler);
+  }
 }
@@ -9,8 +9,11 @@ package com.ibm.asyncutil.locks;
 import java.util.ArrayList;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Function;
 
 import com.ibm.asyncutil.util.StageSupport;
 
@@ -69,6 +72,13 @@ public class FairAsyncSemaphore implements AsyncSemaphore {
    * node is encountered by a releaser, its permits may be incremented freely as it cannot have any
    * successors and traversal may end.
    * 
+   * A reserved node may also be withdrawn by its acquirer, when its future is cancelled or its
+   * timed acquisition expires. Withdrawal CASes the node's negative value directly to COMPLETED, so
+   * that releases skip it like any other completed node, and then releases whatever permits had
+   * been added to the node's deficit. The node's future completes exceptionally, so zero-permit
+   * acquisitions don't share it; they instead wait on a dependent stage that follows a withdrawn
+   * node's predecessor link, which is retained for this purpose.
+   * 
    * The head and tail references are not required to be strictly maintained. A number of steps may
    * be necessary to reach the first relevant node in the direction of traversal from head or tail,
    * similar to ConcurrentLinkedQueue. Likewise, it is possible for tail to lag behind head.
@@ -173,7 +183,7 @@ public class FairAsyncSemaphore implements AsyncSemaphore {
     this.head = h;
   }
 
-  private static void checkPermitsBounds(final long permits) {
+  static void checkPermitsBounds(final long permits) {
     if (permits < 0L || permits > MAX_PERMITS) {
       throw new IllegalArgumentException(
           String.format("permits must be within [%d, %d], given %d",
@@ -214,6 +224,17 @@ public class FairAsyncSemaphore implements AsyncSemaphore {
    * released. No permits will be reserved by the zero-acquisition in either of these cases. This
    * behavior can be used to wait for pending acquisitions to complete, without affecting the permit
    * count.
+   * <p>
+   * If the requested permits are immediately available, they are acquired with a single atomic
+   * update and a shared, already completed stage is returned; no objects are allocated in this
+   * case.
+   * <p>
+   * If the acquisition must wait, {@link CompletableFuture#cancel(boolean) cancelling} the returned
+   * stage's {@link CompletionStage#toCompletableFuture() future} before it completes withdraws the
+   * acquisition from the queue: it stops receiving released permits, any permits that had already
+   * been assigned to it are released to the waiters behind it, and it no longer blocks those
+   * waiters. A cancellation which loses the race with fulfillment has no effect, in which case the
+   * permits have been acquired and must be released as usual.
    * 
    * @param permits The number of permits to acquire. This value must be non-negative and no greater
    *        than {@link #MAX_PERMITS}
@@ -223,19 +244,37 @@ public class FairAsyncSemaphore implements AsyncSemaphore {
   public final CompletionStage<Void> acquire(final long permits) {
     FairAsyncSemaphore.checkPermitsBounds(permits);
 
+    // fast path: the tail is unreserved and holds enough permits. zero-permit acquisitions are
+    // excluded because they need to inspect the tail's predecessor when the tail is empty
     final Node t = this.tail;
+    final long tailPermits = t.getPermits();
+    if (permits != 0L && tailPermits >= permits && t.casValue(tailPermits, tailPermits - permits)) {
+      return StageSupport.voidStage();
+    }
+    return acquireSlow(t, permits);
+  }
+
+  private CompletionStage<Void> acquireSlow(final Node t, final long permits) {
+    if (permits == 0L) {
+      return acquireZero(t);
+    }
+    final Node waiter = reserve(t, permits);
+    return waiter == null ? StageSupport.voidStage() : waiter.getFuture();
+  }
+
+  private CompletionStage<Void> acquireZero(final Node t) {
     Node node = t;
     while (true) {
       final long nodePermits = node.getPermits();
       if (nodePermits < 0L) {
         // this node has been reserved i.e. someone is in the process of updating tail
         node = successorSpin(node);
-      } else if (permits == 0L && nodePermits == 0L) {
+      } else if (nodePermits == 0L) {
         /*
          * In order to acquire zero permits, the acquirer must find whether any waiters are queued,
          * and if so, attach to the last one (i.e. return its future). If it finds a positive permit
-         * count at the tail, then all waiters must have been released and the normal CAS path can
-         * be used. If the tail is negative, then a successor to that node must exist (tail is
+         * count at the tail, then all waiters must have been released and the acquisition completes
+         * immediately. If the tail is negative, then a successor to that node must exist (tail is
          * stale), so it's not known whether this node is the last one or not, and acquire must
          * advance. If the tail is zero, then the immediately preceding node is the target that
          * we're looking for, and its future must be returned.
@@ -243,7 +282,42 @@ public class FairAsyncSemaphore implements AsyncSemaphore {
         final Node prev = node.getPrevious();
         // x.prev is nulled when x is COMPLETED (so we've encountered a benign race).
         // inherently all predecessors are done if the node is done
-        return prev == null ? StageSupport.voidStage() : prev.getFuture();
+        return prev == null ? StageSupport.voidStage() : whenSettled(prev);
+      } else {
+        return StageSupport.voidStage();
+      }
+    }
+  }
+
+  /**
+   * Returns a stage which completes once the given reserved node and all of its predecessors have
+   * been fulfilled or withdrawn. The node's future itself can't be shared for this purpose because
+   * it may be cancelled by its acquirer
+   */
+  private static CompletionStage<Void> whenSettled(final Node node) {
+    return node.getFuture().handle((ignored, ex) -> {
+      if (ex == null) {
+        // fulfillment is FIFO, so all predecessors have settled too
+        return StageSupport.voidStage();
+      }
+      // the node was withdrawn, its predecessors may still be waiting. withdrawn nodes retain
+      // their predecessor link
+      final Node prev = node.getPrevious();
+      return prev == null ? StageSupport.voidStage() : whenSettled(prev);
+    }).thenCompose(Function.identity());
+  }
+
+  /**
+   * Subtracts a positive number of permits from the tail, returning null if they were all
+   * available or otherwise the node which now waits for the deficit to be released
+   */
+  private Node reserve(final Node t, final long permits) {
+    Node node = t;
+    while (true) {
+      final long nodePermits = node.getPermits();
+      if (nodePermits < 0L) {
+        // this node has been reserved i.e. someone is in the process of updating tail
+        node = successorSpin(node);
       } else {
         // node wasn't reserved; the future can be claimed if there aren't enough permits
 
@@ -253,12 +327,17 @@ public class FairAsyncSemaphore implements AsyncSemaphore {
         if (node.casValue(nodePermits, diff)) {
           if (diff < 0L) {
             // not enough permits to satisfy request
+            node.getFuture().reserve(this, permits);
             final Node newNode = new Node(node);
             node.setNext(newNode);
             updateTail(t, newNode);
-            return node.getFuture();
+            return node;
           } else {
-            return StageSupport.voidStage();
+            if (node != t) {
+              // the tail was stale, advance it so later acquisitions can take the fast path
+              updateTail(t, node);
+            }
+            return null;
           }
         }
       }
@@ -268,17 +347,168 @@ public class FairAsyncSemaphore implements AsyncSemaphore {
   }
 
   /**
+   * Withdraws a waiter's reservation if it has not yet been fulfilled, so that it receives no
+   * further permits. Any permits that had already been released to the waiter are released again
+   * to the rest of the queue. The caller is responsible for completing the waiter's future
+   * exceptionally if this succeeds; its predecessor link is kept for {@link #whenSettled(Node)}
+   * 
+   * @param waiter a node returned from {@link #reserve(Node, long)}
+   * @param permits the permits that were requested when reserving the node
+   * @return true if the reservation was withdrawn, false if it had already been fulfilled
+   */
+  private boolean withdraw(final Node waiter, final long permits) {
+    while (true) {
+      final long nodePermits = waiter.getPermits();
+      if (nodePermits == COMPLETED) {
+        return false;
+      }
+      // the node is marked the same way as a fulfilled node so that releases skip over it
+      if (waiter.casValue(nodePermits, COMPLETED)) {
+        // the waiter's deficit was (permits + nodePermits) less than it requested
+        final long granted = permits + nodePermits;
+        if (granted > 0L) {
+          release(granted);
+        }
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Acquires at least 1 and at most the given number of permits, using the same acquisition-ordered
+   * fair queuing policy as {@link #acquire(long)}.
+   * <p>
+   * If there are no queued waiters and any permits are available, up to {@code permits} of them are
+   * acquired with a single atomic update. Otherwise the acquisition enters the queue for a single
+   * permit; once that is granted, any permits left over from the release which granted it are
+   * acquired as well, up to the given limit, unless other waiters are queued behind this one.
+   * Cancelling the returned stage's future while it waits withdraws it from the queue, as with
+   * {@link #acquire(long)}; if the cancellation loses the race with fulfillment, the permits that
+   * were acquired are released again.
+   *
+   * @param permits The greatest number of permits to acquire. This value must be positive and no
+   *        greater than {@link #MAX_PERMITS}
+   * @see AsyncSemaphore#acquireUpTo(long)
+   */
+  @Override
+  public final CompletionStage<Long> acquireUpTo(final long permits) {
+    if (permits == 0L) {
+      throw new IllegalArgumentException("permits must be positive, given 0");
+    }
+    FairAsyncSemaphore.checkPermitsBounds(permits);
+
+    Node node = this.tail;
+    while (true) {
+      final long nodePermits = node.getPermits();
+      if (nodePermits < 0L) {
+        // this node has been reserved i.e. someone is in the process of updating tail
+        node = successorSpin(node);
+      } else if (nodePermits == 0L) {
+        // nothing available, wait in the queue for one permit then take any surplus
+        return acquireUpToSlow(permits);
+      } else {
+        final long acquired = Math.min(nodePermits, permits);
+        if (node.casValue(nodePermits, nodePermits - acquired)) {
+          return StageSupport.completedStage(acquired);
+        }
+      }
+      // CAS failure or updated successor node, reread the node's value
+    }
+  }
+
+  /**
+   * Reserves a node for one permit and takes any surplus once it is fulfilled. Cancelling the
+   * returned stage withdraws the reservation; if it was fulfilled first, the permits it acquired
+   * are released again
+   */
+  private CompletionStage<Long> acquireUpToSlow(final long permits) {
+    final Node waiter = reserve(this.tail, 1L);
+    if (waiter == null) {
+      return StageSupport.completedStage(1L + tryAcquireUpTo(permits - 1L));
+    }
+    final CompletableFuture<Long> result = new CompletableFuture<>();
+    waiter.getFuture().thenAccept(ignored -> {
+      final long acquired = 1L + tryAcquireUpTo(permits - 1L);
+      if (!result.complete(acquired)) {
+        release(acquired);
+      }
+    });
+    result.whenComplete((acquired, ex) -> {
+      if (ex != null) {
+        waiter.getFuture().cancel(false);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Acquires up to the given number of permits if any are immediately available and no waiters are
+   * queued, returning the number acquired
+   */
+  private long tryAcquireUpTo(final long permits) {
+    if (permits == 0L) {
+      return 0L;
+    }
+
+    final Node h = this.head;
+    Node node = h;
+    long acquired;
+    while (true) {
+      final long nodePermits = node.getPermits();
+
+      if (nodePermits == COMPLETED) {
+        // stale head, advance to something useful
+        node = successorSpin(node);
+        continue;
+      }
+
+      if (nodePermits <= 0L) {
+        // head is reserved or has no permits
+        acquired = 0L;
+        break;
+      }
+
+      acquired = Math.min(nodePermits, permits);
+      if (node.casValue(nodePermits, nodePermits - acquired)) {
+        break;
+      }
+    }
+
+    if (h != node) {
+      updateHead(h, node);
+    }
+    return acquired;
+  }
+
+  /**
+   * Releases the given number of permits, fulfilling queued acquisitions in order.
+   * <p>
+   * All of the waiters that can be fulfilled by the released permits are completed in a single
+   * traversal of the queue, so releasing a batch of permits with one call is cheaper than releasing
+   * them one at a time.
+   *
    * @param permits The number of permits to release. This value must be non-negative and no greater
    *        than {@link #MAX_PERMITS}
    */
   @Override
-  public final void release(long permits) {
+  public final void release(final long permits) {
     FairAsyncSemaphore.checkPermitsBounds(permits);
 
+    // fast path: there are no waiters, so the head is the unreserved tail and permits can simply be
+    // added to it
+    final Node h = this.head;
+    final long headPermits = h.getPermits();
+    if (headPermits >= 0L && MAX_PERMITS - permits >= headPermits
+        && h.casValue(headPermits, headPermits + permits)) {
+      return;
+    }
+    releaseSlow(h, permits);
+  }
+
+  private void releaseSlow(final Node h, long permits) {
     // lazily initialized list of threadlocal futures to complete
     ArrayList<CompletableFuture<Void>> toComplete = null;
     boolean threadLeader = false;
-    final Node h = this.head;
     Node node = h;
 
     while (true) {
@@ -411,6 +641,59 @@ public class FairAsyncSemaphore implements AsyncSemaphore {
     return true;
   }
 
+  /**
+   * Attempts to acquire the given number of permits within the given waiting time, using the same
+   * acquisition-ordered fair queuing policy as {@link #acquire(long)}.
+   * <p>
+   * If the waiting time elapses before the acquisition is fulfilled, its reservation is withdrawn
+   * from the queue: it stops receiving released permits, any permits it had already been assigned
+   * are released to the waiters behind it, and it no longer blocks those waiters. Cancelling the
+   * returned stage's future while it waits withdraws the reservation in the same way; if the
+   * cancellation loses the race with fulfillment, the acquired permits are released again.
+   *
+   * @param permits The number of permits to acquire. This value must be non-negative and no greater
+   *        than {@link #MAX_PERMITS}
+   * @see AsyncSemaphore#tryAcquire(long, TimeUnit, ScheduledExecutorService)
+   */
+  @Override
+  public final CompletionStage<Boolean> tryAcquire(final long permits, final long timeout,
+      final TimeUnit unit, final ScheduledExecutorService scheduler) {
+    FairAsyncSemaphore.checkPermitsBounds(permits);
+
+    if (permits == 0L) {
+      // zero-permit acquisitions don't reserve a node, so there's nothing to withdraw
+      return AsyncSemaphore.super.tryAcquire(permits, timeout, unit, scheduler);
+    }
+    if (tryAcquire(permits)) {
+      return StageSupport.completedStage(Boolean.TRUE);
+    }
+    if (timeout <= 0L) {
+      return StageSupport.completedStage(Boolean.FALSE);
+    }
+
+    final Node waiter = reserve(this.tail, permits);
+    if (waiter == null) {
+      return StageSupport.completedStage(Boolean.TRUE);
+    }
+    final CompletionStage<Boolean> acquired = TimedAcquisition.withTimeout(
+        waiter.getFuture().thenApply(ignored -> Boolean.TRUE),
+        () -> withdraw(waiter, permits),
+        // the caller cancelled the result, but the waiter was fulfilled before it could withdraw
+        ignored -> release(permits),
+        Boolean.FALSE,
+        timeout, unit, scheduler);
+    acquired.whenComplete((success, ex) -> {
+      if (ex != null) {
+        // the caller cancelled the result, leave the queue if the waiter is still in it
+        waiter.getFuture().cancel(false);
+      } else if (!success) {
+        // a timed out waiter's future is only cancelled after the timeout has been reported
+        waiter.getFuture().withdrawn();
+      }
+    });
+    return acquired;
+  }
+
   @Override
   public final long drainPermits() {
     final Node h = this.head;
@@ -474,7 +757,7 @@ public class FairAsyncSemaphore implements AsyncSemaphore {
   private static final class Node extends AtomicLong {
     private static final AtomicReferenceFieldUpdater<Node, Node> NEXT_UPDATER =
         AtomicReferenceFieldUpdater.newUpdater(Node.class, Node.class, "next");
-    private final CompletableFuture<Void> future = new CompletableFuture<>();
+    private final Waiter future = new Waiter(this);
     private volatile Node next;
     private Node prev;
 
@@ -496,7 +779,7 @@ public class FairAsyncSemaphore implements AsyncSemaphore {
       return compareAndSet(expected, update);
     }
 
-    CompletableFuture<Void> getFuture() {
+    Waiter getFuture() {
       return this.future;
     }
 
@@ -525,4 +808,39 @@ public class FairAsyncSemaphore implements AsyncSemaphore {
       return "Node [" + getPermits() + "]";
     }
   }
+
+  /**
+   * The future of a node, which is returned to the acquisition that reserves the node. Cancelling
+   * it before it has been fulfilled withdraws the reservation from the queue
+   */
+  @SuppressWarnings("serial")
+  private static final class Waiter extends CompletableFuture<Void> {
+    private final Node node;
+    // set by the reserving acquisition before this future is published
+    private FairAsyncSemaphore semaphore;
+    private long permits;
+
+    Waiter(final Node node) {
+      this.node = node;
+    }
+
+    void reserve(final FairAsyncSemaphore semaphore, final long permits) {
+      this.semaphore = semaphore;
+      this.permits = permits;
+    }
+
+    /** Completes this future after its node has been withdrawn by other means */
+    void withdrawn() {
+      super.cancel(false);
+    }
+
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning) {
+      final FairAsyncSemaphore s = this.semaphore;
+      if (s != null && !isDone() && s.withdraw(this.node, this.permits)) {
+        return super.cancel(mayInterruptIfRunning);
+      }
+      return isCancelled();
+    }
+  }
 }
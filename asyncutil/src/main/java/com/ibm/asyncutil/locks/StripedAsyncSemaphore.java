@@ -0,0 +1,355 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.locks;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.ibm.asyncutil.util.StageSupport;
+
+/**
+ * An {@link AsyncSemaphore} implementation that is scalable when many threads concurrently acquire
+ * and release permits, in exchange for making no guarantee of fairness.
+ * <p>
+ * Available permits are spread across a number of striped pools, in the same manner that
+ * {@link LongAdder} spreads its sum across cells. Threads acquire permits from, and release permits
+ * to, the pool associated with the thread, so that threads don't contend on a single memory
+ * location while permits are plentiful. Only when a thread's pool cannot satisfy an acquisition
+ * does it fall back to a shared {@link FairAsyncSemaphore}; at that point the permits in all pools
+ * are moved to the shared semaphore, and they remain there for as long as any acquisitions are
+ * waiting. Waiting acquisitions are therefore fulfilled in FIFO order, but an acquisition that
+ * arrives while none are waiting may succeed from its pool ahead of an acquisition that is in the
+ * process of falling back.
+ * <p>
+ * Like {@link FairAsyncSemaphore}, methods which take a number of permits as an argument are
+ * restricted to a maximum value of {@link FairAsyncSemaphore#MAX_PERMITS}, and the initial permits
+ * must be at least {@link FairAsyncSemaphore#MIN_PERMITS}. If an acquisition must wait, cancelling
+ * the returned stage's future withdraws the acquisition as described in
+ * {@link FairAsyncSemaphore#acquire(long)}.
+ *
+ * @see StripedEpoch
+ */
+public class StripedAsyncSemaphore implements AsyncSemaphore {
+  /*
+   * Permits are held in three places: a base counter on this object, an array of padded cells which
+   * is created and grown on contention exactly as in StripedEpoch, and the fallback `queue`
+   * semaphore. The base and cells hold non-negative permit counts; any deficit (and any waiter)
+   * lives in the queue.
+   *
+   * Acquisitions first try to subtract from the base (or their thread's cell, once cells exist). If
+   * that pool has too few permits, the acquisition tries the queue, and failing that registers
+   * itself in `waiters`, moves all pooled permits to the queue ("flushing") and waits in the queue.
+   * Releases add to their pool unless there are waiters, in which case they release to the queue.
+   *
+   * A release that adds to a pool concurrently with a new waiter must not leave its permits in the
+   * pool, where the waiter can't see them. Both sides write before they read: the waiter increments
+   * `waiters` before flushing, and the releaser adds to its pool before re-reading `waiters`, and
+   * flushes if it is non-zero. Either the waiter's flush observes the releaser's permits, or the
+   * releaser observes the waiter and flushes them itself.
+   *
+   * A negative initial permit count is a deficit in the queue that must be repaid before any
+   * acquisition; it is accounted for as a waiter until the queue observes it repaid.
+   */
+
+  private static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+  private static final AtomicLongFieldUpdater<StripedAsyncSemaphore> BASE_UPDATER =
+      AtomicLongFieldUpdater.newUpdater(StripedAsyncSemaphore.class, "basePermits");
+  private static final AtomicReferenceFieldUpdater<StripedAsyncSemaphore, PermitCell[]> CELLS_UPDATER =
+      AtomicReferenceFieldUpdater.newUpdater(StripedAsyncSemaphore.class, PermitCell[].class,
+          "cells");
+  private static final AtomicIntegerFieldUpdater<StripedAsyncSemaphore> WAITERS_UPDATER =
+      AtomicIntegerFieldUpdater.newUpdater(StripedAsyncSemaphore.class, "waiters");
+
+  /**
+   * permits go here when this semaphore is uncontended
+   */
+  private volatile long basePermits;
+
+  /**
+   * If there is contention, cells will be initialized, and later grown on subsequent contention.
+   * length is always power of 2, max length=2^(ceil(lg(NCPU)))
+   */
+  private volatile PermitCell[] cells;
+
+  /**
+   * the number of acquisitions which have fallen back to the queue and not yet completed
+   */
+  private volatile int waiters;
+
+  private final FairAsyncSemaphore queue;
+
+  /**
+   * Creates a new striped asynchronous semaphore with the given initial number of permits. This
+   * value may be negative in order to require {@link #release(long) releases} before
+   * {@link #acquire(long) acquisitions}
+   *
+   * @param initialPermits The initial number of permits available in the semaphore. This value must
+   *        be within the interval [{@link FairAsyncSemaphore#MIN_PERMITS},
+   *        {@link FairAsyncSemaphore#MAX_PERMITS}]
+   */
+  public StripedAsyncSemaphore(final long initialPermits) {
+    if (initialPermits < 0L) {
+      this.queue = new FairAsyncSemaphore(initialPermits);
+      this.waiters = 1;
+      this.queue.acquire(0L).thenRun(() -> WAITERS_UPDATER.decrementAndGet(this));
+    } else {
+      this.queue = new FairAsyncSemaphore(0L);
+      this.basePermits = initialPermits;
+    }
+  }
+
+  @Override
+  public CompletionStage<Void> acquire(final long permits) {
+    FairAsyncSemaphore.checkPermitsBounds(permits);
+    if (permits == 0L) {
+      return this.queue.acquire(0L);
+    }
+    if (this.waiters == 0 && tryAcquirePooled(permits)) {
+      return StageSupport.voidStage();
+    }
+    if (this.queue.tryAcquire(permits)) {
+      return StageSupport.voidStage();
+    }
+
+    WAITERS_UPDATER.incrementAndGet(this);
+    flush();
+    final CompletionStage<Void> acquisition = this.queue.acquire(permits);
+    acquisition.whenComplete((ignored, ex) -> WAITERS_UPDATER.decrementAndGet(this));
+    return acquisition;
+  }
+
+  @Override
+  public void release(final long permits) {
+    FairAsyncSemaphore.checkPermitsBounds(permits);
+    if (permits == 0L) {
+      return;
+    }
+    if (this.waiters != 0) {
+      this.queue.release(permits);
+      return;
+    }
+
+    releasePooled(permits);
+    if (this.waiters != 0) {
+      // raced with an acquisition falling back to the queue, which may not have seen our permits
+      flush();
+    }
+  }
+
+  @Override
+  public boolean tryAcquire(final long permits) {
+    FairAsyncSemaphore.checkPermitsBounds(permits);
+    if (permits == 0L) {
+      return this.queue.tryAcquire(0L);
+    }
+    if (this.waiters == 0 && tryAcquirePooled(permits)) {
+      return true;
+    }
+    if (this.queue.tryAcquire(permits)) {
+      return true;
+    }
+    // the permits may be spread across pools, gather them and try again
+    flush();
+    return this.queue.tryAcquire(permits);
+  }
+
+  @Override
+  public long drainPermits() {
+    flush();
+    return this.queue.drainPermits();
+  }
+
+  @Override
+  public long getAvailablePermits() {
+    long sum = this.basePermits + this.queue.getAvailablePermits();
+    final PermitCell[] localCells = this.cells;
+    if (localCells != null) {
+      for (final PermitCell cell : localCells) {
+        sum += cell.permits;
+      }
+    }
+    return sum;
+  }
+
+  @Override
+  public int getQueueLength() {
+    return this.queue.getQueueLength();
+  }
+
+  @Override
+  public String toString() {
+    return "StripedAsyncSemaphore [permits=" + getAvailablePermits()
+        + ", waiters=" + this.waiters
+        + ", queue=" + this.queue
+        + "]";
+  }
+
+  /**
+   * Attempts to take the permits from the base or this thread's cell, without falling back
+   */
+  private boolean tryAcquirePooled(final long permits) {
+    PermitCell[] localCells = this.cells;
+    if (localCells == null) {
+      final UpdateResult ur = StripedAsyncSemaphore.tryUpdate(BASE_UPDATER, this, -permits);
+      if (ur != UpdateResult.CONFLICT) {
+        return ur == UpdateResult.SUCCESS;
+      }
+      // cells was null, and we conflicted on base. Try to initialize it
+      localCells = growCells(null);
+    }
+
+    int threadIndex = StripedEpoch.getProbe();
+    while (true) {
+      final PermitCell myCell = localCells[threadIndex & (localCells.length - 1)];
+      final UpdateResult ur = StripedAsyncSemaphore.tryUpdate(CELL_UPDATER, myCell, -permits);
+      if (ur != UpdateResult.CONFLICT) {
+        return ur == UpdateResult.SUCCESS;
+      } else if (localCells.length < NCPU) {
+        localCells = growCells(localCells);
+      } else {
+        threadIndex = StripedEpoch.advanceProbe(threadIndex);
+      }
+    }
+  }
+
+  /**
+   * Adds the permits to the base or this thread's cell
+   */
+  private void releasePooled(final long permits) {
+    PermitCell[] localCells = this.cells;
+    if (localCells == null) {
+      if (StripedAsyncSemaphore.tryUpdate(BASE_UPDATER, this, permits) == UpdateResult.SUCCESS) {
+        return;
+      }
+      localCells = growCells(null);
+    }
+
+    int threadIndex = StripedEpoch.getProbe();
+    while (true) {
+      final PermitCell myCell = localCells[threadIndex & (localCells.length - 1)];
+      if (StripedAsyncSemaphore.tryUpdate(CELL_UPDATER, myCell, permits) == UpdateResult.SUCCESS) {
+        return;
+      } else if (localCells.length < NCPU) {
+        localCells = growCells(localCells);
+      } else {
+        threadIndex = StripedEpoch.advanceProbe(threadIndex);
+      }
+    }
+  }
+
+  /**
+   * Moves the permits of the base and every cell to the queue
+   */
+  private void flush() {
+    long sum = BASE_UPDATER.getAndSet(this, 0L);
+    final PermitCell[] localCells = this.cells;
+    if (localCells != null) {
+      for (final PermitCell cell : localCells) {
+        if (cell.permits != 0L) {
+          sum += CELL_UPDATER.getAndSet(cell, 0L);
+        }
+      }
+    }
+    while (sum > 0L) {
+      final long release = Math.min(sum, FairAsyncSemaphore.MAX_PERMITS);
+      this.queue.release(release);
+      sum -= release;
+    }
+  }
+
+  /**
+   * Try to grow cells (after hitting a conflict).
+   *
+   * @return the new value of cells, which may have been created by this caller or installed by some
+   *         other caller who beat us
+   */
+  private PermitCell[] growCells(final PermitCell[] old) {
+    final PermitCell[] newCells;
+    if (old == null) {
+      // initial conflict, create new cells array
+      newCells = new PermitCell[] {new PermitCell(), new PermitCell()};
+    } else {
+      // double the size of cells
+      newCells = new PermitCell[old.length << 1];
+      System.arraycopy(old, 0, newCells, 0, old.length);
+      for (int i = old.length; i < newCells.length; i++) {
+        newCells[i] = new PermitCell();
+      }
+    }
+    if (CELLS_UPDATER.compareAndSet(this, old, newCells)) {
+      return newCells;
+    } else {
+      // someone beat us - read a new value of cells
+      return this.cells;
+    }
+  }
+
+  /**
+   * The result of trying to update a pool
+   */
+  private enum UpdateResult {
+    // the pool was successfully updated
+    SUCCESS,
+    // another thread tried to update at the same time
+    CONFLICT,
+    // the pool holds fewer permits than were requested
+    EXHAUSTED
+  }
+
+  /**
+   * Try to add to or subtract from the permits of the base or a cell
+   */
+  private static <T> UpdateResult tryUpdate(final AtomicLongFieldUpdater<T> updater, final T obj,
+      final long delta) {
+    final long curr = updater.get(obj);
+    if (delta < 0L) {
+      if (curr + delta < 0L) {
+        return UpdateResult.EXHAUSTED;
+      }
+    } else if (FairAsyncSemaphore.MAX_PERMITS - delta < curr) {
+      // overflow conscious limit check
+      throw new IllegalStateException(
+          String.format("Exceeded maximum allowed semaphore permits: %d + %d > %d",
+              curr, delta, FairAsyncSemaphore.MAX_PERMITS));
+    }
+    return updater.compareAndSet(obj, curr, curr + delta)
+        ? UpdateResult.SUCCESS
+        : UpdateResult.CONFLICT;
+  }
+
+  /*
+   * Padding so each thread can update their cell without false sharing. See StripedEpoch for the
+   * rationale behind the layout
+   */
+
+  private static class LeftPad {
+    @SuppressWarnings("unused")
+    protected volatile long l0, l1, l2, l3, l4, l5, l6, l7, l8, l9, l10, l11, l12, l13, l14, l15;
+  }
+
+  private static final AtomicLongFieldUpdater<Value> CELL_UPDATER =
+      AtomicLongFieldUpdater.newUpdater(Value.class, "permits");
+
+  private static class Value extends LeftPad {
+    protected volatile long permits;
+  }
+
+  private static class RightPad extends Value {
+    @SuppressWarnings("unused")
+    protected volatile long r0, r1, r2, r3, r4, r5, r6, r7, r8, r9, r10, r11, r12, r13, r14, r15;
+  }
+
+  /**
+   * A padded pool of permits
+   */
+  private static class PermitCell extends RightPad {
+  }
+}
@@ -396,14 +396,14 @@ final class StripedEpoch implements AsyncEpoch, EpochToken {
   /**
    * see {@link ThreadLocalRandom#getProbe}
    */
-  private static int getProbe() {
+  static int getProbe() {
     return probe.get()[0];
   }
 
   /**
    * see {@link ThreadLocalRandom#advanceProbe}
    */
-  private static int advanceProbe(int h) {
+  static int advanceProbe(int h) {
     h ^= h << 13; // xorshift
     h ^= h >>> 17;
     h ^= h << 5;
@@ -0,0 +1,109 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.locks;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Support for the timed acquisition methods of the lock interfaces, e.g.
+ * {@link AsyncLock#tryLock(long, TimeUnit, ScheduledExecutorService)}
+ */
+final class TimedAcquisition {
+  private TimedAcquisition() {}
+
+  /**
+   * Bounds the time spent waiting for an acquisition.
+   * <p>
+   * The returned stage completes with the acquisition's result if it completes within the given
+   * timeout. Otherwise, when the timeout elapses, {@code abandon} is invoked to withdraw the
+   * acquisition; if it returns true the returned stage completes with {@code timedOutValue}, and if
+   * it returns false (the acquisition can no longer be withdrawn) the returned stage continues to
+   * wait for the acquisition's result. If the acquisition nonetheless completes after the returned
+   * stage has already completed, either by timing out or by being cancelled by the caller,
+   * {@code undo} is invoked with its result to release whatever was acquired.
+   *
+   * @param acquisition the pending acquisition
+   * @param abandon withdraws the acquisition if possible, returning true iff the returned stage may
+   *        time out
+   * @param undo releases the result of an acquisition that completed after the returned stage had
+   *        already completed
+   * @param timedOutValue the value with which to complete the returned stage on timeout
+   * @param timeout the time to wait for the acquisition
+   * @param unit the unit of {@code timeout}
+   * @param scheduler the executor used to schedule the timeout
+   */
+  static <T> CompletionStage<T> withTimeout(
+      final CompletionStage<T> acquisition,
+      final BooleanSupplier abandon,
+      final Consumer<? super T> undo,
+      final T timedOutValue,
+      final long timeout,
+      final TimeUnit unit,
+      final ScheduledExecutorService scheduler) {
+    final CompletableFuture<T> result = new CompletableFuture<>();
+    final ScheduledFuture<?> timer = scheduler.schedule(() -> {
+      if (!result.isDone() && abandon.getAsBoolean()) {
+        result.complete(timedOutValue);
+      }
+    }, timeout, unit);
+
+    acquisition.whenComplete((t, ex) -> {
+      timer.cancel(false);
+      if (ex != null) {
+        result.completeExceptionally(ex);
+      } else if (!result.complete(t)) {
+        // timed out before the acquisition completed
+        undo.accept(t);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Bounds the time spent waiting for a queued waiter whose future withdraws it from the queue when
+   * cancelled, like the waiters of {@link FairAsyncLock} and {@link UnfairAsyncLock}.
+   * <p>
+   * The waiter is cancelled when the timeout elapses or when the returned stage is cancelled. If it
+   * was granted first, the returned stage completes with its result as usual, or {@code release} is
+   * invoked with the result if the returned stage has already been cancelled.
+   *
+   * @param waiter the pending waiter
+   * @param release releases the result of a waiter that was granted after the returned stage was
+   *        cancelled
+   * @param timeout the time to wait for the waiter
+   * @param unit the unit of {@code timeout}
+   * @param scheduler the executor used to schedule the timeout
+   */
+  static <T> CompletionStage<Optional<T>> withdrawOnTimeout(
+      final CompletableFuture<T> waiter,
+      final Consumer<? super T> release,
+      final long timeout,
+      final TimeUnit unit,
+      final ScheduledExecutorService scheduler) {
+    final CompletionStage<Optional<T>> result = withTimeout(
+        // a withdrawn waiter completes exceptionally, which is reported as a timeout
+        waiter.handle((t, ex) -> ex == null ? Optional.of(t) : Optional.<T>empty()),
+        () -> waiter.cancel(false),
+        t -> t.ifPresent(release),
+        Optional.empty(),
+        timeout, unit, scheduler);
+    result.whenComplete((t, ex) -> {
+      if (ex != null) {
+        // the caller cancelled the result, leave the queue if the waiter is still in it
+        waiter.cancel(false);
+      }
+    });
+    return result;
+  }
+}
@@ -0,0 +1,185 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.locks;
+
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import com.ibm.asyncutil.util.StageSupport;
+
+/**
+ * An {@link AsyncLock} which makes no guarantee of fairness in its acquisition ordering, in
+ * exchange for cheaper acquisition than {@link FairAsyncLock}.
+ * <p>
+ * Acquiring an unheld lock, either with {@link #acquireLock()} or {@link #tryLock()}, requires a
+ * single atomic update and does not allocate; acquisitions only allocate a waiter when the lock is
+ * held. Releasing the lock does not hand it to a waiter: the lock becomes free, and a woken waiter
+ * competes for it with any new acquisitions, so a thread which releases and promptly reacquires
+ * the lock need not wait behind the queue.
+ */
+public class UnfairAsyncLock implements AsyncLock {
+  /*
+   * The lock is held when `locked` is 1. Acquisitions CAS it 0 -> 1 and return a shared token and
+   * completed stage; release CASes it back, so releasing a lock which is not held is detected. An
+   * acquisition which finds the lock held pushes a waiter onto the `waiters` stack.
+   *
+   * Releasing unlocks the lock and then signals: if the lock is still free, it pops a waiter and
+   * wakes it. A woken waiter attempts the same CAS as any other acquisition. If another acquisition
+   * barged in first, the waiter is pushed back and signals again, so that it is woken by the
+   * barger's release if it was not already. A newly pushed waiter signals too, in case the lock was
+   * released before the waiter could be seen. Pushing a waiter and then reading `locked` races
+   * with unlocking and then reading `waiters`; since all four are volatile accesses, at least one
+   * side observes the other and no waiter is left behind a free lock. Every push uses a new stack
+   * node, so pops are not subject to ABA.
+   *
+   * A waiter may withdraw by cancelling its future. A woken waiter that has been withdrawn wakes
+   * another in its place, and one that is withdrawn after acquiring the lock releases it again.
+   *
+   * Waking a waiter completes its future, which may run dependents that release this lock again on
+   * the same thread. To prevent unbounded recursion, waiters are woken with a thread local
+   * trampoline of this class: the first wake on a thread's stack drains the list of waiters that
+   * nested signals have appended.
+   */
+
+  private static final ThreadLocal<ArrayList<UnfairAsyncLock.Node>> TRAMPOLINE_WAITERS =
+      ThreadLocal.withInitial(ArrayList::new);
+
+  private static final AtomicIntegerFieldUpdater<UnfairAsyncLock> LOCKED_UPDATER =
+      AtomicIntegerFieldUpdater.newUpdater(UnfairAsyncLock.class, "locked");
+  private static final AtomicReferenceFieldUpdater<UnfairAsyncLock, Node> WAITERS_UPDATER =
+      AtomicReferenceFieldUpdater.newUpdater(UnfairAsyncLock.class, Node.class, "waiters");
+
+  private volatile int locked;
+  private volatile Node waiters;
+
+  private final LockToken token = new LockToken() {
+    @Override
+    public void releaseLock() {
+      release();
+    }
+  };
+
+  private final CompletionStage<LockToken> acquiredStage = StageSupport.completedStage(this.token);
+  private final Optional<LockToken> acquiredToken = Optional.of(this.token);
+
+  @Override
+  public CompletionStage<LockToken> acquireLock() {
+    return LOCKED_UPDATER.compareAndSet(this, 0, 1) ? this.acquiredStage : enqueue();
+  }
+
+  @Override
+  public Optional<LockToken> tryLock() {
+    return this.locked == 0 && LOCKED_UPDATER.compareAndSet(this, 0, 1)
+        ? this.acquiredToken
+        : Optional.empty();
+  }
+
+  /**
+   * Attempts to acquire the lock within the given waiting time.
+   * <p>
+   * If the waiting time elapses before the acquisition is granted the lock, it is withdrawn: it
+   * will not be woken again, and never holds the lock.
+   *
+   * @see AsyncLock#tryLock(long, TimeUnit, ScheduledExecutorService)
+   */
+  @Override
+  public CompletionStage<Optional<LockToken>> tryLock(final long timeout, final TimeUnit unit,
+      final ScheduledExecutorService scheduler) {
+    final Optional<LockToken> token = tryLock();
+    if (token.isPresent() || timeout <= 0L) {
+      return StageSupport.completedStage(token);
+    }
+    return TimedAcquisition.withdrawOnTimeout(enqueue(), LockToken::releaseLock, timeout, unit,
+        scheduler);
+  }
+
+  private CompletableFuture<LockToken> enqueue() {
+    final CompletableFuture<LockToken> waiter = new CompletableFuture<>();
+    push(waiter);
+    // the lock may have been released before the waiter was pushed
+    signal();
+    return waiter;
+  }
+
+  private void push(final CompletableFuture<LockToken> waiter) {
+    final Node n = new Node(waiter);
+    do {
+      n.next = this.waiters;
+    } while (!WAITERS_UPDATER.compareAndSet(this, n.next, n));
+  }
+
+  private void release() {
+    if (!LOCKED_UPDATER.compareAndSet(this, 1, 0)) {
+      throw new IllegalStateException("released lock not in locked state");
+    }
+    signal();
+  }
+
+  /**
+   * Wakes a waiter if there are any and the lock is free
+   */
+  private void signal() {
+    Node n;
+    do {
+      n = this.waiters;
+      if (n == null || this.locked != 0) {
+        return;
+      }
+    } while (!WAITERS_UPDATER.compareAndSet(this, n, n.next));
+
+    final ArrayList<Node> toWake = TRAMPOLINE_WAITERS.get();
+    final boolean threadLeader = toWake.isEmpty();
+    toWake.add(n);
+    if (threadLeader) {
+      // explicitly iterate because the list might be modified by implicit future recursion
+      for (int i = 0; i < toWake.size(); i++) {
+        toWake.get(i).wake();
+      }
+      // we're done unrolling, clear this thread of waiters
+      TRAMPOLINE_WAITERS.remove();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "UnfairAsyncLock ["
+        + (this.locked == 0 ? "unlocked" : "locked")
+        + (this.waiters == null ? "" : " with waiters")
+        + "]";
+  }
+
+  private final class Node {
+    final CompletableFuture<LockToken> waiter;
+    Node next;
+
+    Node(final CompletableFuture<LockToken> waiter) {
+      this.waiter = waiter;
+    }
+
+    void wake() {
+      if (this.waiter.isDone()) {
+        // withdrawn, wake another waiter in its place
+        signal();
+      } else if (LOCKED_UPDATER.compareAndSet(UnfairAsyncLock.this, 0, 1)) {
+        if (!this.waiter.complete(UnfairAsyncLock.this.token)) {
+          // withdrawn after it acquired the lock
+          release();
+        }
+      } else {
+        // another acquisition barged in, requeue and make sure its release sees us
+        push(this.waiter);
+        signal();
+      }
+    }
+  }
+}
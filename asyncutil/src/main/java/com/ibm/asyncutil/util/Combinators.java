@@ -10,8 +10,16 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
 
@@ -25,14 +33,6 @@ import java.util.stream.Collectors;
 public class Combinators {
   private Combinators() {}
 
-  /*
-   * The maximum allowed size of a chain of dependants on a stage. In particular, allOf and collect
-   * may set up a single linear dependency chain. If a CompletionStage implementation does not
-   * support trampolining the notification of dependent stages, this can cause a StackOverflow on
-   * notification
-   */
-  private final static int MAX_DEPENDANT_DEPTH = 256;
-
   /**
    * Given a collection of stages, returns a new {@link CompletionStage} that is completed when all
    * input stages are complete. If any stage completes exceptionally, the returned stage will
@@ -46,38 +46,38 @@ public class Combinators {
   @SuppressWarnings("unchecked")
   public static CompletionStage<Void> allOf(
       final Collection<? extends CompletionStage<?>> stages) {
-
-    final Iterator<? extends CompletionStage<?>> backingIt = stages.iterator();
-    final int size = stages.size();
-    final Iterator<? extends CompletionStage<?>> it =
-        size > MAX_DEPENDANT_DEPTH
-            ? new Iterator<CompletionStage<?>>() {
-              @Override
-              public boolean hasNext() {
-                return backingIt.hasNext();
-              }
-
-              @Override
-              public CompletionStage<?> next() {
-                return backingIt.next().toCompletableFuture();
-              }
-            }
-            : backingIt;
-    return allOfImpl(it);
+    final Aggregate<Object, ?, Void> aggregate = new Aggregate<>(stages.size(), null, false, null);
+    aggregate.register((Iterator<? extends CompletionStage<Object>>) stages.iterator());
+    return aggregate;
   }
 
-  /*
-   * Put every stage in the collection into a single dependant chain. CompletableFuture trampolines
-   * the notification of the chain, so it is safe - for other implementations this may cause a
-   * StackOverflow
+  /**
+   * Given a collection of stages, returns a new {@link CompletionStage} that is completed when all
+   * input stages are complete, or as soon as any input stage completes exceptionally.
+   * <p>
+   * Unlike {@link #allOf(Collection)}, which waits for every input even after one has failed, the
+   * stage returned by this method completes exceptionally with the first failure to occur, without
+   * waiting for the remaining inputs. If {@code cancelRemaining} is true, the first failure also
+   * {@link CompletableFuture#cancel(boolean) cancels} each input which is a
+   * {@link CompletableFuture}; inputs which have already completed are unaffected. Other
+   * {@link CompletionStage} implementations can't be cancelled, and are left to complete on their
+   * own.
+   *
+   * @param stages a Collection of {@link CompletionStage}
+   * @param cancelRemaining whether to cancel the inputs which are still running once any input has
+   *        failed
+   * @return a {@link CompletionStage} which will complete after every stage in {@code stages}
+   *         completes, or exceptionally once any stage in {@code stages} completes exceptionally
+   * @throws NullPointerException if {@code stages} or any of its elements are null
+   * @see #allOf(Collection)
    */
-  private static CompletionStage<Void> allOfImpl(
-      final Iterator<? extends CompletionStage<?>> it) {
-    CompletionStage<Void> accumulator = StageSupport.voidStage();
-    while (it.hasNext()) {
-      accumulator = accumulator.thenCombine(it.next(), (l, r) -> null);
-    }
-    return accumulator;
+  @SuppressWarnings("unchecked")
+  public static CompletionStage<Void> allOfFailFast(
+      final Collection<? extends CompletionStage<?>> stages, final boolean cancelRemaining) {
+    final Aggregate<Object, ?, Void> aggregate =
+        new Aggregate<>(stages.size(), null, true, cancelRemaining ? stages : null);
+    aggregate.register((Iterator<? extends CompletionStage<Object>>) stages.iterator());
+    return aggregate;
   }
 
   /**
@@ -98,34 +98,6 @@ public class Combinators {
     return collect(stages, Collectors.toCollection(() -> new ArrayList<>(stages.size())));
   }
 
-  /*
-   * Put every stage in the collection into a single dependant chain, accumulating the next element
-   * as each stage completes (from left to right). CompletableFuture trampolines the notification of
-   * the chain, so it is safe - for other implementations this may cause a StackOverflow
-   */
-  @SuppressWarnings("unchecked")
-  private static <T, A, R> CompletionStage<R> collectImpl(
-      final Iterator<? extends CompletionStage<T>> it,
-      final Collector<? super T, A, R> collector) {
-
-    CompletionStage<A> acc = StageSupport.completedStage(collector.supplier().get());
-    final BiConsumer<A, ? super T> accFun = collector.accumulator();
-
-    while (it.hasNext()) {
-      /*
-       * each additional combination step runs only after all previous steps have completed
-       */
-      acc = acc.thenCombine(it.next(), (a, t) -> {
-        accFun.accept(a, t);
-        return a;
-      });
-    }
-    return collector.characteristics().contains(Collector.Characteristics.IDENTITY_FINISH)
-        ? (CompletionStage<R>) acc
-        : acc.thenApply(collector.finisher());
-
-  }
-
   /**
    * Applies a collector to the results of all {@code stages} after all complete, returning a
    * {@link CompletionStage} of the collected result. There is no need nor benefit for the Collector
@@ -144,27 +116,209 @@ public class Combinators {
    *         by {@code collector} when all input {@code stages} have completed.
    * @throws NullPointerException if {@code stages} or any of its elements are null
    */
-  @SuppressWarnings("unchecked")
   public static <T, A, R> CompletionStage<R> collect(
       final Collection<? extends CompletionStage<T>> stages,
       final Collector<? super T, A, R> collector) {
-    final int size = stages.size();
-    final Iterator<? extends CompletionStage<T>> backingIt = stages.iterator();
-    final Iterator<? extends CompletionStage<T>> it =
-        size > MAX_DEPENDANT_DEPTH
-            ? new Iterator<CompletionStage<T>>() {
-              @Override
-              public boolean hasNext() {
-                return backingIt.hasNext();
-              }
-
-              @Override
-              public CompletionStage<T> next() {
-                return backingIt.next().toCompletableFuture();
-              }
+    final Aggregate<T, A, R> aggregate = new Aggregate<>(stages.size(), collector, false, null);
+    aggregate.register(stages.iterator());
+    return aggregate;
+  }
+
+  /**
+   * Given a collection of stages all of the same type, returns a new {@link CompletionStage} that
+   * is completed with a collection of the results of all input stages when all stages complete, or
+   * exceptionally as soon as any input stage completes exceptionally. If the input collection has a
+   * defined order, the order will be preserved in the returned collection.
+   * <p>
+   * See {@link #allOfFailFast(Collection, boolean)} for the failure and cancellation behavior.
+   *
+   * @param stages a Collection of {@link CompletionStage} all of type T
+   * @param cancelRemaining whether to cancel the inputs which are still running once any input has
+   *        failed
+   * @return a {@link CompletionStage} which will complete with a collection of the elements
+   *         produced by {@code stages} when all stages complete, or exceptionally once any stage in
+   *         {@code stages} completes exceptionally
+   * @throws NullPointerException if {@code stages} or any of its elements are null
+   * @see #collect(Collection)
+   */
+  public static <T> CompletionStage<Collection<T>> collectFailFast(
+      final Collection<? extends CompletionStage<T>> stages, final boolean cancelRemaining) {
+    return collectFailFast(stages,
+        Collectors.toCollection(() -> new ArrayList<>(stages.size())), cancelRemaining);
+  }
+
+  /**
+   * Applies a collector to the results of all {@code stages} after all complete, returning a
+   * {@link CompletionStage} of the collected result, or completes exceptionally as soon as any
+   * input stage completes exceptionally. The {@code collector} is only applied if all inputs
+   * succeed.
+   * <p>
+   * See {@link #allOfFailFast(Collection, boolean)} for the failure and cancellation behavior.
+   *
+   * @param stages a Collection of stages all of type T
+   * @param collector a {@link Collector} which will be applied to the results of {@code stages} to
+   *        produce the final R result.
+   * @param cancelRemaining whether to cancel the inputs which are still running once any input has
+   *        failed
+   * @param <T> The type of the elements in {@code stages} which will be collected by {@code
+   *     collector}
+   * @param <A> The intermediate collection type
+   * @param <R> The final type returned by {@code collector}
+   * @return a {@link CompletionStage} which will complete with the R typed object that is produced
+   *         by {@code collector} when all input {@code stages} have completed, or exceptionally
+   *         once any stage in {@code stages} completes exceptionally
+   * @throws NullPointerException if {@code stages} or any of its elements are null
+   * @see #collect(Collection, Collector)
+   */
+  public static <T, A, R> CompletionStage<R> collectFailFast(
+      final Collection<? extends CompletionStage<T>> stages,
+      final Collector<? super T, A, R> collector,
+      final boolean cancelRemaining) {
+    final Aggregate<T, A, R> aggregate =
+        new Aggregate<>(stages.size(), collector, true, cancelRemaining ? stages : null);
+    aggregate.register(stages.iterator());
+    return aggregate;
+  }
+
+  /**
+   * The stage returned by {@link #allOf(Collection)} and {@link #collect(Collection, Collector)}.
+   * <p>
+   * Rather than chaining the input stages into a linear sequence of combined stages, every input
+   * gets a single dependent which stores its result into a pre-sized array and counts down the
+   * number of remaining inputs. The input that brings the count to zero completes the aggregate in
+   * one pass over the array. The count starts one higher than the number of inputs, and
+   * registration itself arrives last, so the aggregate can't complete while dependents are still
+   * being registered. Inputs which are already successfully completed futures are read directly
+   * during registration and arrive together with it.
+   * <p>
+   * If any input fails, the aggregate fails with the failure of the earliest such input in
+   * iteration order, matching the behavior of a left-to-right chain of
+   * {@link CompletionStage#thenCombine thenCombine} calls. In fail-fast mode the aggregate instead
+   * fails immediately with the first failure to occur, and optionally cancels the inputs.
+   *
+   * @param <T> the input type
+   * @param <A> the collector's intermediate type
+   * @param <R> the result type
+   */
+  private static final class Aggregate<T, A, R> extends CompletableFuture<R> {
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<Aggregate> REMAINING_UPDATER =
+        AtomicIntegerFieldUpdater.newUpdater(Aggregate.class, "remaining");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Aggregate, Failure> FAILURE_UPDATER =
+        AtomicReferenceFieldUpdater.newUpdater(Aggregate.class, Failure.class, "failure");
+
+    // null if results are not collected
+    private final Collector<? super T, A, R> collector;
+    private final Object[] results;
+    private final boolean failFast;
+    // inputs to cancel on failure, null if they should not be cancelled
+    private final Collection<? extends CompletionStage<?>> cancellable;
+    private volatile int remaining;
+    private volatile Failure failure;
+
+    Aggregate(
+        final int size,
+        final Collector<? super T, A, R> collector,
+        final boolean failFast,
+        final Collection<? extends CompletionStage<?>> cancellable) {
+      this.collector = collector;
+      this.results = collector == null ? null : new Object[size];
+      this.failFast = failFast;
+      this.cancellable = cancellable;
+      this.remaining = size + 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    void register(final Iterator<? extends CompletionStage<T>> stages) {
+      int i = 0;
+      int arrived = 1;
+      while (stages.hasNext()) {
+        final int index = i++;
+        final CompletionStage<T> stage = stages.next();
+        if (stage instanceof CompletableFuture
+            && ((CompletableFuture<T>) stage).isDone()
+            && !((CompletableFuture<T>) stage).isCompletedExceptionally()) {
+          // already successful, no need for a dependent
+          if (this.results != null) {
+            this.results[index] = ((CompletableFuture<T>) stage).join();
+          }
+          arrived++;
+          continue;
+        }
+        stage.whenComplete((t, ex) -> {
+          if (ex != null) {
+            fail(index, ex);
+          } else if (this.results != null) {
+            this.results[index] = t;
+          }
+          arrive(1);
+        });
+      }
+      arrive(arrived);
+    }
+
+    private void fail(final int index, final Throwable ex) {
+      if (this.failFast) {
+        if (completeExceptionally(ex) && this.cancellable != null) {
+          for (final CompletionStage<?> stage : this.cancellable) {
+            if (stage instanceof CompletableFuture) {
+              ((CompletableFuture<?>) stage).cancel(false);
             }
-            : backingIt;
-    return collectImpl(it, collector);
+          }
+        }
+        return;
+      }
+
+      Failure curr;
+      do {
+        curr = this.failure;
+        if (curr != null && curr.index < index) {
+          return;
+        }
+      } while (!FAILURE_UPDATER.compareAndSet(this, curr, new Failure(index, ex)));
+    }
+
+    private void arrive(final int count) {
+      if (REMAINING_UPDATER.addAndGet(this, -count) != 0 || isDone()) {
+        return;
+      }
+
+      final Failure f = this.failure;
+      if (f != null) {
+        completeExceptionally(f.ex);
+      } else if (this.collector == null) {
+        complete(null);
+      } else {
+        try {
+          complete(finish());
+        } catch (final Throwable e) {
+          completeExceptionally(e);
+        }
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private R finish() {
+      final A acc = this.collector.supplier().get();
+      final BiConsumer<A, ? super T> accFun = this.collector.accumulator();
+      for (final Object result : this.results) {
+        accFun.accept(acc, (T) result);
+      }
+      return this.collector.characteristics().contains(Collector.Characteristics.IDENTITY_FINISH)
+          ? (R) acc
+          : this.collector.finisher().apply(acc);
+    }
+  }
+
+  private static final class Failure {
+    final int index;
+    final Throwable ex;
+
+    Failure(final int index, final Throwable ex) {
+      this.index = index;
+      this.ex = ex;
+    }
   }
 
   /**
@@ -195,16 +349,194 @@ public class Combinators {
    * @return a {@link CompletionStage} that will be completed with a map mapping keys of type K to
    *         the values returned by the CompletionStages in {@code stageMap}
    */
-  @SuppressWarnings("unchecked")
   public static <K, V> CompletionStage<Map<K, V>> keyedAll(
       final Map<K, ? extends CompletionStage<V>> stageMap) {
-    return Combinators
-        .allOf(stageMap.values())
-        .thenApply(ignore -> stageMap.entrySet().stream()
-            .collect(Collectors.toMap(
-                e -> e.getKey(),
-                e -> e.getValue().toCompletableFuture().join())));
+    return keyedAll(stageMap, Combinators.allOf(stageMap.values()));
+  }
+
+  /**
+   * Given a Map from some key type K to {@link CompletionStage CompletionStages} of values, returns
+   * a {@link CompletionStage} which completes with a {@code Map<K, V>} when all the
+   * CompletionStages in the input map have completed, or exceptionally as soon as any of them
+   * completes exceptionally.
+   * <p>
+   * See {@link #allOfFailFast(Collection, boolean)} for the failure and cancellation behavior.
+   *
+   * @param stageMap a Map with keys of type K and {@link CompletionStage CompletionStages} of type
+   *        V for values
+   * @param cancelRemaining whether to cancel the values which are still running once any value has
+   *        failed
+   * @param <K> the input and output key type
+   * @param <V> the value type for the map that will be produced by the returned
+   *        {@link CompletionStage}
+   * @throws NullPointerException if {@code stageMap} or any of its values are null
+   * @return a {@link CompletionStage} that will be completed with a map mapping keys of type K to
+   *         the values returned by the CompletionStages in {@code stageMap}, or exceptionally once
+   *         any value in {@code stageMap} completes exceptionally
+   * @see #keyedAll(Map)
+   */
+  public static <K, V> CompletionStage<Map<K, V>> keyedAllFailFast(
+      final Map<K, ? extends CompletionStage<V>> stageMap, final boolean cancelRemaining) {
+    return keyedAll(stageMap, Combinators.allOfFailFast(stageMap.values(), cancelRemaining));
+  }
+
+  private static <K, V> CompletionStage<Map<K, V>> keyedAll(
+      final Map<K, ? extends CompletionStage<V>> stageMap, final CompletionStage<Void> all) {
+    return all.thenApply(ignore -> stageMap.entrySet().stream()
+        .collect(Collectors.toMap(
+            e -> e.getKey(),
+            e -> e.getValue().toCompletableFuture().join())));
+  }
+
+  /**
+   * Runs an asynchronous operation with hedging: if an attempt has not completed within the given
+   * delay, another attempt is started, up to {@code maxAttempts} attempts in total. The returned
+   * stage completes with the result of the first attempt to complete successfully, after which the
+   * attempts which are still running are {@link CompletableFuture#cancel(boolean) cancelled} if they
+   * are {@link CompletableFuture CompletableFutures}.
+   * <p>
+   * Hedging trades extra load for lower tail latency when some attempts are slow for reasons
+   * unrelated to the request itself, e.g. a slow replica. A typical delay is a high percentile of the
+   * operation's observed latency, so that only the slowest few requests are hedged; callers which
+   * track that percentile can simply pass its current value.
+   * <p>
+   * Attempts which fail do not fail the returned stage while other attempts may still succeed. If
+   * every running attempt has failed, the next attempt is started immediately rather than after the
+   * delay. If all {@code maxAttempts} attempts fail, the returned stage completes exceptionally with
+   * the failure of the last attempt to fail. If the returned stage is cancelled, no further attempts
+   * are started and the running attempts are cancelled.
+   * <p>
+   * The first attempt is started in the calling thread; subsequent attempts may be started by a
+   * thread of {@code scheduler}.
+   *
+   * <pre>
+   * {@code
+   * CompletionStage<Value> value = Combinators.hedge(
+   *     () -> replicas.next().read(key), 3, p99Millis, TimeUnit.MILLISECONDS, scheduler);
+   * }
+   * </pre>
+   *
+   * @param attempt a supplier which starts an attempt of the operation each time it is called
+   * @param maxAttempts the greatest number of attempts to start. Must be positive
+   * @param delay the time to wait for an attempt before starting the next one
+   * @param unit the time unit of the {@code delay} argument
+   * @param scheduler the executor used to schedule additional attempts
+   * @param <T> the result type of the operation
+   * @return a {@link CompletionStage} which will complete with the result of the first successful
+   *         attempt, or exceptionally if every attempt fails
+   * @throws IllegalArgumentException if {@code maxAttempts} is not positive
+   */
+  public static <T> CompletionStage<T> hedge(
+      final Supplier<? extends CompletionStage<T>> attempt,
+      final int maxAttempts,
+      final long delay,
+      final TimeUnit unit,
+      final ScheduledExecutorService scheduler) {
+    if (maxAttempts <= 0) {
+      throw new IllegalArgumentException("maxAttempts must be positive, was " + maxAttempts);
+    }
+    final Hedge<T> hedge = new Hedge<>(attempt, maxAttempts, delay, unit, scheduler);
+    hedge.launch();
+    return hedge;
   }
 
+  /**
+   * The stage returned by {@link #hedge}.
+   * <p>
+   * Each launch claims the next attempt index, schedules the following launch and starts the
+   * attempt. Launches can come from the timer or from a failing attempt, so the claim is a CAS on
+   * {@code launched}; {@code failed} counts the attempts that have failed, and when it catches up
+   * to {@code launched} no attempt is running. The started attempts are kept so that they can be
+   * cancelled when this stage completes.
+   */
+  private static final class Hedge<T> extends CompletableFuture<T> {
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<Hedge> LAUNCHED_UPDATER =
+        AtomicIntegerFieldUpdater.newUpdater(Hedge.class, "launched");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<Hedge> FAILED_UPDATER =
+        AtomicIntegerFieldUpdater.newUpdater(Hedge.class, "failed");
+
+    private final Supplier<? extends CompletionStage<T>> attempt;
+    private final long delay;
+    private final TimeUnit unit;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicReferenceArray<CompletionStage<T>> attempts;
+    private volatile int launched;
+    private volatile int failed;
+    private volatile ScheduledFuture<?> timer;
+
+    Hedge(
+        final Supplier<? extends CompletionStage<T>> attempt,
+        final int maxAttempts,
+        final long delay,
+        final TimeUnit unit,
+        final ScheduledExecutorService scheduler) {
+      this.attempt = attempt;
+      this.delay = delay;
+      this.unit = unit;
+      this.scheduler = scheduler;
+      this.attempts = new AtomicReferenceArray<>(maxAttempts);
+      whenComplete((t, ex) -> {
+        final ScheduledFuture<?> timer = this.timer;
+        if (timer != null) {
+          timer.cancel(false);
+        }
+        cancelAttempts();
+      });
+    }
+
+    void launch() {
+      int index;
+      do {
+        index = this.launched;
+        if (index == this.attempts.length() || isDone()) {
+          return;
+        }
+      } while (!LAUNCHED_UPDATER.compareAndSet(this, index, index + 1));
 
+      if (index + 1 < this.attempts.length()) {
+        this.timer = this.scheduler.schedule(this::launch, this.delay, this.unit);
+      }
+
+      CompletionStage<T> stage;
+      try {
+        stage = this.attempt.get();
+      } catch (final Throwable e) {
+        stage = StageSupport.exceptionalStage(e);
+      }
+      this.attempts.set(index, stage);
+      if (isDone()) {
+        // completed while we were starting the attempt, and may have missed it while cancelling
+        cancelAttempts();
+      }
+
+      stage.whenComplete((t, ex) -> {
+        if (ex == null) {
+          complete(t);
+          return;
+        }
+        final int failed = FAILED_UPDATER.incrementAndGet(this);
+        if (failed == this.attempts.length()) {
+          completeExceptionally(ex);
+        } else if (failed == this.launched) {
+          // nothing is running, don't wait for the timer
+          final ScheduledFuture<?> timer = this.timer;
+          if (timer != null) {
+            timer.cancel(false);
+          }
+          launch();
+        }
+      });
+    }
+
+    private void cancelAttempts() {
+      for (int i = 0; i < this.attempts.length(); i++) {
+        final CompletionStage<T> stage = this.attempts.get(i);
+        if (stage instanceof CompletableFuture) {
+          ((CompletableFuture<T>) stage).cancel(false);
+        }
+      }
+    }
+  }
 }
@@ -0,0 +1,369 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A timer for large numbers of short tasks, most of which are cancelled before they run, such as
+ * the timeouts of {@link StageSupport#timeout(CompletionStage, long, TimeUnit) StageSupport}.
+ * <p>
+ * Tasks are kept in a hashed timing wheel: a ring of buckets, each holding the tasks due in one
+ * tick of the timer. Scheduling and cancelling a task take constant time and allocate only the
+ * returned {@link Timeout}, unlike a {@link java.util.concurrent.ScheduledThreadPoolExecutor} whose
+ * queue is a heap. The price is precision: a task runs on the first tick at or after its delay has
+ * elapsed, so it may run up to one tick late, and later still if the timer's thread falls behind.
+ * <p>
+ * A single thread, started when the first task is scheduled, advances the wheel and runs the tasks
+ * which are due. Tasks should therefore be short, e.g. completing a {@link CompletableFuture}, and
+ * must not block; a task which throws an exception does not affect the timer or other tasks. The
+ * thread ticks until the timer is {@link #close() closed}, even when no tasks are scheduled.
+ */
+public final class HashedWheelTimer implements AsyncCloseable {
+  private static final AtomicIntegerFieldUpdater<HashedWheelTimer> STATE_UPDATER =
+      AtomicIntegerFieldUpdater.newUpdater(HashedWheelTimer.class, "state");
+  private static final AtomicReferenceFieldUpdater<HashedWheelTimer, Timeout> SCHEDULED_UPDATER =
+      AtomicReferenceFieldUpdater.newUpdater(HashedWheelTimer.class, Timeout.class, "scheduled");
+  private static final AtomicReferenceFieldUpdater<HashedWheelTimer, Timeout> CANCELLED_UPDATER =
+      AtomicReferenceFieldUpdater.newUpdater(HashedWheelTimer.class, Timeout.class, "cancelled");
+
+  private static final int NEW = 0;
+  private static final int STARTED = 1;
+  private static final int CLOSED = 2;
+
+  private final long tickNanos;
+  private final Bucket[] wheel;
+  private final int mask;
+  private final long startTime;
+  private final ThreadFactory threadFactory;
+  private final CompletableFuture<Void> stopped = new CompletableFuture<>();
+  private volatile int state = NEW;
+  private volatile Thread worker;
+
+  /*
+   * Stacks of the timeouts which were scheduled or cancelled since the last tick, linked through
+   * Timeout.nextScheduled and Timeout.nextCancelled. Any thread may push onto them; the worker
+   * takes each whole stack at the start of a tick, and it alone touches the buckets
+   */
+  private volatile Timeout scheduled;
+  private volatile Timeout cancelled;
+
+  /**
+   * Creates a timer which ticks every 10 milliseconds, with a wheel of 512 buckets, whose thread is
+   * a daemon thread.
+   */
+  public HashedWheelTimer() {
+    this(10, TimeUnit.MILLISECONDS, 512, HashedWheelTimer::newDaemonThread);
+  }
+
+  /**
+   * Creates a timer.
+   * <p>
+   * The tick duration is the precision of the timer: shorter ticks run tasks closer to their
+   * deadlines, at the cost of waking the timer's thread more often. A task whose delay exceeds a
+   * full turn of the wheel is passed over by its bucket once per turn until it is due, so the
+   * wheel should usually be large enough to span the typical delay.
+   *
+   * @param tickDuration the interval at which the timer runs the tasks which are due. Must be
+   *        positive
+   * @param unit the time unit of the {@code tickDuration} argument
+   * @param ticksPerWheel the number of buckets in the wheel, rounded up to a power of two. Must be
+   *        positive
+   * @param threadFactory the factory used to create the timer's thread
+   * @throws IllegalArgumentException if {@code tickDuration} or {@code ticksPerWheel} is not
+   *         positive
+   */
+  public HashedWheelTimer(
+      final long tickDuration,
+      final TimeUnit unit,
+      final int ticksPerWheel,
+      final ThreadFactory threadFactory) {
+    if (tickDuration <= 0) {
+      throw new IllegalArgumentException("tickDuration must be positive, was " + tickDuration);
+    }
+    if (ticksPerWheel <= 0 || ticksPerWheel > 1 << 30) {
+      throw new IllegalArgumentException(
+          "ticksPerWheel must be positive and at most 2^30, was " + ticksPerWheel);
+    }
+    this.tickNanos = Math.max(1L, unit.toNanos(tickDuration));
+    final int size = ticksPerWheel == 1 ? 1 : Integer.highestOneBit(ticksPerWheel - 1) << 1;
+    this.wheel = new Bucket[size];
+    for (int i = 0; i < size; i++) {
+      this.wheel[i] = new Bucket();
+    }
+    this.mask = size - 1;
+    this.threadFactory = threadFactory;
+    this.startTime = System.nanoTime();
+  }
+
+  /**
+   * Gets the timer used by the methods of {@link StageSupport} which do not take one. It is
+   * created with the default settings of {@link #HashedWheelTimer()}, and is never closed.
+   */
+  static HashedWheelTimer defaultTimer() {
+    return DefaultTimerHolder.INSTANCE;
+  }
+
+  private static final class DefaultTimerHolder {
+    static final HashedWheelTimer INSTANCE = new HashedWheelTimer();
+  }
+
+  private static Thread newDaemonThread(final Runnable runnable) {
+    final Thread thread = new Thread(runnable, "asyncutil-timer");
+    thread.setDaemon(true);
+    return thread;
+  }
+
+  /**
+   * Schedules a task to run once the given delay has elapsed.
+   * <p>
+   * The task runs on the timer's thread no earlier than {@code delay} from now, on the first tick
+   * after that, unless it is {@link Timeout#cancel() cancelled} first. A task scheduled with a
+   * delay which is not positive runs on the next tick.
+   *
+   * @param task the task to run
+   * @param delay the time from now after which to run the task
+   * @param unit the time unit of the {@code delay} argument
+   * @return a {@link Timeout} with which the task can be cancelled
+   * @throws IllegalStateException if this timer has been closed
+   */
+  public Timeout schedule(final Runnable task, final long delay, final TimeUnit unit) {
+    if (this.state != STARTED) {
+      start();
+    }
+    final long elapsed = System.nanoTime() - this.startTime;
+    final long delayNanos = Math.max(0L, unit.toNanos(delay));
+    final Timeout timeout = new Timeout(
+        this,
+        task,
+        delayNanos > Long.MAX_VALUE - elapsed ? Long.MAX_VALUE : elapsed + delayNanos);
+    Timeout head;
+    do {
+      head = this.scheduled;
+      timeout.nextScheduled = head;
+    } while (!SCHEDULED_UPDATER.compareAndSet(this, head, timeout));
+    return timeout;
+  }
+
+  private void start() {
+    switch (this.state) {
+      case NEW:
+        if (STATE_UPDATER.compareAndSet(this, NEW, STARTED)) {
+          final Thread worker = this.threadFactory.newThread(this::run);
+          this.worker = worker;
+          worker.start();
+        }
+        // lost the race to start the worker, or it was closed concurrently
+        if (this.state == CLOSED) {
+          throw new IllegalStateException("timer has been closed");
+        }
+        break;
+      case STARTED:
+        break;
+      default:
+        throw new IllegalStateException("timer has been closed");
+    }
+  }
+
+  /**
+   * Stops this timer. Tasks which have not run by the time the timer's thread stops will never
+   * run, and no further tasks can be scheduled.
+   *
+   * @return a {@link CompletionStage} which completes once the timer's thread has stopped
+   */
+  @Override
+  public CompletionStage<Void> close() {
+    final int prev = STATE_UPDATER.getAndSet(this, CLOSED);
+    if (prev == NEW) {
+      this.stopped.complete(null);
+    } else if (prev == STARTED) {
+      final Thread worker = this.worker;
+      if (worker != null) {
+        LockSupport.unpark(worker);
+      }
+    }
+    return this.stopped;
+  }
+
+  private void run() {
+    try {
+      long tick = (System.nanoTime() - this.startTime) / this.tickNanos;
+      while (this.state == STARTED) {
+        // sleep until the end of the current tick
+        final long deadline = (tick + 1) * this.tickNanos;
+        long now;
+        while ((now = System.nanoTime() - this.startTime) < deadline && this.state == STARTED) {
+          LockSupport.parkNanos(this, deadline - now);
+        }
+        if (this.state != STARTED) {
+          break;
+        }
+        transferScheduled(tick);
+        removeCancelled();
+        this.wheel[(int) (tick & this.mask)].expire(now);
+        tick++;
+      }
+    } finally {
+      this.stopped.complete(null);
+    }
+  }
+
+  /** Moves the timeouts scheduled since the last tick into their buckets */
+  private void transferScheduled(final long tick) {
+    Timeout timeout = SCHEDULED_UPDATER.getAndSet(this, null);
+    while (timeout != null) {
+      final Timeout next = timeout.nextScheduled;
+      timeout.nextScheduled = null;
+      if (timeout.state == Timeout.PENDING) {
+        final long due = timeout.deadline / this.tickNanos;
+        // a timeout which is already due goes in the current bucket
+        timeout.remainingRounds = Math.max(0L, (due - tick) / this.wheel.length);
+        this.wheel[(int) (Math.max(due, tick) & this.mask)].add(timeout);
+      }
+      timeout = next;
+    }
+  }
+
+  /** Unlinks the timeouts cancelled since the last tick from their buckets */
+  private void removeCancelled() {
+    Timeout timeout = CANCELLED_UPDATER.getAndSet(this, null);
+    while (timeout != null) {
+      final Timeout next = timeout.nextCancelled;
+      timeout.nextCancelled = null;
+      if (timeout.bucket != null) {
+        timeout.bucket.remove(timeout);
+      }
+      timeout = next;
+    }
+  }
+
+  /**
+   * A task scheduled on a {@link HashedWheelTimer}, which can be cancelled until it runs.
+   */
+  public static final class Timeout {
+    private static final AtomicIntegerFieldUpdater<Timeout> STATE_UPDATER =
+        AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private final HashedWheelTimer timer;
+    private final Runnable task;
+    // nanoseconds from the timer's start time
+    private final long deadline;
+    private volatile int state = PENDING;
+    private volatile Timeout nextScheduled;
+    private volatile Timeout nextCancelled;
+
+    // accessed only by the timer's thread
+    private long remainingRounds;
+    private Bucket bucket;
+    private Timeout prev;
+    private Timeout next;
+
+    Timeout(final HashedWheelTimer timer, final Runnable task, final long deadline) {
+      this.timer = timer;
+      this.task = task;
+      this.deadline = deadline;
+    }
+
+    /**
+     * Cancels the task if it has not yet run. The task is removed from the timer on its next tick,
+     * so a cancelled task does not hold on to memory until its deadline.
+     *
+     * @return true if the task will not run, false if it has already run or started to run
+     */
+    public boolean cancel() {
+      if (this.state == PENDING && STATE_UPDATER.compareAndSet(this, PENDING, CANCELLED)) {
+        Timeout head;
+        do {
+          head = this.timer.cancelled;
+          this.nextCancelled = head;
+        } while (!CANCELLED_UPDATER.compareAndSet(this.timer, head, this));
+        return true;
+      }
+      return this.state == CANCELLED;
+    }
+
+    /**
+     * Returns whether the task has been cancelled.
+     *
+     * @return true if {@link #cancel()} prevented the task from running
+     */
+    public boolean isCancelled() {
+      return this.state == CANCELLED;
+    }
+
+    private void expire() {
+      if (STATE_UPDATER.compareAndSet(this, PENDING, EXPIRED)) {
+        try {
+          this.task.run();
+        } catch (final Throwable e) {
+          // the task's failure is its own concern, the timer carries on
+        }
+      }
+    }
+  }
+
+  /** The doubly linked list of the timeouts in one slot of the wheel, used only by the worker */
+  private static final class Bucket {
+    private Timeout head;
+    private Timeout tail;
+
+    void add(final Timeout timeout) {
+      timeout.bucket = this;
+      if (this.head == null) {
+        this.head = this.tail = timeout;
+      } else {
+        this.tail.next = timeout;
+        timeout.prev = this.tail;
+        this.tail = timeout;
+      }
+    }
+
+    void remove(final Timeout timeout) {
+      final Timeout next = timeout.next;
+      if (timeout.prev != null) {
+        timeout.prev.next = next;
+      } else {
+        this.head = next;
+      }
+      if (next != null) {
+        next.prev = timeout.prev;
+      } else {
+        this.tail = timeout.prev;
+      }
+      timeout.prev = null;
+      timeout.next = null;
+      timeout.bucket = null;
+    }
+
+    /** Runs the timeouts which are due in this turn of the wheel */
+    void expire(final long now) {
+      Timeout timeout = this.head;
+      while (timeout != null) {
+        final Timeout next = timeout.next;
+        if (timeout.state != Timeout.PENDING) {
+          remove(timeout);
+        } else if (timeout.remainingRounds <= 0 && timeout.deadline <= now) {
+          remove(timeout);
+          timeout.expire();
+        } else {
+          timeout.remainingRounds--;
+        }
+        timeout = next;
+      }
+    }
+  }
+}
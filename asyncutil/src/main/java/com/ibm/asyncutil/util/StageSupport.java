@@ -9,6 +9,8 @@ package com.ibm.asyncutil.util;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
@@ -95,6 +97,167 @@ public class StageSupport {
     return CompletedStage.exception(ex);
   }
 
+  /**
+   * Creates a {@link CompletionStage} that completes once the given delay has elapsed.
+   * <p>
+   * The delay is measured by a shared {@link HashedWheelTimer}, so the returned stage may complete
+   * up to 10 milliseconds late, on that timer's thread. Dependent actions which are not short
+   * should therefore be attached with an async method such as
+   * {@link CompletionStage#thenRunAsync(Runnable, java.util.concurrent.Executor)}.
+   *
+   * @param delay the time after which to complete the returned stage
+   * @param unit the time unit of the {@code delay} argument
+   * @return a {@link CompletionStage} which completes with null after {@code delay}
+   * @see #delay(long, TimeUnit, HashedWheelTimer)
+   */
+  public static CompletionStage<Void> delay(final long delay, final TimeUnit unit) {
+    return delay(delay, unit, HashedWheelTimer.defaultTimer());
+  }
+
+  /**
+   * Creates a {@link CompletionStage} that completes on the given timer once the given delay has
+   * elapsed.
+   *
+   * @param delay the time after which to complete the returned stage
+   * @param unit the time unit of the {@code delay} argument
+   * @param timer the timer used to measure the delay, on whose thread the returned stage completes
+   * @return a {@link CompletionStage} which completes with null after {@code delay}
+   * @see #delay(long, TimeUnit)
+   */
+  public static CompletionStage<Void> delay(
+      final long delay,
+      final TimeUnit unit,
+      final HashedWheelTimer timer) {
+    if (delay <= 0) {
+      return voidStage();
+    }
+    final CompletableFuture<Void> future = new CompletableFuture<>();
+    timer.schedule(() -> future.complete(null), delay, unit);
+    return future;
+  }
+
+  /**
+   * Bounds the time to wait for a stage. Returns a new {@link CompletionStage} which completes with
+   * the result of {@code stage} if it completes within the given timeout, or otherwise completes
+   * exceptionally with a {@link TimeoutException}. {@code stage} itself is not affected by the
+   * timeout; see {@link #orTimeout(CompletableFuture, long, TimeUnit)} to complete it instead.
+   *
+   * <pre>
+   * {@code
+   * CompletionStage<Response> response =
+   *     StageSupport.timeout(client.send(request), 500, TimeUnit.MILLISECONDS);
+   * }
+   * </pre>
+   *
+   * The timeout is measured by a shared {@link HashedWheelTimer}, so the returned stage may time
+   * out up to 10 milliseconds late, on that timer's thread. A timeout is cheap to create, and when
+   * {@code stage} completes in time it is removed from the timer, so this is suitable for timing
+   * out large numbers of operations which usually succeed.
+   *
+   * @param stage the stage to wait for
+   * @param timeout the time to wait for {@code stage}
+   * @param unit the time unit of the {@code timeout} argument
+   * @param <T> the type of {@code stage}
+   * @return a {@link CompletionStage} which completes with the result of {@code stage}, or with a
+   *         {@link TimeoutException} if {@code timeout} elapses first
+   * @see #timeout(CompletionStage, long, TimeUnit, HashedWheelTimer)
+   */
+  public static <T> CompletionStage<T> timeout(
+      final CompletionStage<T> stage,
+      final long timeout,
+      final TimeUnit unit) {
+    return timeout(stage, timeout, unit, HashedWheelTimer.defaultTimer());
+  }
+
+  /**
+   * Bounds the time to wait for a stage, as {@link #timeout(CompletionStage, long, TimeUnit)} does,
+   * using the given timer.
+   *
+   * @param stage the stage to wait for
+   * @param timeout the time to wait for {@code stage}
+   * @param unit the time unit of the {@code timeout} argument
+   * @param timer the timer used to measure the timeout, on whose thread the returned stage times
+   *        out
+   * @param <T> the type of {@code stage}
+   * @return a {@link CompletionStage} which completes with the result of {@code stage}, or with a
+   *         {@link TimeoutException} if {@code timeout} elapses first
+   * @see #timeout(CompletionStage, long, TimeUnit)
+   */
+  public static <T> CompletionStage<T> timeout(
+      final CompletionStage<T> stage,
+      final long timeout,
+      final TimeUnit unit,
+      final HashedWheelTimer timer) {
+    final CompletableFuture<T> result = new CompletableFuture<>();
+    stage.whenComplete((t, ex) -> {
+      if (ex != null) {
+        result.completeExceptionally(ex);
+      } else {
+        result.complete(t);
+      }
+    });
+    timeoutWhenPending(result, timeout, unit, timer);
+    return result;
+  }
+
+  /**
+   * Completes the given future exceptionally with a {@link TimeoutException} if it does not
+   * complete within the given timeout. This is the equivalent of Java 9's
+   * {@code CompletableFuture.orTimeout}: unlike {@link #timeout(CompletionStage, long, TimeUnit)},
+   * the future itself is completed, so that the code producing its result can observe the timeout.
+   * <p>
+   * The timeout is measured by a shared {@link HashedWheelTimer}, so {@code future} may time out up
+   * to 10 milliseconds late, on that timer's thread.
+   *
+   * @param future the future to complete on timeout
+   * @param timeout the time to wait for {@code future}
+   * @param unit the time unit of the {@code timeout} argument
+   * @param <T> the type of {@code future}
+   * @return {@code future}
+   * @see #orTimeout(CompletableFuture, long, TimeUnit, HashedWheelTimer)
+   */
+  public static <T> CompletableFuture<T> orTimeout(
+      final CompletableFuture<T> future,
+      final long timeout,
+      final TimeUnit unit) {
+    return orTimeout(future, timeout, unit, HashedWheelTimer.defaultTimer());
+  }
+
+  /**
+   * Completes the given future exceptionally with a {@link TimeoutException} if it does not
+   * complete within the given timeout, as {@link #orTimeout(CompletableFuture, long, TimeUnit)}
+   * does, using the given timer.
+   *
+   * @param future the future to complete on timeout
+   * @param timeout the time to wait for {@code future}
+   * @param unit the time unit of the {@code timeout} argument
+   * @param timer the timer used to measure the timeout, on whose thread {@code future} times out
+   * @param <T> the type of {@code future}
+   * @return {@code future}
+   * @see #orTimeout(CompletableFuture, long, TimeUnit)
+   */
+  public static <T> CompletableFuture<T> orTimeout(
+      final CompletableFuture<T> future,
+      final long timeout,
+      final TimeUnit unit,
+      final HashedWheelTimer timer) {
+    timeoutWhenPending(future, timeout, unit, timer);
+    return future;
+  }
+
+  private static void timeoutWhenPending(
+      final CompletableFuture<?> future,
+      final long timeout,
+      final TimeUnit unit,
+      final HashedWheelTimer timer) {
+    // a future which is already complete needs no timer
+    if (!future.isDone()) {
+      final HashedWheelTimer.Timeout task = timer.schedule(
+          () -> future.completeExceptionally(new TimeoutException()), timeout, unit);
+      future.whenComplete((t, ex) -> task.cancel());
+    }
+  }
+
   /**
    * Performs a function with an asynchronously acquired {@link AutoCloseable auto closeable},
    * ensuring that the resource is {@link AutoCloseable#close() closed} after the function runs.
@@ -8,6 +8,7 @@ package com.ibm.asyncutil.iteration;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
@@ -33,6 +34,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import com.ibm.asyncutil.util.Combinators;
+import com.ibm.asyncutil.util.Either;
 
 public abstract class AbstractAsyncQueueTest {
   private final static int NUM_THREADS = 5;
@@ -285,6 +287,21 @@ public abstract class AbstractAsyncQueueTest {
     Assert.assertFalse(poll().isPresent());
   }
 
+  @Test
+  public void nextBatchTest() {
+    final AsyncIterator<Integer> consumer = consumer();
+    final CompletionStage<Either<AsyncIterator.End, List<Integer>>> first = consumer.nextBatch(5);
+    Assert.assertFalse(first.toCompletableFuture().isDone());
+    send(1);
+    Assert.assertEquals(Arrays.asList(1), first.toCompletableFuture().join().right().get());
+    send(2);
+    terminate();
+    Assert.assertEquals(
+        Arrays.asList(2),
+        consumer.nextBatch(5).toCompletableFuture().join().right().get());
+    Assert.assertFalse(consumer.nextBatch(5).toCompletableFuture().join().isRight());
+  }
+
   private CompletionStage<List<Integer>> pollConsumer() {
     final CompletableFuture<List<Integer>> sf = new CompletableFuture<>();
     this.consumerThread.submit(() -> {
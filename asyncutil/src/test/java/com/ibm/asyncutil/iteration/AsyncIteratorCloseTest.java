@@ -11,10 +11,12 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -270,6 +272,154 @@ public class AsyncIteratorCloseTest {
     ahead.close().toCompletableFuture().join();
   }
 
+  @Test
+  public void testUnorderedComposeClose() {
+    final CloseableIterator it = new CloseableIterator(AsyncIterator.range(0, 15));
+    final List<CompletableFuture<Long>> started = new ArrayList<>();
+    final AsyncIterator<Long> ahead =
+        it.thenComposeAheadUnordered(i -> {
+          final CompletableFuture<Long> f = new CompletableFuture<>();
+          started.add(f);
+          return f;
+        }, 3);
+
+    final CompletionStage<Either<AsyncIterator.End, Long>> first = ahead.nextStage();
+    Assert.assertEquals(3, started.size());
+    started.get(1).complete(1L);
+    Assert.assertEquals(1L, TestUtil.join(first).right().get().longValue());
+    // the consumed result made room for one more
+    Assert.assertEquals(4, started.size());
+
+    // close waits for the started stages before closing the source
+    final CompletionStage<Void> close = ahead.close();
+    Assert.assertFalse(close.toCompletableFuture().isDone());
+    Assert.assertFalse(it.closed);
+    started.get(0).complete(0L);
+    started.get(2).complete(2L);
+    Assert.assertFalse(close.toCompletableFuture().isDone());
+    started.get(3).completeExceptionally(testException);
+    TestUtil.join(close);
+    Assert.assertTrue(it.closed);
+    Assert.assertEquals(4, started.size());
+  }
+
+  @Test
+  public void testUnorderedFlattenClose() {
+    final CloseableIterator it = new CloseableIterator(AsyncIterator.range(0, 15));
+    final Deque<CloseableIterator> closeables = new ConcurrentLinkedDeque<>();
+    final AsyncIterator<Long> ahead = it.thenFlattenAheadUnordered(i -> {
+      final CloseableIterator closeable = new CloseableIterator(AsyncIterator.repeat(i));
+      closeables.add(closeable);
+      return StageSupport.completedStage(closeable);
+    }, 3);
+
+    TestUtil.join(ahead.nextStage());
+    Assert.assertEquals(3, closeables.size());
+    Assert.assertFalse(closeables.stream().anyMatch(closeable -> closeable.closed));
+
+    TestUtil.join(ahead.close());
+    Assert.assertTrue(closeables.stream().allMatch(closeable -> closeable.closed));
+    Assert.assertTrue(it.closed);
+    Assert.assertEquals(3, closeables.size());
+  }
+
+  @Test
+  public void testUnorderedFlattenCloseException() {
+    final CloseableIterator inner = new CloseableIterator(AsyncIterator.range(0, 1), testException);
+    final AsyncIterator<Long> ahead = AsyncIterator.once(0)
+        .thenFlattenAheadUnordered(i -> StageSupport.completedStage(inner), 3);
+
+    Assert.assertEquals(0L, TestUtil.join(ahead.nextStage()).right().get().longValue());
+    try {
+      TestUtil.join(ahead.nextStage());
+      Assert.fail("expected exception");
+    } catch (final CompletionException e) {
+      Assert.assertEquals(testException, e.getCause());
+    }
+    Assert.assertTrue(inner.closed);
+    Assert.assertFalse(TestUtil.join(ahead.nextStage()).isRight());
+    TestUtil.join(ahead.close());
+  }
+
+  @Test
+  public void testMergeClose() {
+    final List<CloseableIterator> inputs = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      inputs.add(new CloseableIterator(AsyncIterator.repeat((long) i)));
+    }
+    final AsyncIterator<Long> merged = AsyncIterator.merge(inputs, 2);
+    TestUtil.join(merged.nextStage());
+    Assert.assertFalse(inputs.stream().anyMatch(input -> input.closed));
+    TestUtil.join(merged.close());
+    Assert.assertTrue(inputs.stream().allMatch(input -> input.closed));
+  }
+
+  @Test
+  public void testMergeCloseUnstarted() {
+    final List<CloseableIterator> inputs = Arrays.asList(
+        new CloseableIterator(AsyncIterator.range(0, 3)),
+        new CloseableIterator(AsyncIterator.range(0, 3), testException));
+    final AsyncIterator<Long> merged = AsyncIterator.merge(inputs);
+    try {
+      TestUtil.join(merged.close());
+      Assert.fail("expected exception");
+    } catch (final CompletionException e) {
+      Assert.assertEquals(testException, e.getCause());
+    }
+    Assert.assertTrue(inputs.stream().allMatch(input -> input.closed));
+  }
+
+  @Test
+  public void testTeeClose() {
+    final CloseableIterator it = new CloseableIterator(AsyncIterator.range(0, 10));
+    final List<AsyncIterator<Long>> copies = it.tee(2, 2);
+    TestUtil.join(copies.get(0).nextStage());
+    TestUtil.join(copies.get(0).nextStage());
+    final CompletionStage<Either<AsyncIterator.End, Long>> blocked = copies.get(0).nextStage();
+    Assert.assertFalse(blocked.toCompletableFuture().isDone());
+
+    // closing the slow copy lets the other one continue
+    TestUtil.join(copies.get(1).close());
+    Assert.assertFalse(it.closed);
+    Assert.assertEquals(2L, TestUtil.join(blocked).right().get().longValue());
+    Assert.assertEquals(
+        Arrays.asList(3L, 4L, 5L, 6L, 7L, 8L, 9L),
+        TestUtil.join(copies.get(0).collect(Collectors.toList())));
+
+    TestUtil.join(copies.get(0).close());
+    Assert.assertTrue(it.closed);
+  }
+
+  @Test
+  public void testPartitionClose() {
+    final CloseableIterator it = new CloseableIterator(AsyncIterator.range(0, 10));
+    final List<AsyncIterator<Long>> partitions = it.partition(2, i -> i, 1);
+    Assert.assertEquals(0L, TestUtil.join(partitions.get(0).nextStage()).right().get().longValue());
+
+    // the unconsumed partition holds back the source until it is closed
+    final CompletionStage<Either<AsyncIterator.End, Long>> blocked = partitions.get(0).nextStage();
+    TestUtil.join(partitions.get(1).close());
+    Assert.assertFalse(it.closed);
+    Assert.assertEquals(2L, TestUtil.join(blocked).right().get().longValue());
+    Assert.assertEquals(
+        Arrays.asList(4L, 6L, 8L),
+        TestUtil.join(partitions.get(0).collect(Collectors.toList())));
+
+    TestUtil.join(partitions.get(0).close());
+    Assert.assertTrue(it.closed);
+  }
+
+  @Test
+  public void testPartitionCloseUnstarted() {
+    final CloseableIterator it = new CloseableIterator(AsyncIterator.range(0, 10));
+    final List<AsyncIterator<Long>> partitions = it.partition(3, i -> i, 2);
+    for (final AsyncIterator<Long> partition : partitions) {
+      Assert.assertFalse(it.closed);
+      TestUtil.join(partition.close());
+    }
+    Assert.assertTrue(it.closed);
+  }
+
   @Test(expected = IllegalStateException.class)
   public void testNextFutureAfterCloseIllegal() throws Throwable {
     final AsyncIterator<Long> it = AsyncIterator.range(0, 15);
@@ -19,8 +19,11 @@ import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -323,6 +326,346 @@ public class AsyncIteratorTest {
     fjp.awaitTermination(1, TimeUnit.SECONDS);
   }
 
+  @Test
+  public void testThenComposeAheadSequentialSource() {
+    // the source is only called once its previous stage has completed, even while the consumer is
+    // waiting on a result that hasn't been requested from the source yet
+    final AsyncQueue<Integer> queue = AsyncQueues.unbounded();
+    final AtomicInteger outstanding = new AtomicInteger();
+    final AsyncIterator<Integer> source = () -> {
+      Assert.assertEquals(1, outstanding.incrementAndGet());
+      return queue.nextStage().whenComplete((t, ex) -> outstanding.decrementAndGet());
+    };
+    final AsyncIterator<Integer> mapped =
+        source.thenComposeAhead(i -> StageSupport.completedStage(i * 2), 3);
+
+    final List<Integer> results = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      final CompletionStage<Either<End, Integer>> next = mapped.nextStage();
+      Assert.assertFalse(next.toCompletableFuture().isDone());
+      queue.send(i);
+      results.add(TestUtil.join(next).right().get());
+    }
+    queue.send(10);
+    queue.send(11);
+    queue.terminate();
+    Assert.assertEquals(Arrays.asList(20, 22), TestUtil.join(mapped.collect(Collectors.toList())));
+    Assert.assertFalse(TestUtil.join(mapped.nextStage()).isRight());
+    Assert.assertEquals(
+        IntStream.range(0, 10).map(i -> i * 2).boxed().collect(Collectors.toList()),
+        results);
+  }
+
+  @Test
+  public void testThenComposeAheadUnordered() {
+    final AsyncIterator<Integer> x = intIterator(1000);
+    final AsyncIterator<Integer> mapped =
+        x.thenComposeAheadUnordered(c -> StageSupport.completedStage(c + 1), 2);
+    final List<Integer> list = TestUtil.join(mapped.collect(Collectors.toList()));
+    Assert.assertEquals(IntStream.range(1, 1001).boxed().collect(Collectors.toList()), list);
+  }
+
+  @Test
+  public void testThenComposeAheadUnorderedCompletionOrder() {
+    final List<CompletableFuture<Integer>> started = new ArrayList<>();
+    final AsyncIterator<Integer> mapped = intIterator(5).thenComposeAheadUnordered(i -> {
+      final CompletableFuture<Integer> f = new CompletableFuture<>();
+      started.add(f);
+      return f;
+    }, 3);
+    final CompletionStage<List<Integer>> result = mapped.collect(Collectors.toList());
+
+    // only executeAhead stages may be outstanding
+    Assert.assertEquals(3, started.size());
+    started.get(2).complete(2);
+    Assert.assertEquals(4, started.size());
+    started.get(3).complete(3);
+    Assert.assertEquals(5, started.size());
+    started.get(4).complete(4);
+    started.get(0).complete(0);
+    Assert.assertFalse(result.toCompletableFuture().isDone());
+    started.get(1).complete(1);
+    Assert.assertEquals(Arrays.asList(2, 3, 4, 0, 1), TestUtil.join(result));
+  }
+
+  @Test
+  public void testThenComposeAheadUnorderedBound() {
+    final List<CompletableFuture<Integer>> started = new ArrayList<>();
+    final AsyncIterator<Integer> mapped = intIterator(10).thenComposeAheadUnordered(i -> {
+      final CompletableFuture<Integer> f = new CompletableFuture<>();
+      started.add(f);
+      return f;
+    }, 2);
+
+    // completed results which have not been consumed still count against the bound
+    final CompletionStage<Either<End, Integer>> first = mapped.nextStage();
+    Assert.assertEquals(2, started.size());
+    started.get(0).complete(0);
+    started.get(1).complete(1);
+    Assert.assertEquals(0, TestUtil.join(first).right().get().intValue());
+    Assert.assertEquals(3, started.size());
+  }
+
+  @Test
+  public void testThenComposeAheadUnorderedException() {
+    final AsyncIterator<Integer> mapped = intIterator(10).thenComposeAheadUnordered(i -> {
+      if (i == 3) {
+        throw new IllegalStateException();
+      }
+      return StageSupport.completedStage(i);
+    }, 4);
+    final List<Integer> results = new ArrayList<>();
+    int errors = 0;
+    while (true) {
+      try {
+        final Either<End, Integer> next = TestUtil.join(mapped.nextStage());
+        if (!next.isRight()) {
+          break;
+        }
+        results.add(next.right().get());
+      } catch (final CompletionException e) {
+        Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        errors++;
+      }
+    }
+    Assert.assertEquals(1, errors);
+    Assert.assertEquals(Arrays.asList(0, 1, 2, 4, 5, 6, 7, 8, 9), results);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testThenComposeAheadUnorderedNonPositive() {
+    intIterator(10).thenComposeAheadUnordered(StageSupport::completedStage, 0);
+  }
+
+  @Test
+  public void testNextBatchRange() {
+    final AsyncIterator<Long> it = AsyncIterator.range(0, 10);
+    Assert.assertEquals(
+        Arrays.asList(0L, 1L, 2L, 3L),
+        TestUtil.join(it.nextBatch(4)).right().get());
+    Assert.assertEquals(4L, TestUtil.join(it.nextStage()).right().get().longValue());
+    Assert.assertEquals(
+        Arrays.asList(5L, 6L, 7L, 8L, 9L),
+        TestUtil.join(it.nextBatch(100)).right().get());
+    Assert.assertFalse(TestUtil.join(it.nextBatch(100)).isRight());
+  }
+
+  @Test
+  public void testNextBatchRangeOverflow() {
+    // end - start overflows a long
+    final AsyncIterator<Long> it = AsyncIterator.range(Long.MIN_VALUE, 1);
+    Assert.assertEquals(
+        Arrays.asList(Long.MIN_VALUE, Long.MIN_VALUE + 1, Long.MIN_VALUE + 2, Long.MIN_VALUE + 3),
+        TestUtil.join(it.nextBatch(4)).right().get());
+    Assert.assertEquals(4, TestUtil.join(it.nextBatch(4)).right().get().size());
+
+    final AsyncIterator<Long> tail = AsyncIterator.range(Long.MAX_VALUE - 2, Long.MAX_VALUE);
+    Assert.assertEquals(
+        Arrays.asList(Long.MAX_VALUE - 2, Long.MAX_VALUE - 1),
+        TestUtil.join(tail.nextBatch(4)).right().get());
+    Assert.assertFalse(TestUtil.join(tail.nextBatch(4)).isRight());
+  }
+
+  @Test
+  public void testNextBatchDefault() {
+    final AsyncIterator<Integer> it = intIterator(3).thenCompose(StageSupport::completedStage);
+    Assert.assertEquals(Arrays.asList(0), TestUtil.join(it.nextBatch(10)).right().get());
+    Assert.assertEquals(Arrays.asList(1), TestUtil.join(it.nextBatch(10)).right().get());
+    Assert.assertEquals(2, TestUtil.join(it.nextStage()).right().get().intValue());
+    Assert.assertFalse(TestUtil.join(it.nextBatch(10)).isRight());
+  }
+
+  @Test
+  public void testNextBatchThenApplyException() {
+    final AsyncIterator<Integer> it = intIterator(6).thenApply(i -> {
+      if (i == 2) {
+        throw new IllegalStateException();
+      }
+      return i * 10;
+    });
+    Assert.assertEquals(Arrays.asList(0, 10), TestUtil.join(it.nextBatch(10)).right().get());
+    try {
+      TestUtil.join(it.nextBatch(10));
+      Assert.fail("expected exception");
+    } catch (final CompletionException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+    Assert.assertEquals(30, TestUtil.join(it.nextStage()).right().get().intValue());
+    Assert.assertEquals(Arrays.asList(40, 50), TestUtil.join(it.nextBatch(10)).right().get());
+    Assert.assertFalse(TestUtil.join(it.nextBatch(10)).isRight());
+  }
+
+  @Test
+  public void testNextBatchFilterTake() {
+    final AsyncIterator<Long> it = AsyncIterator.range(0, 100000)
+        .filter(l -> l % 1000 == 0)
+        .thenApply(l -> l / 1000)
+        .take(5);
+    final List<Long> results = new ArrayList<>();
+    Either<End, List<Long>> batch;
+    while ((batch = TestUtil.join(it.nextBatch(3))).isRight()) {
+      final List<Long> ls = batch.right().get();
+      // batches may end early, but are never empty
+      Assert.assertTrue(!ls.isEmpty() && ls.size() <= 3);
+      results.addAll(ls);
+    }
+    Assert.assertEquals(Arrays.asList(0L, 1L, 2L, 3L, 4L), results);
+  }
+
+  @Test
+  public void testNextBatchFromIteratorException() {
+    final Iterator<Integer> failing = new Iterator<Integer>() {
+      int count = 0;
+
+      @Override
+      public boolean hasNext() {
+        return true;
+      }
+
+      @Override
+      public Integer next() {
+        if (this.count == 2) {
+          this.count++;
+          throw new IllegalStateException();
+        }
+        return this.count++;
+      }
+    };
+    final AsyncIterator<Integer> it = AsyncIterator.fromIterator(failing);
+    Assert.assertEquals(Arrays.asList(0, 1), TestUtil.join(it.nextBatch(10)).right().get());
+    try {
+      it.nextBatch(10);
+      Assert.fail("expected exception");
+    } catch (final IllegalStateException e) {
+    }
+    Assert.assertEquals(Arrays.asList(3, 4), TestUtil.join(it.nextBatch(2)).right().get());
+  }
+
+  @Test
+  public void testTryNext() {
+    final AsyncIterator<Long> it = AsyncIterator.range(0, 100)
+        .thenApply(l -> l * 2)
+        .filter(l -> l % 3 == 0)
+        .take(3);
+    Assert.assertEquals(0L, it.tryNext().right().get().longValue());
+    Assert.assertEquals(6L, TestUtil.join(it.nextStage()).right().get().longValue());
+    Assert.assertEquals(12L, it.tryNext().right().get().longValue());
+    Assert.assertFalse(it.tryNext().isRight());
+  }
+
+  @Test
+  public void testTryNextUnavailable() {
+    final AsyncQueue<Integer> queue = AsyncQueues.unbounded();
+    final AsyncIterator<Integer> it = queue.thenApply(i -> i + 1);
+    Assert.assertNull(it.tryNext());
+    queue.send(1);
+    Assert.assertEquals(2, it.tryNext().right().get().intValue());
+    Assert.assertNull(it.tryNext());
+    queue.terminate();
+    Assert.assertFalse(it.tryNext().isRight());
+
+    // iterators which don't override tryNext never have a result available
+    Assert.assertNull(intIterator(3).thenCompose(StageSupport::completedStage).tryNext());
+  }
+
+  @Test
+  public void testTryNextException() {
+    final AsyncIterator<Integer> it = intIterator(3).thenApply(i -> {
+      if (i == 1) {
+        throw new IllegalStateException();
+      }
+      return i;
+    });
+    Assert.assertEquals(0, it.tryNext().right().get().intValue());
+    try {
+      it.tryNext();
+      Assert.fail("expected exception");
+    } catch (final IllegalStateException e) {
+    }
+    Assert.assertEquals(2, it.tryNext().right().get().intValue());
+  }
+
+  @Test
+  public void testFusedChain() {
+    final List<Integer> expected = IntStream.range(0, 100)
+        .map(i -> i + 1)
+        .filter(i -> i % 3 == 0)
+        .map(i -> i * 2)
+        .limit(10)
+        .boxed()
+        .collect(Collectors.toList());
+    final Supplier<AsyncIterator<Integer>> chain = () -> intIterator(100)
+        .thenApply(i -> i + 1)
+        .filter(i -> i % 3 == 0)
+        .thenApply(i -> i * 2)
+        .take(10);
+    Assert.assertEquals(expected, chain.get().collect(Collectors.toList()).toCompletableFuture()
+        .join());
+    final AsyncIterator<Integer> it = chain.get();
+    final List<Integer> actual = new ArrayList<>();
+    Either<End, Integer> next;
+    while ((next = TestUtil.join(it.nextStage())).isRight()) {
+      actual.add(next.right().get());
+    }
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void testFilterAfterTake() {
+    // the limit counts the elements before the filter, so the filter can't be fused before it
+    Assert.assertEquals(
+        Arrays.asList(0, 2, 4),
+        TestUtil.join(intIterator(10).take(5).filter(i -> i % 2 == 0)
+            .collect(Collectors.toList())));
+    Assert.assertEquals(
+        Arrays.asList(0, 2),
+        TestUtil.join(intIterator(10).take(5).take(2).thenApply(i -> i * 2)
+            .collect(Collectors.toList())));
+  }
+
+  @Test
+  public void testFuseAfterBufferedException() {
+    final AsyncIterator<Integer> it = intIterator(5).thenApply(i -> {
+      if (i == 2) {
+        throw new IllegalStateException();
+      }
+      return i;
+    });
+    Assert.assertEquals(Arrays.asList(0, 1), TestUtil.join(it.nextBatch(10)).right().get());
+    // the rest of the backing batch is buffered, so the next step must see it
+    final AsyncIterator<Integer> mapped = it.thenApply(i -> i * 10);
+    try {
+      TestUtil.join(mapped.nextStage());
+      Assert.fail("expected exception");
+    } catch (final CompletionException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+    Assert.assertEquals(Arrays.asList(30, 40), TestUtil.join(mapped.collect(Collectors.toList())));
+  }
+
+  @Test
+  public void testForEachMixedAvailability() {
+    // elements which are available are consumed synchronously, the rest asynchronously
+    final AsyncQueue<Integer> queue = AsyncQueues.unbounded();
+    final List<Integer> seen = new ArrayList<>();
+    queue.send(0);
+    queue.send(1);
+    final CompletionStage<Void> done = queue.forEach(seen::add);
+    Assert.assertEquals(Arrays.asList(0, 1), seen);
+    for (int i = 2; i < 5; i++) {
+      queue.send(i);
+    }
+    Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4), seen);
+    Assert.assertFalse(done.toCompletableFuture().isDone());
+    queue.terminate();
+    TestUtil.join(done);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNextBatchNonPositive() {
+    AsyncIterator.range(0, 10).nextBatch(0);
+  }
+
   @Test
   public void testFlatMap() {
     // should take [0,1,2,...,999] -> [1,2,2,3,3,3,4,4,4,4,...999,999]
@@ -358,6 +701,379 @@ public class AsyncIteratorTest {
     Assert.assertEquals(expected, list);
   }
 
+  @Test
+  public void testFlatThenComposeAheadUnordered() {
+    final int count = 1000;
+    final AsyncIterator<Integer> x = intIterator(count);
+    final AsyncIterator<Integer> flatMapped =
+        x.thenFlattenAheadUnordered(c -> StageSupport.completedStage(repeat(c, c)), 5);
+    final List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      for (int j = 0; j < i; j++) {
+        expected.add(i);
+      }
+    }
+    final List<Integer> list = TestUtil.join(flatMapped.collect(Collectors.toList()));
+    Collections.sort(list);
+    Assert.assertEquals(expected, list);
+  }
+
+  @Test
+  public void testFlatThenComposeAheadUnorderedInterleaves() {
+    final List<AsyncQueue<Integer>> queues = new ArrayList<>();
+    final AsyncIterator<Integer> flatMapped = intIterator(3).thenFlattenAheadUnordered(i -> {
+      final AsyncQueue<Integer> q = AsyncQueues.unbounded();
+      queues.add(q);
+      return StageSupport.completedStage(q);
+    }, 2);
+
+    // only executeAhead iterators may be open
+    final CompletionStage<Either<End, Integer>> first = flatMapped.nextStage();
+    Assert.assertEquals(2, queues.size());
+    queues.get(1).send(10);
+    Assert.assertEquals(10, TestUtil.join(first).right().get().intValue());
+    queues.get(0).send(0);
+    queues.get(1).send(11);
+    Assert.assertEquals(0, TestUtil.join(flatMapped.nextStage()).right().get().intValue());
+    Assert.assertEquals(11, TestUtil.join(flatMapped.nextStage()).right().get().intValue());
+
+    // finishing an iterator opens the next
+    queues.get(0).terminate();
+    Assert.assertEquals(3, queues.size());
+    queues.get(2).send(20);
+    queues.get(2).terminate();
+    Assert.assertEquals(20, TestUtil.join(flatMapped.nextStage()).right().get().intValue());
+    final CompletionStage<Either<End, Integer>> last = flatMapped.nextStage();
+    Assert.assertFalse(last.toCompletableFuture().isDone());
+    queues.get(1).terminate();
+    Assert.assertFalse(TestUtil.join(last).isRight());
+  }
+
+  @Test
+  public void testFlatThenComposeAheadUnorderedBound() {
+    final AsyncQueue<Integer> q = AsyncQueues.unbounded();
+    final AtomicInteger requested = new AtomicInteger();
+    final AsyncIterator<Integer> counting = () -> {
+      requested.incrementAndGet();
+      return q.nextStage();
+    };
+    final AsyncIterator<Integer> flatMapped = intIterator(1)
+        .thenFlattenAheadUnordered(i -> StageSupport.completedStage(counting), 3);
+
+    // elements which have not been consumed still count against the bound
+    final CompletionStage<Either<End, Integer>> first = flatMapped.nextStage();
+    for (int i = 0; i < 5; i++) {
+      q.send(i);
+    }
+    Assert.assertEquals(0, TestUtil.join(first).right().get().intValue());
+    Assert.assertEquals(4, requested.get());
+  }
+
+  @Test
+  public void testFlatThenComposeAheadUnorderedException() {
+    final AsyncIterator<Integer> flatMapped = intIterator(5).thenFlattenAheadUnordered(i -> {
+      if (i == 3) {
+        throw new IllegalStateException();
+      }
+      return StageSupport.completedStage(AsyncIterator.once(i));
+    }, 2);
+    final List<Integer> results = new ArrayList<>();
+    int errors = 0;
+    while (true) {
+      try {
+        final Either<End, Integer> next = TestUtil.join(flatMapped.nextStage());
+        if (!next.isRight()) {
+          break;
+        }
+        results.add(next.right().get());
+      } catch (final CompletionException e) {
+        Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        errors++;
+      }
+    }
+    Assert.assertEquals(1, errors);
+    Collections.sort(results);
+    Assert.assertEquals(Arrays.asList(0, 1, 2, 4), results);
+  }
+
+  @Test
+  public void testMerge() {
+    final List<AsyncQueue<Integer>> queues = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      queues.add(AsyncQueues.unbounded());
+    }
+    final AsyncIterator<Integer> merged = AsyncIterator.merge(queues, 2);
+    final CompletionStage<Either<End, Integer>> first = merged.nextStage();
+    Assert.assertFalse(first.toCompletableFuture().isDone());
+    // elements are produced in the order they become available, whichever input has them
+    queues.get(2).send(20);
+    Assert.assertEquals(20, TestUtil.join(first).right().get().intValue());
+    queues.get(0).send(0);
+    queues.get(1).send(10);
+    queues.get(0).send(1);
+    Assert.assertEquals(0, TestUtil.join(merged.nextStage()).right().get().intValue());
+    Assert.assertEquals(10, TestUtil.join(merged.nextStage()).right().get().intValue());
+    Assert.assertEquals(1, TestUtil.join(merged.nextStage()).right().get().intValue());
+    queues.get(0).terminate();
+    queues.get(1).terminate();
+    final CompletionStage<Either<End, Integer>> last = merged.nextStage();
+    Assert.assertFalse(last.toCompletableFuture().isDone());
+    queues.get(2).terminate();
+    Assert.assertFalse(TestUtil.join(last).isRight());
+    TestUtil.join(merged.close());
+  }
+
+  @Test
+  public void testMergePrefetch() {
+    final AtomicInteger requested = new AtomicInteger();
+    final AsyncIterator<Integer> fast = intIterator(100).thenApply(i -> {
+      requested.incrementAndGet();
+      return i;
+    });
+    final AsyncQueue<Integer> idle = AsyncQueues.unbounded();
+    final AsyncIterator<Integer> merged = AsyncIterator.merge(Arrays.asList(fast, idle), 3);
+    // an idle input doesn't hold up the others
+    Assert.assertEquals(0, TestUtil.join(merged.nextStage()).right().get().intValue());
+    Assert.assertTrue(requested.get() <= 4);
+    Assert.assertEquals(1, TestUtil.join(merged.nextStage()).right().get().intValue());
+    Assert.assertTrue(requested.get() <= 5);
+    idle.terminate();
+    Assert.assertEquals(
+        IntStream.range(2, 100).boxed().collect(Collectors.toList()),
+        TestUtil.join(merged.collect(Collectors.toList())));
+  }
+
+  @Test
+  public void testMergeException() {
+    final AsyncIterator<Integer> failing = intIterator(3).thenApply(i -> {
+      if (i == 1) {
+        throw new IllegalStateException();
+      }
+      return i;
+    });
+    final AsyncIterator<Integer> merged =
+        AsyncIterator.merge(Arrays.asList(failing, intIterator(2).thenApply(i -> i + 10)));
+    final List<Integer> results = new ArrayList<>();
+    int errors = 0;
+    while (true) {
+      try {
+        final Either<End, Integer> next = TestUtil.join(merged.nextStage());
+        if (!next.isRight()) {
+          break;
+        }
+        results.add(next.right().get());
+      } catch (final CompletionException e) {
+        Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        errors++;
+      }
+    }
+    Assert.assertEquals(1, errors);
+    Collections.sort(results);
+    Assert.assertEquals(Arrays.asList(0, 2, 10, 11), results);
+  }
+
+  @Test
+  public void testMergeEmpty() {
+    Assert.assertFalse(
+        TestUtil.join(AsyncIterator.merge(Collections.<AsyncIterator<Integer>>emptyList())
+            .nextStage()).isRight());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMergeNonPositive() {
+    AsyncIterator.merge(Arrays.asList(intIterator(1)), 0);
+  }
+
+  @Test
+  public void testTee() {
+    final List<AsyncIterator<Integer>> copies = intIterator(20).tee(3, 4);
+    Assert.assertEquals(3, copies.size());
+    final List<List<Integer>> results = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      results.add(new ArrayList<>());
+    }
+    boolean done = false;
+    while (!done) {
+      for (int i = 0; i < 3; i++) {
+        final Either<End, Integer> next = TestUtil.join(copies.get(i).nextStage());
+        done = !next.isRight();
+        if (!done) {
+          results.get(i).add(next.right().get());
+        }
+      }
+    }
+    final List<Integer> expected = IntStream.range(0, 20).boxed().collect(Collectors.toList());
+    for (final List<Integer> result : results) {
+      Assert.assertEquals(expected, result);
+    }
+  }
+
+  @Test
+  public void testTeeWindow() {
+    final AtomicInteger requested = new AtomicInteger();
+    final List<AsyncIterator<Integer>> copies = intIterator(100)
+        .thenApply(i -> {
+          requested.incrementAndGet();
+          return i;
+        })
+        .tee(2, 3);
+    final AsyncIterator<Integer> fast = copies.get(0);
+    final AsyncIterator<Integer> slow = copies.get(1);
+    for (int i = 0; i < 3; i++) {
+      Assert.assertEquals(i, TestUtil.join(fast.nextStage()).right().get().intValue());
+    }
+    // the fast consumer has to wait for the slow one to catch up
+    final CompletionStage<Either<End, Integer>> blocked = fast.nextStage();
+    Assert.assertFalse(blocked.toCompletableFuture().isDone());
+    Assert.assertEquals(3, requested.get());
+    Assert.assertEquals(0, TestUtil.join(slow.nextStage()).right().get().intValue());
+    Assert.assertEquals(3, TestUtil.join(blocked).right().get().intValue());
+    Assert.assertEquals(4, requested.get());
+    Assert.assertEquals(1, TestUtil.join(slow.nextStage()).right().get().intValue());
+  }
+
+  @Test
+  public void testTeeConcurrentConsumers() throws InterruptedException, TimeoutException {
+    final int count = 10000;
+    final ForkJoinPool fjp = new ForkJoinPool(4);
+    final List<AsyncIterator<Integer>> copies = intIterator(count)
+        .thenComposeAsync(i -> CompletableFuture.supplyAsync(() -> i, fjp), fjp)
+        .tee(4, 16);
+    final List<CompletableFuture<List<Integer>>> results = new ArrayList<>();
+    for (final AsyncIterator<Integer> copy : copies) {
+      results.add(CompletableFuture
+          .supplyAsync(() -> copy.collect(Collectors.toList()), fjp)
+          .thenCompose(stage -> stage));
+    }
+    final List<Integer> expected = IntStream.range(0, count).boxed().collect(Collectors.toList());
+    for (final CompletableFuture<List<Integer>> result : results) {
+      Assert.assertEquals(expected, TestUtil.join(result, 10, TimeUnit.SECONDS));
+    }
+    fjp.shutdown();
+    fjp.awaitTermination(1, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testTeeException() {
+    final List<AsyncIterator<Integer>> copies = intIterator(3).thenApply(i -> {
+      if (i == 1) {
+        throw new IllegalStateException();
+      }
+      return i;
+    }).tee(2, 1);
+    // with a window of 1 the copies must proceed in lock step
+    for (final AsyncIterator<Integer> copy : copies) {
+      Assert.assertEquals(0, TestUtil.join(copy.nextStage()).right().get().intValue());
+    }
+    for (final AsyncIterator<Integer> copy : copies) {
+      try {
+        TestUtil.join(copy.nextStage());
+        Assert.fail("expected exception");
+      } catch (final CompletionException e) {
+        Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+      }
+    }
+    for (final AsyncIterator<Integer> copy : copies) {
+      Assert.assertEquals(2, TestUtil.join(copy.nextStage()).right().get().intValue());
+    }
+    for (final AsyncIterator<Integer> copy : copies) {
+      Assert.assertFalse(TestUtil.join(copy.nextStage()).isRight());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTeeNonPositiveWindow() {
+    intIterator(1).tee(2, 0);
+  }
+
+  @Test
+  public void testPartition() {
+    final List<AsyncIterator<Integer>> partitions = intIterator(100).partition(3, i -> i % 7, 4);
+    Assert.assertEquals(3, partitions.size());
+    final List<CompletableFuture<List<Integer>>> results = new ArrayList<>();
+    for (final AsyncIterator<Integer> partition : partitions) {
+      results.add(partition.collect(Collectors.toList()).toCompletableFuture());
+    }
+    final List<Integer> all = new ArrayList<>();
+    for (final CompletableFuture<List<Integer>> result : results) {
+      final List<Integer> elements = TestUtil.join(result);
+      // each key lands in exactly one partition, in source order
+      for (int key = 0; key < 7; key++) {
+        final int k = key;
+        final List<Integer> ofKey =
+            elements.stream().filter(i -> i % 7 == k).collect(Collectors.toList());
+        Assert.assertTrue(ofKey.isEmpty()
+            || ofKey.equals(IntStream.range(0, 100).filter(i -> i % 7 == k).boxed()
+                .collect(Collectors.toList())));
+      }
+      all.addAll(elements);
+    }
+    Collections.sort(all);
+    Assert.assertEquals(IntStream.range(0, 100).boxed().collect(Collectors.toList()), all);
+  }
+
+  @Test
+  public void testPartitionConcurrentConsumers() throws InterruptedException, TimeoutException {
+    final int count = 10000;
+    final ForkJoinPool fjp = new ForkJoinPool(4);
+    final List<AsyncIterator<Integer>> partitions = intIterator(count)
+        .thenComposeAsync(i -> CompletableFuture.supplyAsync(() -> i, fjp), fjp)
+        .partition(4, i -> i % 16, 8);
+    final List<CompletableFuture<List<Integer>>> results = new ArrayList<>();
+    for (final AsyncIterator<Integer> partition : partitions) {
+      results.add(CompletableFuture
+          .supplyAsync(() -> partition.collect(Collectors.toList()), fjp)
+          .thenCompose(stage -> stage));
+    }
+    int total = 0;
+    for (final CompletableFuture<List<Integer>> result : results) {
+      final List<Integer> elements = TestUtil.join(result, 10, TimeUnit.SECONDS);
+      final List<Integer> sorted = new ArrayList<>(elements);
+      Collections.sort(sorted);
+      Assert.assertEquals(sorted, elements);
+      total += elements.size();
+    }
+    Assert.assertEquals(count, total);
+    fjp.shutdown();
+    fjp.awaitTermination(1, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testPartitionException() {
+    final List<AsyncIterator<Integer>> partitions = intIterator(4).thenApply(i -> {
+      if (i == 1) {
+        throw new IllegalStateException();
+      }
+      return i;
+    }).partition(2, i -> i, 4);
+    // every partition observes the exception in its place relative to its own elements
+    final List<List<Integer>> expected =
+        Arrays.asList(Arrays.asList(0, null, 2), Arrays.asList(null, 3));
+    for (int p = 0; p < 2; p++) {
+      final List<Integer> seen = new ArrayList<>();
+      while (true) {
+        final Either<End, Integer> next;
+        try {
+          next = TestUtil.join(partitions.get(p).nextStage());
+        } catch (final CompletionException e) {
+          Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+          seen.add(null);
+          continue;
+        }
+        if (!next.isRight()) {
+          break;
+        }
+        seen.add(next.right().get());
+      }
+      Assert.assertEquals(expected.get(p), seen);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPartitionNonPositiveBufferSize() {
+    intIterator(1).partition(2, i -> i, 0);
+  }
+
   @Test
   public void testFilter() {
     final int count = 100000;
@@ -606,6 +1322,167 @@ public class AsyncIteratorTest {
                 .collect(Collectors.toSet())));
   }
 
+  @Test
+  public void testBatchWeighted() {
+    final List<String> list = Arrays.asList("a", "123", "foo", "bar", "b", "toolong", "c");
+    final List<List<String>> expected =
+        Arrays.asList(
+            Arrays.asList("a", "123"),
+            Arrays.asList("foo"),
+            Arrays.asList("bar", "b"),
+            Arrays.asList("toolong"),
+            Arrays.asList("c"));
+    Assert.assertEquals(
+        expected,
+        TestUtil.join(
+            AsyncIterator.fromIterator(list.iterator())
+                .batch(Collectors.toList(), String::length, 5)
+                .collect(Collectors.toList())));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBatchNonPositiveWeight() {
+    intIterator(1).batch(Collectors.toList(), i -> 1L, 0);
+  }
+
+  @Test
+  public void testBatchLinger() throws TimeoutException {
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      final AsyncQueue<Integer> queue = AsyncQueues.unbounded();
+      final AsyncIterator<List<Integer>> batches =
+          queue.batch(Collectors.toList(), 10, 20, TimeUnit.MILLISECONDS, scheduler);
+      queue.send(1);
+      queue.send(2);
+      queue.send(3);
+      // the available elements don't fill the batch, so it is produced once the linger elapses
+      final CompletionStage<Either<End, List<Integer>>> first = batches.nextStage();
+      Assert.assertEquals(
+          Arrays.asList(1, 2, 3),
+          TestUtil.join(first, 2, TimeUnit.SECONDS).right().get());
+
+      final CompletionStage<Either<End, List<Integer>>> second = batches.nextStage();
+      Assert.assertFalse(second.toCompletableFuture().isDone());
+      queue.send(4);
+      queue.terminate();
+      Assert.assertEquals(
+          Arrays.asList(4),
+          TestUtil.join(second, 2, TimeUnit.SECONDS).right().get());
+      Assert.assertFalse(TestUtil.join(batches.nextStage()).isRight());
+    } finally {
+      scheduler.shutdown();
+    }
+  }
+
+  @Test
+  public void testBatchLingerNullElement() {
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      final AsyncQueue<String> queue = AsyncQueues.unbounded();
+      queue.send("x");
+      queue.send(null);
+      queue.send("y");
+      queue.terminate();
+      Assert.assertEquals(
+          Collections.singletonList(Arrays.asList("x", null, "y")),
+          TestUtil.join(queue
+              .batch(Collectors.toList(), 10, 1, TimeUnit.DAYS, scheduler)
+              .collect(Collectors.toList())));
+    } finally {
+      scheduler.shutdown();
+    }
+  }
+
+  @Test
+  public void testBatchLingerFull() {
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      // batches that fill up are produced without waiting for the linger time
+      Assert.assertEquals(
+          Arrays.asList(Arrays.asList(0, 1, 2), Arrays.asList(3, 4, 5), Arrays.asList(6)),
+          TestUtil.join(intIterator(7)
+              .batch(Collectors.toList(), 3, 1, TimeUnit.DAYS, scheduler)
+              .collect(Collectors.toList())));
+    } finally {
+      scheduler.shutdown();
+    }
+  }
+
+  @Test
+  public void testBatchLingerLateElement() throws TimeoutException {
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      final List<CompletableFuture<Either<End, Integer>>> pending = new CopyOnWriteArrayList<>();
+      final AsyncIterator<Integer> source = () -> {
+        final CompletableFuture<Either<End, Integer>> f = new CompletableFuture<>();
+        pending.add(f);
+        return f;
+      };
+      final AsyncIterator<List<Integer>> batches =
+          source.batch(Collectors.toList(), 10, 1, TimeUnit.MILLISECONDS, scheduler);
+      final CompletionStage<Either<End, List<Integer>>> first = batches.nextStage();
+      pending.get(0).complete(Either.right(0));
+      Assert.assertEquals(
+          Arrays.asList(0),
+          TestUtil.join(first, 2, TimeUnit.SECONDS).right().get());
+
+      // the element requested for the first batch arrives too late, and starts the next one
+      Assert.assertEquals(2, pending.size());
+      final CompletionStage<Either<End, List<Integer>>> second = batches.nextStage();
+      Assert.assertEquals(2, pending.size());
+      pending.get(1).complete(Either.right(1));
+      Assert.assertEquals(3, pending.size());
+      pending.get(2).completeExceptionally(new IllegalStateException());
+      Assert.assertEquals(
+          Arrays.asList(1),
+          TestUtil.join(second, 2, TimeUnit.SECONDS).right().get());
+
+      // the exception which ended the second batch is produced after it
+      try {
+        TestUtil.join(batches.nextStage());
+        Assert.fail("expected exception");
+      } catch (final CompletionException e) {
+        Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+      }
+    } finally {
+      scheduler.shutdown();
+    }
+  }
+
+  @Test
+  public void testBatchLingerSeveralLateElements() {
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      final List<CompletableFuture<Either<End, Integer>>> pending = new CopyOnWriteArrayList<>();
+      final AsyncIterator<Integer> source = () -> {
+        final CompletableFuture<Either<End, Integer>> f = new CompletableFuture<>();
+        pending.add(f);
+        return f;
+      };
+      final AsyncIterator<List<Integer>> batches =
+          source.batch(Collectors.toList(), 3, 1, TimeUnit.DAYS, scheduler);
+      final CompletionStage<Either<End, List<Integer>>> first = batches.nextStage();
+      // every element after the first waits on the same linger timer
+      for (int i = 0; i < 3; i++) {
+        Assert.assertEquals(i + 1, pending.size());
+        pending.get(i).complete(Either.right(i));
+      }
+      Assert.assertEquals(
+          Arrays.asList(0, 1, 2),
+          TestUtil.join(first).right().get());
+
+      final CompletionStage<Either<End, List<Integer>>> second = batches.nextStage();
+      pending.get(3).complete(Either.right(3));
+      pending.get(4).complete(End.end());
+      Assert.assertEquals(
+          Arrays.asList(3),
+          TestUtil.join(second).right().get());
+      Assert.assertFalse(TestUtil.join(batches.nextStage()).isRight());
+    } finally {
+      scheduler.shutdown();
+    }
+  }
+
   @Test
   public void testFind() {
     Assert.assertEquals(
@@ -0,0 +1,216 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.iteration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.asyncutil.iteration.AsyncIterator.End;
+import com.ibm.asyncutil.util.Either;
+import com.ibm.asyncutil.util.StageSupport;
+import com.ibm.asyncutil.util.TestUtil;
+
+public class AsyncPrimitiveIteratorTest {
+
+  @Test
+  public void testLongRange() {
+    final AsyncLongIterator it = AsyncLongIterator.range(0, 10);
+    Assert.assertArrayEquals(new long[] {0, 1, 2, 3}, TestUtil.join(it.nextBatch(4)).right().get());
+    Assert.assertArrayEquals(
+        new long[] {4, 5, 6, 7, 8, 9},
+        TestUtil.join(it.nextBatch(100)).right().get());
+    Assert.assertFalse(TestUtil.join(it.nextBatch(100)).isRight());
+  }
+
+  @Test
+  public void testLongRangeOverflow() {
+    // end - start overflows a long
+    final AsyncLongIterator it = AsyncLongIterator.range(Long.MIN_VALUE, 1);
+    Assert.assertEquals(AsyncIterators.BATCH_SIZE,
+        TestUtil.join(it.nextBatch(Integer.MAX_VALUE)).right().get().length);
+    Assert.assertEquals(AsyncIterators.BATCH_SIZE,
+        TestUtil.join(it.nextBatch(Integer.MAX_VALUE)).right().get().length);
+    Assert.assertArrayEquals(
+        new long[] {Long.MIN_VALUE, Long.MIN_VALUE + 1, Long.MIN_VALUE + 2},
+        TestUtil.join(AsyncLongIterator.range(Long.MIN_VALUE, 1).batch(3).nextStage())
+            .right().get());
+  }
+
+  @Test
+  public void testLongSum() {
+    Assert.assertEquals(
+        LongStream.range(0, 100000).sum(),
+        TestUtil.join(AsyncLongIterator.range(0, 100000).sum()).longValue());
+    Assert.assertEquals(0L, TestUtil.join(AsyncLongIterator.empty().sum()).longValue());
+  }
+
+  @Test
+  public void testLongMapFilterFold() {
+    final long expected = LongStream.range(0, 1000)
+        .map(i -> i * 3)
+        .filter(i -> i % 2 == 0)
+        .reduce(1, (acc, i) -> acc ^ i);
+    final long actual = TestUtil.join(
+        AsyncLongIterator.range(0, 1000)
+            .map(i -> i * 3)
+            .filter(i -> i % 2 == 0)
+            .fold(1, (acc, i) -> acc ^ i));
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void testLongFilterSkipsEmptyBatches() {
+    final AsyncLongIterator it = AsyncLongIterator.infiniteRange(0).filter(i -> i == 5000);
+    Assert.assertArrayEquals(new long[] {5000}, TestUtil.join(it.nextBatch(10)).right().get());
+  }
+
+  @Test
+  public void testLongBatch() {
+    final List<long[]> batches =
+        TestUtil.join(AsyncLongIterator.range(0, 10).filter(i -> i != 4).batch(4).collect(
+            Collectors.toList()));
+    Assert.assertEquals(3, batches.size());
+    Assert.assertArrayEquals(new long[] {0, 1, 2, 3}, batches.get(0));
+    Assert.assertArrayEquals(new long[] {5, 6, 7, 8}, batches.get(1));
+    Assert.assertArrayEquals(new long[] {9}, batches.get(2));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testLongBatchNonPositive() {
+    AsyncLongIterator.range(0, 10).batch(0);
+  }
+
+  @Test
+  public void testLongBoxed() {
+    final AsyncIterator<Long> it = AsyncLongIterator.of(1, 2, 3, 4, 5).boxed();
+    Assert.assertNull(it.tryNext());
+    Assert.assertEquals(1L, TestUtil.join(it.nextStage()).right().get().longValue());
+    Assert.assertEquals(2L, it.tryNext().right().get().longValue());
+    Assert.assertEquals(Arrays.asList(3L, 4L), TestUtil.join(it.nextBatch(2)).right().get());
+    Assert.assertEquals(
+        Arrays.asList(5L),
+        TestUtil.join(it.collect(Collectors.toList())));
+  }
+
+  @Test
+  public void testLongUnboxed() {
+    final AsyncIterator<Long> boxed = AsyncIterator.range(0, 10).thenApply(i -> i * 2);
+    final AsyncLongIterator it = AsyncLongIterator.unboxed(boxed);
+    Assert.assertEquals(90L, TestUtil.join(it.sum()).longValue());
+  }
+
+  @Test
+  public void testLongUnboxedNull() {
+    final AsyncLongIterator it =
+        AsyncLongIterator.unboxed(AsyncIterator.fromIterator(Arrays.asList(1L, null).iterator()));
+    try {
+      TestUtil.join(it.nextBatch(10));
+      Assert.fail("expected NPE");
+    } catch (final CompletionException e) {
+      Assert.assertTrue(e.getCause() instanceof NullPointerException);
+    }
+  }
+
+  @Test
+  public void testLongMapException() {
+    final AsyncLongIterator it = AsyncLongIterator.range(0, 10).map(i -> {
+      if (i == 3) {
+        throw new IllegalStateException();
+      }
+      return i;
+    });
+    try {
+      TestUtil.join(it.sum());
+      Assert.fail("expected exception");
+    } catch (final CompletionException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+  }
+
+  @Test
+  public void testLongAsynchronousSource() {
+    final List<CompletableFuture<Either<End, long[]>>> pending = new ArrayList<>();
+    final AsyncLongIterator source = maxSize -> {
+      final CompletableFuture<Either<End, long[]>> f = new CompletableFuture<>();
+      pending.add(f);
+      return f;
+    };
+    final CompletionStage<Long> sum = source.map(i -> i + 1).sum();
+    Assert.assertEquals(1, pending.size());
+    pending.get(0).complete(Either.right(new long[] {1, 2}));
+    Assert.assertEquals(2, pending.size());
+    pending.get(1).complete(End.end());
+    Assert.assertEquals(5L, TestUtil.join(sum).longValue());
+  }
+
+  @Test
+  public void testLongClose() {
+    final boolean[] closed = {false};
+    final AsyncLongIterator source = new AsyncLongIterator() {
+      @Override
+      public CompletionStage<Either<End, long[]>> nextBatch(final int maxSize) {
+        return End.endStage();
+      }
+
+      @Override
+      public CompletionStage<Void> close() {
+        closed[0] = true;
+        return StageSupport.voidStage();
+      }
+    };
+    TestUtil.join(source.map(i -> i).filter(i -> true).boxed().close());
+    Assert.assertTrue(closed[0]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testLongNextBatchNonPositive() {
+    AsyncLongIterator.of(1).nextBatch(0);
+  }
+
+  @Test
+  public void testIntRange() {
+    Assert.assertEquals(
+        IntStream.range(-5, 1000).sum(),
+        TestUtil.join(AsyncIntIterator.range(-5, 1000).sum()).intValue());
+    final AsyncIntIterator wide = AsyncIntIterator.range(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    Assert.assertEquals(AsyncIterators.BATCH_SIZE,
+        TestUtil.join(wide.nextBatch(Integer.MAX_VALUE)).right().get().length);
+  }
+
+  @Test
+  public void testIntOperators() {
+    final List<Integer> actual = TestUtil.join(
+        AsyncIntIterator.of(1, 2, 3, 4, 5, 6)
+            .map(i -> i * i)
+            .filter(i -> i % 2 == 1)
+            .boxed()
+            .collect(Collectors.toList()));
+    Assert.assertEquals(Arrays.asList(1, 9, 25), actual);
+  }
+
+  @Test
+  public void testDoubleOperators() {
+    final AsyncDoubleIterator it =
+        AsyncDoubleIterator.unboxed(AsyncIterator.fromIterator(Arrays.asList(0.5, 1.5, 2.5)
+            .iterator()));
+    Assert.assertEquals(8.0, TestUtil.join(it.map(d -> d * 2).filter(d -> d > 1).sum()), 0.0);
+    Assert.assertEquals(
+        2.0,
+        TestUtil.join(AsyncDoubleIterator.of(1.0, 2.0).fold(Double.NEGATIVE_INFINITY, Math::max)),
+        0.0);
+  }
+}
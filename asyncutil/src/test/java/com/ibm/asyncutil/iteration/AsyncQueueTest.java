@@ -6,9 +6,12 @@
 
 package com.ibm.asyncutil.iteration;
 
+import java.util.Arrays;
 import java.util.Optional;
 
+import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Test;
 
 public class AsyncQueueTest extends AbstractAsyncQueueTest {
 
@@ -39,6 +42,22 @@ public class AsyncQueueTest extends AbstractAsyncQueueTest {
     return this.queue.poll();
   }
 
+  @Test
+  public void nextBatchAvailableTest() {
+    this.queue.send(1);
+    this.queue.send(null);
+    this.queue.send(3);
+    this.queue.send(4);
+    Assert.assertEquals(
+        Arrays.asList(1, null, 3),
+        this.queue.nextBatch(3).toCompletableFuture().join().right().get());
+    this.queue.terminate();
+    Assert.assertEquals(
+        Arrays.asList(4),
+        this.queue.nextBatch(3).toCompletableFuture().join().right().get());
+    Assert.assertFalse(this.queue.nextBatch(3).toCompletableFuture().join().isRight());
+  }
+
 }
 
 
@@ -152,6 +152,41 @@ public class BufferedAsyncQueueTest extends AbstractAsyncQueueTest {
     Assert.assertFalse(rejected.join());
   }
 
+  @Test
+  public void wrapAroundTest() {
+    // the consumer waits first, then the senders go around the buffer several times
+    final CompletableFuture<Either<End, Integer>> first =
+        this.queue.nextStage().toCompletableFuture();
+    Assert.assertFalse(first.isDone());
+    Assert.assertTrue(this.queue.send(0).toCompletableFuture().join());
+    Assert.assertEquals(0, first.join().right().get().intValue());
+
+    for (int i = 1; i < BUFFER * 3; i++) {
+      Assert.assertTrue(this.queue.send(i).toCompletableFuture().join());
+      Assert.assertTrue(this.queue.send(-i).toCompletableFuture().join());
+      Assert.assertEquals(i,
+          this.queue.nextStage().toCompletableFuture().join().right().get().intValue());
+      Assert.assertEquals(-i, this.queue.poll().get().intValue());
+    }
+
+    // a null value occupies a slot like any other
+    final CompletableFuture<Either<End, Integer>> waiting =
+        this.queue.nextStage().toCompletableFuture();
+    this.queue.send(null);
+    Assert.assertTrue(waiting.join().fold(end -> false, value -> value == null));
+
+    final CompletableFuture<Either<End, Integer>> end =
+        this.queue.nextStage().toCompletableFuture();
+    Assert.assertFalse(end.isDone());
+    this.queue.terminate().toCompletableFuture().join();
+    Assert.assertFalse(end.join().isRight());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void nonPositiveBufferTest() {
+    AsyncQueues.buffered(0);
+  }
+
   @Override
   Optional<Integer> poll() {
     return this.queue.poll();
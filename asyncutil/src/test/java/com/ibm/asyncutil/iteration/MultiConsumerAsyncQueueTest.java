@@ -0,0 +1,121 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.iteration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ibm.asyncutil.util.Either;
+
+public class MultiConsumerAsyncQueueTest extends AbstractAsyncQueueTest {
+
+  private AsyncQueue<Integer> queue;
+
+  @Before
+  public void makeQueue() {
+    this.queue = AsyncQueues.unboundedMultiConsumer();
+  }
+
+  @Override
+  boolean send(final Integer c) {
+    return this.queue.send(c);
+  }
+
+  @Override
+  AsyncIterator<Integer> consumer() {
+    return this.queue;
+  }
+
+  @Override
+  void closeImpl() {
+    this.queue.terminate();
+  }
+
+  @Override
+  Optional<Integer> poll() {
+    return this.queue.poll();
+  }
+
+  @Test
+  public void waitingConsumersFifoTest() {
+    final CompletableFuture<Either<AsyncIterator.End, Integer>> first =
+        this.queue.nextStage().toCompletableFuture();
+    final CompletableFuture<Either<AsyncIterator.End, Integer>> second =
+        this.queue.nextStage().toCompletableFuture();
+    final CompletableFuture<Either<AsyncIterator.End, Integer>> third =
+        this.queue.nextStage().toCompletableFuture();
+    Assert.assertFalse(first.isDone());
+
+    this.queue.send(1);
+    this.queue.send(null);
+    Assert.assertEquals(1, first.join().right().get().intValue());
+    Assert.assertTrue(second.join().fold(end -> false, value -> value == null));
+    Assert.assertFalse(third.isDone());
+
+    this.queue.terminate();
+    Assert.assertFalse(third.join().isRight());
+    Assert.assertFalse(this.queue.nextStage().toCompletableFuture().join().isRight());
+    Assert.assertFalse(this.queue.poll().isPresent());
+  }
+
+  @Test
+  public void multiConsumerTest() throws Exception {
+    final int producers = 4;
+    final int consumers = 4;
+    final int count = 10_000;
+    final ExecutorService ex = Executors.newFixedThreadPool(producers + consumers);
+    try {
+      final List<CompletableFuture<List<Integer>>> consumed = new ArrayList<>();
+      for (int i = 0; i < consumers; i++) {
+        consumed.add(CompletableFuture.supplyAsync(
+            () -> this.queue.collect(Collectors.toList()).toCompletableFuture().join(), ex));
+      }
+      final List<CompletableFuture<Void>> produced = new ArrayList<>();
+      for (int i = 0; i < producers; i++) {
+        final int producer = i;
+        produced.add(CompletableFuture.runAsync(() -> {
+          for (int j = 0; j < count; j++) {
+            Assert.assertTrue(this.queue.send(producer * count + j));
+          }
+        }, ex));
+      }
+      CompletableFuture.allOf(produced.toArray(new CompletableFuture<?>[0])).join();
+      this.queue.terminate();
+
+      final List<Integer> all = new ArrayList<>();
+      for (final CompletableFuture<List<Integer>> c : consumed) {
+        final List<Integer> values = c.get(30, TimeUnit.SECONDS);
+        // each consumer sees every producer's values in send order
+        for (int i = 0; i < producers; i++) {
+          final int producer = i;
+          final List<Integer> fromProducer = values.stream()
+              .filter(v -> v / count == producer)
+              .collect(Collectors.toList());
+          Assert.assertEquals(
+              fromProducer.stream().sorted().collect(Collectors.toList()), fromProducer);
+        }
+        all.addAll(values);
+      }
+      Assert.assertEquals(
+          IntStream.range(0, producers * count).boxed().collect(Collectors.toList()),
+          all.stream().sorted().collect(Collectors.toList()));
+    } finally {
+      ex.shutdown();
+    }
+  }
+}
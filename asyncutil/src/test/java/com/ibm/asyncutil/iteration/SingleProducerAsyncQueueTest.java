@@ -0,0 +1,99 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.iteration;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ibm.asyncutil.iteration.AsyncIterator.End;
+import com.ibm.asyncutil.util.Either;
+
+public class SingleProducerAsyncQueueTest extends AbstractAsyncQueueTest {
+  private final static int BUFFER = 3;
+  private BoundedAsyncQueue<Integer> queue;
+
+  @Before
+  public void makeQueue() {
+    this.queue = AsyncQueues.singleProducerBuffered(BUFFER);
+  }
+
+  // the queue only supports one producer at a time, serialize the multi-producer tests
+  @Override
+  synchronized boolean send(final Integer c) {
+    return this.queue.send(c).toCompletableFuture().join();
+  }
+
+  @Override
+  AsyncIterator<Integer> consumer() {
+    return this.queue;
+  }
+
+  @Override
+  synchronized void closeImpl() {
+    this.queue.terminate();
+  }
+
+  @Override
+  Optional<Integer> poll() {
+    return this.queue.poll();
+  }
+
+  @Test
+  public void pipelinedSendsTest() {
+    // sends need not wait for the previous send, they queue behind it
+    final List<CompletableFuture<Boolean>> sends = IntStream.range(0, BUFFER * 3)
+        .mapToObj(this.queue::send)
+        .map(CompletionStage::toCompletableFuture)
+        .collect(Collectors.toList());
+    final CompletableFuture<Void> terminated = this.queue.terminate().toCompletableFuture();
+    final CompletableFuture<Boolean> rejected = this.queue.send(-1).toCompletableFuture();
+
+    for (int i = 0; i < BUFFER * 3; i++) {
+      // the first BUFFER sends and each send freed up by a consumed value are accepted
+      for (int j = 0; j < sends.size(); j++) {
+        Assert.assertEquals(j < BUFFER + i, sends.get(j).isDone());
+      }
+      // terminate completes once every send before it has been accepted
+      Assert.assertEquals(BUFFER + i >= sends.size(), terminated.isDone());
+      Assert.assertEquals(i,
+          this.queue.nextStage().toCompletableFuture().join().right().get().intValue());
+    }
+    Assert.assertTrue(sends.stream().allMatch(CompletableFuture::join));
+    Assert.assertTrue(terminated.isDone());
+    Assert.assertFalse(rejected.join());
+    Assert.assertFalse(this.queue.nextStage().toCompletableFuture().join().isRight());
+  }
+
+  @Test
+  public void parkedConsumerTest() {
+    final CompletableFuture<Either<End, Integer>> first =
+        this.queue.nextStage().toCompletableFuture();
+    Assert.assertFalse(first.isDone());
+    this.queue.send(null);
+    Assert.assertTrue(first.join().fold(end -> false, value -> value == null));
+
+    final CompletableFuture<Either<End, Integer>> end =
+        this.queue.nextStage().toCompletableFuture();
+    Assert.assertFalse(end.isDone());
+    Assert.assertTrue(this.queue.terminate().toCompletableFuture().isDone());
+    Assert.assertFalse(end.join().isRight());
+    Assert.assertFalse(this.queue.send(1).toCompletableFuture().join());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void nonPositiveBufferTest() {
+    AsyncQueues.singleProducerBuffered(0);
+  }
+}
@@ -7,11 +7,13 @@
 package com.ibm.asyncutil.locks;
 
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -193,6 +195,33 @@ public abstract class AbstractAsyncLockTest {
     lock.tryLock().orElseThrow(AssertionError::new).releaseLock();
   }
 
+  @Test
+  public final void testTimedTryLock() throws TimeoutException {
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      final AsyncLock lock = getLock();
+      final AsyncLock.LockToken acq1 =
+          TestUtil.join(lock.tryLock(1, TimeUnit.SECONDS, scheduler))
+              .orElseThrow(AssertionError::new);
+
+      // the lock is held, so these should time out
+      Assert.assertFalse(TestUtil.join(lock.tryLock(0, TimeUnit.SECONDS, scheduler)).isPresent());
+      Assert.assertFalse(
+          TestUtil.join(lock.tryLock(10, TimeUnit.MILLISECONDS, scheduler), 5, TimeUnit.SECONDS)
+              .isPresent());
+
+      final CompletableFuture<Optional<AsyncLock.LockToken>> acq2 =
+          lock.tryLock(5, TimeUnit.SECONDS, scheduler).toCompletableFuture();
+      acq1.releaseLock();
+      TestUtil.join(acq2, 5, TimeUnit.SECONDS).orElseThrow(AssertionError::new).releaseLock();
+
+      // the timed out acquisition must not hold the lock
+      lock.tryLock().orElseThrow(AssertionError::new).releaseLock();
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+
   public static abstract class AbstractAsyncLockFairnessTest extends AbstractAsyncLockTest {
     @Test
     public final void testFairness() throws Exception {
@@ -12,6 +12,7 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -289,6 +290,35 @@ public abstract class AbstractAsyncReadWriteLockTest extends AbstractAsyncLockTe
     TestUtil.join(read3, 2, TimeUnit.SECONDS);
   }
 
+  @Test
+  public final void testTimedTryReadWriteLock() throws TimeoutException {
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      final AsyncReadWriteLock rwlock = getReadWriteLock();
+      final AsyncReadWriteLock.WriteLockToken write =
+          TestUtil.join(rwlock.tryWriteLock(1, TimeUnit.SECONDS, scheduler))
+              .orElseThrow(AssertionError::new);
+
+      // the write lock is held, so these should time out
+      Assert.assertFalse(
+          TestUtil.join(rwlock.tryReadLock(10, TimeUnit.MILLISECONDS, scheduler), 5,
+              TimeUnit.SECONDS).isPresent());
+      Assert.assertFalse(
+          TestUtil.join(rwlock.tryWriteLock(10, TimeUnit.MILLISECONDS, scheduler), 5,
+              TimeUnit.SECONDS).isPresent());
+
+      final CompletableFuture<Optional<AsyncReadWriteLock.ReadLockToken>> read =
+          rwlock.tryReadLock(5, TimeUnit.SECONDS, scheduler).toCompletableFuture();
+      write.releaseLock();
+      TestUtil.join(read, 5, TimeUnit.SECONDS).orElseThrow(AssertionError::new).releaseLock();
+
+      // the timed out acquisitions must not hold the lock
+      rwlock.tryWriteLock().orElseThrow(AssertionError::new).releaseLock();
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+
 
   public static abstract class AbstractAsyncReadWriteLockFairnessTest
       extends AbstractAsyncReadWriteLockTest {
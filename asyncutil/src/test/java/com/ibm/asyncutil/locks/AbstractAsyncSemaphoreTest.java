@@ -11,6 +11,7 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.function.LongFunction;
 
@@ -167,6 +168,51 @@ public abstract class AbstractAsyncSemaphoreTest extends AbstractAsyncReadWriteL
     Assert.assertEquals(0, as.getAvailablePermits());
   }
 
+  @Test
+  public void testAcquireUpTo() throws Exception {
+    final AsyncSemaphore as = createSemaphore(5);
+
+    Assert.assertEquals(3L, TestUtil.join(as.acquireUpTo(3), 1, TimeUnit.SECONDS).longValue());
+    Assert.assertEquals(2L, TestUtil.join(as.acquireUpTo(5), 1, TimeUnit.SECONDS).longValue());
+    Assert.assertEquals(0, as.getAvailablePermits());
+
+    final CompletableFuture<Long> waiting = as.acquireUpTo(2).toCompletableFuture();
+    as.release(4);
+    Assert.assertEquals(2L, TestUtil.join(waiting, 1, TimeUnit.SECONDS).longValue());
+    Assert.assertEquals(2, as.getAvailablePermits());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testAcquireUpToZero() {
+    createSemaphore(1).acquireUpTo(0);
+  }
+
+  @Test
+  public void testTimedTryAcquire() throws Exception {
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      final AsyncSemaphore as = createSemaphore(1);
+      Assert.assertTrue(TestUtil.join(as.tryAcquire(1, 1, TimeUnit.SECONDS, scheduler)));
+
+      // no permits are available, so these should time out
+      Assert.assertFalse(TestUtil.join(as.tryAcquire(1, 0, TimeUnit.SECONDS, scheduler)));
+      Assert.assertFalse(
+          TestUtil.join(as.tryAcquire(1, 10, TimeUnit.MILLISECONDS, scheduler), 5,
+              TimeUnit.SECONDS));
+
+      final CompletableFuture<Boolean> waiting =
+          as.tryAcquire(1, 5, TimeUnit.SECONDS, scheduler).toCompletableFuture();
+      as.release(1);
+      Assert.assertTrue(TestUtil.join(waiting, 5, TimeUnit.SECONDS));
+
+      // the timed out acquisition must not hold any permits
+      as.release(1);
+      Assert.assertEquals(1, as.getAvailablePermits());
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+
   @Test
   public void testStackUnroll() {
     final AsyncSemaphore as = createSemaphore(0);
@@ -293,6 +339,27 @@ public abstract class AbstractAsyncSemaphoreTest extends AbstractAsyncReadWriteL
       Assert.assertEquals(0, as.getAvailablePermits());
     }
 
+    @Test
+    public void testAcquireUpToNoBarging() throws Exception {
+      final AsyncSemaphore as = createSemaphore(0);
+
+      final CompletableFuture<Void> first = as.acquire(2).toCompletableFuture();
+      final CompletableFuture<Long> upTo = as.acquireUpTo(5).toCompletableFuture();
+      final CompletableFuture<Void> last = as.acquire(3).toCompletableFuture();
+
+      as.release(2);
+      TestUtil.join(first, 1, TimeUnit.SECONDS);
+      Assert.assertFalse(upTo.isDone());
+
+      // the surplus goes to last rather than upTo, because last is queued behind it
+      as.release(3);
+      Assert.assertEquals(1L, TestUtil.join(upTo, 1, TimeUnit.SECONDS).longValue());
+      Assert.assertFalse(last.isDone());
+      as.release(1);
+      TestUtil.join(last, 1, TimeUnit.SECONDS);
+      Assert.assertEquals(0, as.getAvailablePermits());
+    }
+
     @Test
     public void testAcquireZeroOnConstructor() throws Exception {
       {
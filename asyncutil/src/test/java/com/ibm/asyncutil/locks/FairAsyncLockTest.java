@@ -6,9 +6,62 @@
 
 package com.ibm.asyncutil.locks;
 
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.asyncutil.util.TestUtil;
+
 public class FairAsyncLockTest extends AbstractAsyncLockTest.AbstractAsyncLockFairnessTest {
   @Override
   protected AsyncLock getLock() {
     return new FairAsyncLock();
   }
+
+  @Test
+  public void testCancelledWaiterIsWithdrawn() {
+    final AsyncLock lock = getLock();
+    final AsyncLock.LockToken holder = lock.tryLock().orElseThrow(AssertionError::new);
+    final CompletableFuture<AsyncLock.LockToken> cancelled =
+        lock.acquireLock().toCompletableFuture();
+    final CompletableFuture<AsyncLock.LockToken> behind = lock.acquireLock().toCompletableFuture();
+    Assert.assertTrue(cancelled.cancel(false));
+
+    // the lock passes over the withdrawn waiter
+    holder.releaseLock();
+    Assert.assertTrue(behind.isDone());
+    TestUtil.join(behind).releaseLock();
+    lock.tryLock().orElseThrow(AssertionError::new).releaseLock();
+  }
+
+  @Test
+  public void testTimedOutWaiterIsWithdrawn() throws TimeoutException {
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      final AsyncLock lock = getLock();
+      final AsyncLock.LockToken holder = lock.tryLock().orElseThrow(AssertionError::new);
+      final CompletableFuture<Optional<AsyncLock.LockToken>> timed =
+          lock.tryLock(10, TimeUnit.MILLISECONDS, scheduler).toCompletableFuture();
+      final CompletableFuture<Optional<AsyncLock.LockToken>> cancelled =
+          lock.tryLock(5, TimeUnit.SECONDS, scheduler).toCompletableFuture();
+      final CompletableFuture<AsyncLock.LockToken> behind =
+          lock.acquireLock().toCompletableFuture();
+
+      Assert.assertFalse(TestUtil.join(timed, 5, TimeUnit.SECONDS).isPresent());
+      Assert.assertTrue(cancelled.cancel(false));
+
+      holder.releaseLock();
+      Assert.assertTrue(behind.isDone());
+      TestUtil.join(behind).releaseLock();
+      lock.tryLock().orElseThrow(AssertionError::new).releaseLock();
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
 }
@@ -6,8 +6,17 @@
 
 package com.ibm.asyncutil.locks;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
 import org.junit.Test;
 
+import com.ibm.asyncutil.util.StageSupport;
+import com.ibm.asyncutil.util.TestUtil;
+
 public class FairAsyncSemaphoreTest
     extends AbstractAsyncSemaphoreTest.AbstractAsyncSemaphoreFairnessTest {
   public FairAsyncSemaphoreTest() {
@@ -23,4 +32,129 @@ public class FairAsyncSemaphoreTest
   public void testExceededMinConstructor() {
     createSemaphore(Long.MIN_VALUE);
   }
+
+  @Test
+  public void testImmediateAcquireReturnsSharedStage() {
+    final AsyncSemaphore as = createSemaphore(2);
+    Assert.assertSame(StageSupport.voidStage(), as.acquire(1));
+    as.release(1);
+    Assert.assertSame(StageSupport.voidStage(), as.acquire(2));
+
+    // drain the queue of a waiter, then the fast path should be taken again
+    final CompletableFuture<Void> waiter = as.acquire(1).toCompletableFuture();
+    Assert.assertFalse(waiter.isDone());
+    as.release(3);
+    Assert.assertTrue(waiter.isDone());
+    Assert.assertSame(StageSupport.voidStage(), as.acquire(2));
+    Assert.assertEquals(0, as.getAvailablePermits());
+    Assert.assertEquals(0, as.getQueueLength());
+  }
+
+  @Test
+  public void testTimedOutWaiterIsWithdrawn() throws Exception {
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      final AsyncSemaphore as = createSemaphore(0);
+      final CompletableFuture<Void> first = as.acquire(1).toCompletableFuture();
+      final CompletableFuture<Boolean> timed =
+          as.tryAcquire(3, 50, TimeUnit.MILLISECONDS, scheduler).toCompletableFuture();
+      final CompletableFuture<Void> zero = as.acquire(0).toCompletableFuture();
+      final CompletableFuture<Void> last = as.acquire(1).toCompletableFuture();
+      Assert.assertEquals(3, as.getQueueLength());
+
+      // first is fulfilled and timed receives 2 of its 3 permits
+      as.release(3);
+      Assert.assertTrue(first.isDone());
+      Assert.assertFalse(timed.isDone());
+      Assert.assertFalse(zero.isDone());
+
+      // once timed is withdrawn its 2 permits pass to the waiters behind it
+      Assert.assertFalse(TestUtil.join(timed, 5, TimeUnit.SECONDS));
+      TestUtil.join(zero, 5, TimeUnit.SECONDS);
+      TestUtil.join(last, 5, TimeUnit.SECONDS);
+      Assert.assertEquals(1, as.getAvailablePermits());
+      Assert.assertEquals(0, as.getQueueLength());
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testCancelledWaiterIsWithdrawn() {
+    final AsyncSemaphore as = createSemaphore(0);
+    final CompletableFuture<Void> first = as.acquire(1).toCompletableFuture();
+    final CompletableFuture<Void> cancelled = as.acquire(3).toCompletableFuture();
+    final CompletableFuture<Void> zero = as.acquire(0).toCompletableFuture();
+    final CompletableFuture<Void> last = as.acquire(1).toCompletableFuture();
+
+    // first is fulfilled and cancelled receives 2 of its 3 permits
+    as.release(3);
+    Assert.assertTrue(first.isDone());
+    Assert.assertFalse(cancelled.isDone());
+
+    // cancelling passes its 2 permits to the waiters behind it
+    Assert.assertTrue(cancelled.cancel(false));
+    Assert.assertTrue(cancelled.isCancelled());
+    Assert.assertTrue(zero.isDone());
+    Assert.assertFalse(zero.isCompletedExceptionally());
+    Assert.assertTrue(last.isDone());
+    Assert.assertEquals(1, as.getAvailablePermits());
+    Assert.assertEquals(0, as.getQueueLength());
+
+    // cancelling a fulfilled acquisition has no effect
+    Assert.assertFalse(last.cancel(false));
+    Assert.assertEquals(1, as.getAvailablePermits());
+  }
+
+  @Test
+  public void testZeroAcquireWaitsPastCancelledWaiter() {
+    final AsyncSemaphore as = createSemaphore(0);
+    final CompletableFuture<Void> first = as.acquire(1).toCompletableFuture();
+    final CompletableFuture<Void> cancelled = as.acquire(1).toCompletableFuture();
+    final CompletableFuture<Void> zero = as.acquire(0).toCompletableFuture();
+
+    // zero must still wait for first
+    Assert.assertTrue(cancelled.cancel(false));
+    Assert.assertFalse(zero.isDone());
+    Assert.assertEquals(1, as.getQueueLength());
+
+    as.release(1);
+    Assert.assertTrue(first.isDone());
+    Assert.assertTrue(zero.isDone());
+    Assert.assertFalse(zero.isCompletedExceptionally());
+    Assert.assertEquals(0, as.getQueueLength());
+    Assert.assertEquals(0, as.getAvailablePermits());
+  }
+
+  @Test
+  public void testCancelledAcquireUpToIsWithdrawn() {
+    final AsyncSemaphore as = createSemaphore(0);
+    final CompletableFuture<Long> cancelled = as.acquireUpTo(2).toCompletableFuture();
+    Assert.assertEquals(1, as.getQueueLength());
+    Assert.assertTrue(cancelled.cancel(false));
+    Assert.assertEquals(0, as.getQueueLength());
+
+    as.release(3);
+    Assert.assertEquals(3, as.getAvailablePermits());
+    Assert.assertEquals(0, as.getQueueLength());
+  }
+
+  @Test
+  public void testCancelledTimedAcquireIsWithdrawn() {
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      final AsyncSemaphore as = createSemaphore(0);
+      final CompletableFuture<Boolean> cancelled =
+          as.tryAcquire(2, 5, TimeUnit.SECONDS, scheduler).toCompletableFuture();
+      Assert.assertEquals(1, as.getQueueLength());
+      Assert.assertTrue(cancelled.cancel(false));
+      Assert.assertEquals(0, as.getQueueLength());
+
+      as.release(1);
+      Assert.assertEquals(1, as.getAvailablePermits());
+      Assert.assertEquals(0, as.getQueueLength());
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
 }
@@ -0,0 +1,73 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.locks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.asyncutil.util.TestUtil;
+
+public class StripedAsyncSemaphoreTest extends AbstractAsyncSemaphoreTest {
+  public StripedAsyncSemaphoreTest() {
+    super(FairAsyncSemaphore.MAX_PERMITS);
+  }
+
+  @Override
+  protected AsyncSemaphore createSemaphore(final long initialPermits) {
+    return new StripedAsyncSemaphore(initialPermits);
+  }
+
+  @Test
+  public void testNegativeInitialPermitsMustBeRepaid() {
+    final AsyncSemaphore as = createSemaphore(-2);
+    as.release(1);
+    Assert.assertFalse(as.tryAcquire(1));
+    final CompletableFuture<Void> acquire = as.acquire(1).toCompletableFuture();
+    Assert.assertFalse(acquire.isDone());
+    as.release(2);
+    Assert.assertTrue(acquire.isDone());
+    Assert.assertEquals(0, as.getAvailablePermits());
+  }
+
+  @Test
+  public void testWaiterSeesPooledPermits() throws Exception {
+    final int threads = 4;
+    final int iterations = 10_000;
+    final AsyncSemaphore as = createSemaphore(threads);
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<Thread> workers = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      final Thread worker = new Thread(() -> {
+        try {
+          start.await();
+        } catch (final InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        for (int i = 0; i < iterations; i++) {
+          // acquire more than a single stripe is likely to hold, forcing frequent fall back
+          TestUtil.join(as.acquire(2));
+          as.release(2);
+        }
+      });
+      worker.start();
+      workers.add(worker);
+    }
+    start.countDown();
+    for (final Thread worker : workers) {
+      worker.join(TimeUnit.SECONDS.toMillis(30));
+      Assert.assertFalse("worker stranded without permits", worker.isAlive());
+    }
+    Assert.assertEquals(threads, as.getAvailablePermits());
+    Assert.assertEquals(0, as.getQueueLength());
+  }
+}
@@ -0,0 +1,133 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.locks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.asyncutil.util.TestUtil;
+
+public class UnfairAsyncLockTest extends AbstractAsyncLockTest {
+  @Override
+  protected AsyncLock getLock() {
+    return new UnfairAsyncLock();
+  }
+
+  @Test
+  public void testUncontendedAcquireReusesStage() {
+    final AsyncLock lock = getLock();
+    final CompletionStage<AsyncLock.LockToken> first = lock.acquireLock();
+    Assert.assertTrue(first.toCompletableFuture().isDone());
+    TestUtil.join(first).releaseLock();
+
+    final CompletionStage<AsyncLock.LockToken> second = lock.acquireLock();
+    Assert.assertSame(first, second);
+    TestUtil.join(second).releaseLock();
+
+    Assert.assertSame(TestUtil.join(first), lock.tryLock().orElseThrow(AssertionError::new));
+  }
+
+  @Test
+  public void testReleaseBarges() {
+    final AsyncLock lock = getLock();
+    final AsyncLock.LockToken holder = lock.tryLock().orElseThrow(AssertionError::new);
+    final CompletableFuture<AsyncLock.LockToken> waiter = lock.acquireLock().toCompletableFuture();
+    final List<Optional<AsyncLock.LockToken>> barged = new ArrayList<>();
+    final CompletableFuture<Void> releasesAndBarges =
+        lock.acquireLock().thenAccept(token -> {
+          token.releaseLock();
+          // the lock is free again although a waiter has been woken, so it may be reacquired
+          barged.add(lock.tryLock());
+        }).toCompletableFuture();
+
+    holder.releaseLock();
+    Assert.assertTrue(releasesAndBarges.isDone());
+    final AsyncLock.LockToken barger = barged.get(0).orElseThrow(AssertionError::new);
+    Assert.assertFalse(waiter.isDone());
+
+    // the woken waiter lost the race and waits for the barger's release
+    barger.releaseLock();
+    Assert.assertTrue(waiter.isDone());
+    TestUtil.join(waiter).releaseLock();
+    lock.tryLock().orElseThrow(AssertionError::new).releaseLock();
+  }
+
+  @Test
+  public void testWaitersGrantedAfterRelease() {
+    final AsyncLock lock = getLock();
+    final AsyncLock.LockToken token = lock.tryLock().orElseThrow(AssertionError::new);
+
+    final CompletableFuture<AsyncLock.LockToken> acq1 = lock.acquireLock().toCompletableFuture();
+    final CompletableFuture<AsyncLock.LockToken> acq2 = lock.acquireLock().toCompletableFuture();
+    Assert.assertFalse(acq1.isDone());
+    Assert.assertFalse(acq2.isDone());
+
+    token.releaseLock();
+    // exactly one waiter is handed the lock
+    Assert.assertTrue(acq1.isDone() ^ acq2.isDone());
+    Assert.assertFalse(lock.tryLock().isPresent());
+
+    final CompletableFuture<AsyncLock.LockToken> holder = acq1.isDone() ? acq1 : acq2;
+    final CompletableFuture<AsyncLock.LockToken> waiter = acq1.isDone() ? acq2 : acq1;
+    TestUtil.join(holder).releaseLock();
+    Assert.assertTrue(waiter.isDone());
+    TestUtil.join(waiter).releaseLock();
+
+    lock.tryLock().orElseThrow(AssertionError::new).releaseLock();
+  }
+
+  @Test
+  public void testCancelledWaiterIsWithdrawn() {
+    final AsyncLock lock = getLock();
+    final AsyncLock.LockToken holder = lock.tryLock().orElseThrow(AssertionError::new);
+    final CompletableFuture<AsyncLock.LockToken> cancelled =
+        lock.acquireLock().toCompletableFuture();
+    final CompletableFuture<AsyncLock.LockToken> behind = lock.acquireLock().toCompletableFuture();
+    Assert.assertTrue(cancelled.cancel(false));
+
+    // the lock passes over the withdrawn waiter
+    holder.releaseLock();
+    Assert.assertTrue(behind.isDone());
+    TestUtil.join(behind).releaseLock();
+    lock.tryLock().orElseThrow(AssertionError::new).releaseLock();
+  }
+
+  @Test
+  public void testTimedOutWaiterIsWithdrawn() throws TimeoutException {
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      final AsyncLock lock = getLock();
+      final AsyncLock.LockToken holder = lock.tryLock().orElseThrow(AssertionError::new);
+      final CompletableFuture<Optional<AsyncLock.LockToken>> timed =
+          lock.tryLock(10, TimeUnit.MILLISECONDS, scheduler).toCompletableFuture();
+      final CompletableFuture<Optional<AsyncLock.LockToken>> cancelled =
+          lock.tryLock(5, TimeUnit.SECONDS, scheduler).toCompletableFuture();
+      final CompletableFuture<AsyncLock.LockToken> behind =
+          lock.acquireLock().toCompletableFuture();
+
+      Assert.assertFalse(TestUtil.join(timed, 5, TimeUnit.SECONDS).isPresent());
+      Assert.assertTrue(cancelled.cancel(false));
+
+      holder.releaseLock();
+      Assert.assertTrue(behind.isDone());
+      TestUtil.join(behind).releaseLock();
+      lock.tryLock().orElseThrow(AssertionError::new).releaseLock();
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+}
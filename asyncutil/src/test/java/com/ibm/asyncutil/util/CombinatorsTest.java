@@ -9,14 +9,19 @@ package com.ibm.asyncutil.util;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Function;
@@ -191,6 +196,209 @@ public class CombinatorsTest {
     CombinatorsTest.assertError(collCollect);
   }
 
+  @Test
+  public void testAllOfEarliestError() {
+    final TestException first = new TestException();
+    final TestException second = new TestException();
+    final CompletableStage<Integer> delayedFirst = getCompletableStage();
+    final CompletableStage<Integer> delayedSecond = getCompletableStage();
+    final List<CompletionStage<Integer>> futures =
+        Arrays.asList(getCompletedStage(0), delayedFirst, delayedSecond);
+
+    final CompletionStage<Void> voidAll = Combinators.allOf(futures);
+    final CompletionStage<Collection<Integer>> collAll = Combinators.collect(futures);
+
+    // the later input fails first, but the earlier input's failure is reported
+    delayedSecond.completeExceptionally(second);
+    CombinatorsTest.assertIncomplete(voidAll);
+    delayedFirst.completeExceptionally(first);
+
+    for (final CompletionStage<?> stage : Arrays.asList(voidAll, collAll)) {
+      try {
+        TestUtil.join(stage);
+        Assert.fail("expected exceptional completion");
+      } catch (final CompletionException e) {
+        Assert.assertSame(first, e.getCause());
+      }
+    }
+  }
+
+  @Test
+  public void testCollectReverseCompletion() {
+    final int NUM_FUTURES = 10000;
+
+    final List<CompletableStage<Integer>> stages = IntStream
+        .range(0, NUM_FUTURES)
+        .mapToObj(i -> this.<Integer>getCompletableStage())
+        .collect(Collectors.toList());
+    final CompletionStage<Void> allOf = Combinators.allOf(stages);
+    final CompletionStage<List<Integer>> collected =
+        Combinators.collect(stages, Collectors.toList());
+
+    for (int i = NUM_FUTURES - 1; i > 0; i--) {
+      stages.get(i).complete(i);
+    }
+    CombinatorsTest.assertIncomplete(allOf);
+    CombinatorsTest.assertIncomplete(collected);
+    stages.get(0).complete(0);
+
+    TestUtil.join(allOf);
+    Assert.assertEquals(
+        IntStream.range(0, NUM_FUTURES).boxed().collect(Collectors.toList()),
+        TestUtil.join(collected));
+  }
+
+  @Test
+  public void testFailFast() {
+    final CompletableStage<Integer> delayed = getCompletableStage();
+    final CompletableStage<Integer> failing = getCompletableStage();
+    final List<CompletionStage<Integer>> futures = Arrays.asList(delayed, failing);
+
+    final CompletionStage<Void> voidAll = Combinators.allOfFailFast(futures, false);
+    final CompletionStage<Collection<Integer>> collAll =
+        Combinators.collectFailFast(futures, false);
+    final CompletionStage<List<Integer>> collCollect =
+        Combinators.collectFailFast(futures, Collectors.toList(), false);
+
+    CombinatorsTest.assertIncomplete(voidAll);
+    CombinatorsTest.assertIncomplete(collAll);
+    CombinatorsTest.assertIncomplete(collCollect);
+
+    // fails without waiting for the delayed stage
+    failing.completeExceptionally(new TestException());
+    for (final CompletionStage<?> stage : Arrays.asList(voidAll, collAll, collCollect)) {
+      try {
+        TestUtil.join(stage, 2, TimeUnit.SECONDS);
+        Assert.fail("expected exceptional completion");
+      } catch (final TimeoutException e) {
+        Assert.fail("fail-fast stage should be complete");
+      } catch (final CompletionException e) {
+        // expected
+      }
+      CombinatorsTest.assertError(stage);
+    }
+  }
+
+  @Test
+  public void testFailFastSuccess() {
+    final CompletableStage<Integer> delayed = getCompletableStage();
+    final List<CompletionStage<Integer>> futures =
+        Arrays.asList(getCompletedStage(0), delayed, getCompletedStage(2));
+
+    final CompletionStage<Void> voidAll = Combinators.allOfFailFast(futures, true);
+    final CompletionStage<List<Integer>> collCollect =
+        Combinators.collectFailFast(futures, Collectors.toList(), true);
+    CombinatorsTest.assertIncomplete(voidAll);
+    CombinatorsTest.assertIncomplete(collCollect);
+
+    delayed.complete(1);
+    TestUtil.join(voidAll);
+    Assert.assertEquals(Arrays.asList(0, 1, 2), TestUtil.join(collCollect));
+  }
+
+  @Test
+  public void testFailFastCancelRemaining() {
+    final CompletableFuture<Integer> done = CompletableFuture.completedFuture(0);
+    final CompletableFuture<Integer> running = new CompletableFuture<>();
+    final CompletableFuture<Integer> failing = new CompletableFuture<>();
+    final Map<Integer, CompletableFuture<Integer>> stageMap = new HashMap<>();
+    stageMap.put(0, done);
+    stageMap.put(1, running);
+    stageMap.put(2, failing);
+
+    final CompletionStage<Map<Integer, Integer>> keyed =
+        Combinators.keyedAllFailFast(stageMap, true);
+    CombinatorsTest.assertIncomplete(keyed);
+
+    failing.completeExceptionally(new TestException());
+    CombinatorsTest.assertError(keyed);
+    Assert.assertTrue(running.isCancelled());
+    Assert.assertFalse(done.isCompletedExceptionally());
+  }
+
+  @Test
+  public void testFailFastNoCancel() {
+    final CompletableFuture<Integer> running = new CompletableFuture<>();
+    final List<CompletableFuture<Integer>> futures =
+        Arrays.asList(running, CombinatorsTest.<Integer>failedFuture());
+
+    CombinatorsTest.assertError(Combinators.collectFailFast(futures, false));
+    Assert.assertFalse(running.isDone());
+    running.complete(1);
+  }
+
+  private static <T> CompletableFuture<T> failedFuture() {
+    final CompletableFuture<T> f = new CompletableFuture<>();
+    f.completeExceptionally(new TestException());
+    return f;
+  }
+
+  @Test
+  public void testHedgeFastAttempt() {
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      final AtomicInteger started = new AtomicInteger();
+      final CompletionStage<Integer> hedged = Combinators.hedge(
+          () -> getCompletedStage(started.incrementAndGet()), 3, 10, TimeUnit.MILLISECONDS,
+          scheduler);
+      Assert.assertEquals(1, TestUtil.join(hedged).intValue());
+      Assert.assertEquals(1, started.get());
+    } finally {
+      scheduler.shutdown();
+    }
+  }
+
+  @Test
+  public void testHedgeSlowAttempt() throws TimeoutException {
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      final List<CompletableFuture<Integer>> attempts = new CopyOnWriteArrayList<>();
+      final CompletionStage<Integer> hedged = Combinators.hedge(() -> {
+        final CompletableFuture<Integer> f = new CompletableFuture<>();
+        attempts.add(f);
+        return f;
+      }, 3, 10, TimeUnit.MILLISECONDS, scheduler);
+
+      // the first attempt never completes, so hedges are started until the limit
+      final long start = System.nanoTime();
+      while (attempts.size() < 3 && System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2)) {
+        Thread.yield();
+      }
+      Assert.assertEquals(3, attempts.size());
+      CombinatorsTest.assertIncomplete(hedged);
+
+      attempts.get(1).complete(1);
+      Assert.assertEquals(1, TestUtil.join(hedged, 2, TimeUnit.SECONDS).intValue());
+      Assert.assertTrue(attempts.get(0).isCancelled());
+      Assert.assertTrue(attempts.get(2).isCancelled());
+    } finally {
+      scheduler.shutdown();
+    }
+  }
+
+  @Test
+  public void testHedgeFailedAttempts() throws TimeoutException {
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      // failures start the next attempt without waiting for the (long) delay
+      final AtomicInteger started = new AtomicInteger();
+      final CompletionStage<Integer> recovered = Combinators.hedge(
+          () -> started.incrementAndGet() < 3
+              ? this.<Integer>getExceptionalStage(new TestException())
+              : getCompletedStage(3),
+          3, 1, TimeUnit.HOURS, scheduler);
+      Assert.assertEquals(3, TestUtil.join(recovered, 2, TimeUnit.SECONDS).intValue());
+
+      final CompletionStage<Integer> failed = Combinators.hedge(
+          () -> {
+            throw new TestException();
+          }, 2, 1, TimeUnit.HOURS, scheduler);
+      CombinatorsTest.assertError(failed);
+    } finally {
+      scheduler.shutdown();
+    }
+  }
+
   @Test
   public void testKeyedAll() {
     final Map<Integer, CompletionStage<Integer>> stageMap =
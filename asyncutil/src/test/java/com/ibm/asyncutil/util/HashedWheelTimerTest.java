@@ -0,0 +1,139 @@
+/*
+* Copyright (c) IBM Corporation 2017. All Rights Reserved.
+* Project name: java-async-util
+* This project is licensed under the Apache License 2.0, see LICENSE.
+*/
+
+package com.ibm.asyncutil.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HashedWheelTimerTest {
+  private final HashedWheelTimer timer =
+      new HashedWheelTimer(1, TimeUnit.MILLISECONDS, 8, Executors.defaultThreadFactory());
+
+  @After
+  public void closeTimer() throws TimeoutException {
+    TestUtil.join(this.timer.close(), 2, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testSchedule() throws InterruptedException {
+    final CountDownLatch latch = new CountDownLatch(1);
+    final long start = System.nanoTime();
+    final long[] ran = new long[1];
+    this.timer.schedule(() -> {
+      ran[0] = System.nanoTime();
+      latch.countDown();
+    }, 20, TimeUnit.MILLISECONDS);
+    Assert.assertTrue(latch.await(2, TimeUnit.SECONDS));
+    Assert.assertTrue(ran[0] - start >= TimeUnit.MILLISECONDS.toNanos(20));
+  }
+
+  @Test
+  public void testDelayLongerThanWheel() throws InterruptedException {
+    // 8 buckets of 1ms, so the task is passed over several times before it is due
+    final CountDownLatch latch = new CountDownLatch(1);
+    final long start = System.nanoTime();
+    this.timer.schedule(latch::countDown, 30, TimeUnit.MILLISECONDS);
+    Assert.assertTrue(latch.await(2, TimeUnit.SECONDS));
+    Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(30));
+  }
+
+  @Test
+  public void testCancel() throws InterruptedException {
+    final AtomicBoolean ran = new AtomicBoolean();
+    final HashedWheelTimer.Timeout timeout =
+        this.timer.schedule(() -> ran.set(true), 10, TimeUnit.MILLISECONDS);
+    Assert.assertTrue(timeout.cancel());
+    Assert.assertTrue(timeout.isCancelled());
+    Assert.assertTrue(timeout.cancel());
+
+    final CountDownLatch later = new CountDownLatch(1);
+    this.timer.schedule(later::countDown, 30, TimeUnit.MILLISECONDS);
+    Assert.assertTrue(later.await(2, TimeUnit.SECONDS));
+    Assert.assertFalse(ran.get());
+  }
+
+  @Test
+  public void testCancelAfterRun() throws InterruptedException {
+    final CountDownLatch latch = new CountDownLatch(1);
+    final HashedWheelTimer.Timeout timeout =
+        this.timer.schedule(latch::countDown, 0, TimeUnit.MILLISECONDS);
+    Assert.assertTrue(latch.await(2, TimeUnit.SECONDS));
+    Assert.assertFalse(timeout.cancel());
+    Assert.assertFalse(timeout.isCancelled());
+  }
+
+  @Test
+  public void testManyTimeouts() throws InterruptedException {
+    final int count = 10000;
+    final Random random = new Random(0);
+    final CountDownLatch latch = new CountDownLatch(count / 2);
+    final AtomicInteger early = new AtomicInteger();
+    final AtomicInteger cancelledRan = new AtomicInteger();
+    final List<HashedWheelTimer.Timeout> toCancel = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      final long delay = random.nextInt(50);
+      final long start = System.nanoTime();
+      if (i % 2 == 0) {
+        this.timer.schedule(() -> {
+          if (System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(delay)) {
+            early.incrementAndGet();
+          }
+          latch.countDown();
+        }, delay, TimeUnit.MILLISECONDS);
+      } else {
+        // long enough to be cancelled before it is due, however slowly this loop runs
+        toCancel.add(this.timer.schedule(cancelledRan::incrementAndGet, delay + 1000,
+            TimeUnit.MILLISECONDS));
+      }
+    }
+    for (final HashedWheelTimer.Timeout timeout : toCancel) {
+      timeout.cancel();
+    }
+    Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+    Assert.assertEquals(0, early.get());
+    Assert.assertEquals(0, cancelledRan.get());
+  }
+
+  @Test
+  public void testTaskException() throws InterruptedException {
+    final CountDownLatch latch = new CountDownLatch(1);
+    this.timer.schedule(() -> {
+      throw new IllegalStateException();
+    }, 0, TimeUnit.MILLISECONDS);
+    this.timer.schedule(latch::countDown, 5, TimeUnit.MILLISECONDS);
+    Assert.assertTrue(latch.await(2, TimeUnit.SECONDS));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testScheduleAfterClose() throws TimeoutException {
+    TestUtil.join(this.timer.close(), 2, TimeUnit.SECONDS);
+    this.timer.schedule(() -> {
+    }, 1, TimeUnit.MILLISECONDS);
+  }
+
+  @Test
+  public void testCloseUnstarted() {
+    final HashedWheelTimer unstarted = new HashedWheelTimer();
+    Assert.assertTrue(unstarted.close().toCompletableFuture().isDone());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNonPositiveTick() {
+    new HashedWheelTimer(0, TimeUnit.MILLISECONDS, 8, Executors.defaultThreadFactory());
+  }
+}
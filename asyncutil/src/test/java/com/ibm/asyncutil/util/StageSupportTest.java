@@ -6,8 +6,11 @@
 
 package com.ibm.asyncutil.util;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -69,6 +72,56 @@ public class StageSupportTest {
     }
   }
 
+  @Test
+  public void testDelay() throws TimeoutException {
+    final long start = System.nanoTime();
+    TestUtil.join(StageSupport.delay(20, TimeUnit.MILLISECONDS), 2, TimeUnit.SECONDS);
+    Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+    Assert.assertTrue(
+        StageSupport.delay(0, TimeUnit.MILLISECONDS).toCompletableFuture().isDone());
+  }
+
+  @Test
+  public void testTimeout() throws TimeoutException {
+    final CompletableFuture<Integer> never = new CompletableFuture<>();
+    final CompletionStage<Integer> timedOut = StageSupport.timeout(never, 5, TimeUnit.MILLISECONDS);
+    Assert.assertTrue(
+        TestUtil.join(timedOut.handle((t, ex) -> ex), 2, TimeUnit.SECONDS)
+            instanceof TimeoutException);
+    // the timeout doesn't complete the original stage
+    Assert.assertFalse(never.isDone());
+
+    Assert.assertEquals(
+        1,
+        TestUtil.join(StageSupport.timeout(StageSupport.completedStage(1), 5, TimeUnit.SECONDS))
+            .intValue());
+    assertError(StageSupport.timeout(
+        StageSupport.exceptionalStage(new TestException()), 5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testTimeoutCompletesInTime() throws TimeoutException {
+    final CompletableFuture<Integer> future = new CompletableFuture<>();
+    final CompletionStage<Integer> stage = StageSupport.timeout(future, 1, TimeUnit.DAYS);
+    Assert.assertFalse(stage.toCompletableFuture().isDone());
+    future.complete(1);
+    Assert.assertEquals(1, TestUtil.join(stage, 2, TimeUnit.SECONDS).intValue());
+  }
+
+  @Test
+  public void testOrTimeout() throws TimeoutException {
+    final CompletableFuture<Integer> future = new CompletableFuture<>();
+    Assert.assertSame(future, StageSupport.orTimeout(future, 5, TimeUnit.MILLISECONDS));
+    Assert.assertTrue(
+        TestUtil.join(future.handle((t, ex) -> ex), 2, TimeUnit.SECONDS)
+            instanceof TimeoutException);
+
+    final CompletableFuture<Integer> done = CompletableFuture.completedFuture(1);
+    Assert.assertEquals(
+        1,
+        TestUtil.join(StageSupport.orTimeout(done, 0, TimeUnit.MILLISECONDS)).intValue());
+  }
+
   private <T> void assertError(final CompletionStage<T> stage) {
     try {
       stage.toCompletableFuture().join();